@@ -0,0 +1,127 @@
+package com.spring.cloud.config.s3.benchmark;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.AnonymousAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import com.spring.cloud.config.s3.config.S3EnvironmentRepositoryProperties;
+import com.spring.cloud.config.s3.exceptions.SystemException;
+import com.spring.cloud.config.s3.repository.S3Repository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Objects/sec of {@link S3Repository#downloadBucket} against a {@link LocalS3Server}, by
+ * download parallelism and simulated S3 latency. The {@code objects} counter reports
+ * objects/sec.
+ *
+ * @author Nagesh Salunke
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class DownloadBenchmark {
+
+  private static final String BUCKET = "benchmark";
+
+  @Param({"1000"})
+  public int files;
+
+  @Param({"1", "4", "16"})
+  public int parallelism;
+
+  @Param({"0", "5"})
+  public int latencyMillis;
+
+  private SyntheticBucket bucket;
+
+  private LocalS3Server server;
+
+  private S3Repository s3Repository;
+
+  private TransferManager transferManager;
+
+  private File destination;
+
+  /**
+   * Downloaded objects, reported per second.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Objects {
+
+    public long objects;
+  }
+
+  @Setup
+  public void setUp() throws IOException {
+    bucket = new SyntheticBucket(files);
+    server = new LocalS3Server(BUCKET, bucket.source, latencyMillis);
+    S3EnvironmentRepositoryProperties properties = new S3EnvironmentRepositoryProperties();
+    properties.getDownload().setParallelism(parallelism);
+    AmazonS3 s3Client = AmazonS3ClientBuilder.standard()
+        .withEndpointConfiguration(new EndpointConfiguration(server.endpoint(), "us-east-1"))
+        .withPathStyleAccessEnabled(true)
+        .withCredentials(new AWSStaticCredentialsProvider(new AnonymousAWSCredentials()))
+        .withClientConfiguration(new ClientConfiguration()
+            .withMaxConnections(properties.getDownload().getMaxConnections()))
+        .build();
+    transferManager = TransferManagerBuilder.standard().withS3Client(s3Client).build();
+    s3Repository = new S3Repository();
+    ReflectionTestUtils.setField(s3Repository, "s3Client", s3Client);
+    ReflectionTestUtils.setField(s3Repository, "transferManager", transferManager);
+    ReflectionTestUtils.setField(s3Repository, "meterRegistry", new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(s3Repository, "properties", properties);
+    s3Repository.init();
+  }
+
+  @Setup(Level.Invocation)
+  public void createDestination() throws IOException {
+    destination = Files.createTempDirectory("benchmark-download-").toFile();
+  }
+
+  @TearDown(Level.Invocation)
+  public void deleteDestination() {
+    FileSystemUtils.deleteRecursively(destination);
+  }
+
+  @TearDown
+  public void tearDown() {
+    s3Repository.destroy();
+    transferManager.shutdownNow(true);
+    server.stop();
+    bucket.delete(null);
+  }
+
+  @Benchmark
+  public void downloadBucket(Objects counter) throws SystemException {
+    s3Repository.downloadBucket(BUCKET, destination);
+    counter.objects += server.size();
+  }
+}
@@ -0,0 +1,72 @@
+package com.spring.cloud.config.s3.benchmark;
+
+import com.spring.cloud.config.s3.config.S3EnvironmentRepositoryProperties;
+import com.spring.cloud.config.s3.repository.S3EnvironmentRepository;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.config.environment.Environment;
+
+/**
+ * Throughput and latency of {@link S3EnvironmentRepository#findOne} on a published snapshot,
+ * across repository sizes, search path patterns and environment cache sizes.
+ *
+ * @author Nagesh Salunke
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class FindOneBenchmark {
+
+  @Param({"100", "1000"})
+  public int files;
+
+  @Param({"{profile}/{application}", "{profile},{profile}/{application}"})
+  public String searchPaths;
+
+  @Param({"0", "1000"})
+  public int environmentCacheSize;
+
+  private SyntheticBucket bucket;
+
+  private S3EnvironmentRepository repository;
+
+  @Setup
+  public void setUp() throws Exception {
+    bucket = new SyntheticBucket(files);
+    S3EnvironmentRepositoryProperties properties = new S3EnvironmentRepositoryProperties();
+    properties.setSearchPaths(searchPaths.split(","));
+    properties.setEnvironmentCacheSize(environmentCacheSize);
+    properties.setRefreshOnRequest(false);
+    repository = bucket.repository(properties);
+    repository.refresh();
+  }
+
+  @TearDown
+  public void tearDown() {
+    bucket.delete(repository);
+  }
+
+  @Benchmark
+  public Environment findOne() {
+    String application = bucket.applications.get(
+        ThreadLocalRandom.current().nextInt(bucket.applications.size()));
+    return repository.findOne(application, "staging", "master");
+  }
+}
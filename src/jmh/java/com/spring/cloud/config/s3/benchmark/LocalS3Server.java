@@ -0,0 +1,129 @@
+package com.spring.cloud.config.s3.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Minimal local S3 stand-in serving a directory as a bucket over path style requests:
+ * ListObjectsV2 and GET object, with an optional per-request latency.
+ *
+ * @author Nagesh Salunke
+ */
+final class LocalS3Server {
+
+  private final HttpServer server;
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  /**
+   * Objects by key.
+   */
+  private final Map<String, byte[]> objects = new TreeMap<>();
+
+  /**
+   * Starts serving the directory as bucket.
+   *
+   * @param bucketName - bucketName.
+   * @param source - bucket content.
+   * @param latencyMillis - latency added to each request.
+   * @throws IOException - {@link IOException}
+   */
+  LocalS3Server(String bucketName, Path source, int latencyMillis) throws IOException {
+    try (Stream<Path> files = Files.walk(source)) {
+      for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+        objects.put(source.relativize(file).toString().replace('\\', '/'),
+            Files.readAllBytes(file));
+      }
+    }
+    //Without TCP_NODELAY delayed ACKs dominate the latency of small objects.
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(executor);
+    server.createContext("/" + bucketName, exchange -> {
+      try {
+        if (latencyMillis > 0) {
+          Thread.sleep(latencyMillis);
+        }
+        String key = exchange.getRequestURI().getPath().substring(bucketName.length() + 1);
+        if (key.isEmpty() || "/".equals(key)) {
+          respond(exchange, 200, listing(bucketName).getBytes(StandardCharsets.UTF_8), null);
+        } else if (objects.containsKey(key.substring(1))) {
+          byte[] content = objects.get(key.substring(1));
+          respond(exchange, 200, content, md5(content));
+        } else {
+          respond(exchange, 404, new byte[0], null);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        exchange.close();
+      }
+    });
+    server.start();
+  }
+
+  String endpoint() {
+    return "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  int size() {
+    return objects.size();
+  }
+
+  void stop() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private String listing(String bucketName) {
+    StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">");
+    xml.append("<Name>").append(bucketName).append("</Name><KeyCount>").append(objects.size())
+        .append("</KeyCount><MaxKeys>").append(objects.size())
+        .append("</MaxKeys><IsTruncated>false</IsTruncated>");
+    for (Map.Entry<String, byte[]> object : objects.entrySet()) {
+      xml.append("<Contents><Key>").append(object.getKey()).append("</Key><ETag>&quot;")
+          .append(md5(object.getValue())).append("&quot;</ETag><Size>")
+          .append(object.getValue().length).append("</Size></Contents>");
+    }
+    return xml.append("</ListBucketResult>").toString();
+  }
+
+  private static void respond(HttpExchange exchange, int status, byte[] body, String etag)
+      throws IOException {
+    if (etag != null) {
+      exchange.getResponseHeaders().add("ETag", "\"" + etag + "\"");
+    }
+    exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+    if (body.length > 0) {
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    }
+  }
+
+  private static String md5(byte[] content) {
+    try {
+      StringBuilder hex = new StringBuilder();
+      for (byte b : MessageDigest.getInstance("MD5").digest(content)) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package com.spring.cloud.config.s3.benchmark;
+
+import com.spring.cloud.config.s3.config.S3EnvironmentRepositoryProperties;
+import com.spring.cloud.config.s3.repository.S3EnvironmentRepository;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of {@link S3EnvironmentRepository#refresh()} picking up a new version of a synthetic
+ * bucket, download from the local stand-in included. {@code unchanged} measures a refresh which
+ * only checks the version.
+ *
+ * @author Nagesh Salunke
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RefreshBenchmark {
+
+  @Param({"100", "1000", "10000"})
+  public int files;
+
+  private SyntheticBucket bucket;
+
+  private S3EnvironmentRepository repository;
+
+  private final AtomicLong versions = new AtomicLong();
+
+  @Setup
+  public void setUp() throws Exception {
+    bucket = new SyntheticBucket(files);
+    S3EnvironmentRepositoryProperties properties = new S3EnvironmentRepositoryProperties();
+    properties.setSearchPaths(new String[] {"{profile}", "{profile}/{application}"});
+    properties.setRefreshOnRequest(false);
+    repository = bucket.repository(properties);
+    repository.refresh();
+  }
+
+  @TearDown
+  public void tearDown() {
+    bucket.delete(repository);
+  }
+
+  @Benchmark
+  public String newVersion() {
+    bucket.version.set("v" + versions.incrementAndGet());
+    return repository.refresh();
+  }
+
+  @Benchmark
+  public String unchanged() {
+    return repository.refresh();
+  }
+}
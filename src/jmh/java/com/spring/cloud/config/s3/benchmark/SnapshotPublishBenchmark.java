@@ -0,0 +1,81 @@
+package com.spring.cloud.config.s3.benchmark;
+
+import com.spring.cloud.config.s3.snapshot.ConfigSnapshot;
+import com.spring.cloud.config.s3.snapshot.SnapshotManifest;
+import com.spring.cloud.config.s3.snapshot.SnapshotStore;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Time to publish a downloaded version: promote the staging directory (rename and checksum),
+ * swap it in, reclaim the retired snapshot and persist the manifest.
+ *
+ * @author Nagesh Salunke
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnapshotPublishBenchmark {
+
+  @Param({"100", "1000", "10000"})
+  public int files;
+
+  private SyntheticBucket bucket;
+
+  private File basedir;
+
+  private final SnapshotStore snapshotStore = new SnapshotStore();
+
+  private final AtomicLong versions = new AtomicLong();
+
+  private Path staging;
+
+  @Setup
+  public void setUp() throws IOException {
+    bucket = new SyntheticBucket(files);
+    basedir = Files.createTempDirectory("benchmark-snapshots-").toFile();
+  }
+
+  @Setup(Level.Invocation)
+  public void stage() throws IOException {
+    staging = snapshotStore.createStagingDirectory(basedir);
+    FileSystemUtils.copyRecursively(bucket.source, staging);
+  }
+
+  @TearDown
+  public void tearDown() {
+    bucket.delete(null);
+    FileSystemUtils.deleteRecursively(basedir);
+  }
+
+  @Benchmark
+  public ConfigSnapshot publish() throws IOException {
+    SnapshotManifest manifest = new SnapshotManifest();
+    manifest.setVersion("v" + versions.incrementAndGet());
+    ConfigSnapshot snapshot = snapshotStore.promote(staging, manifest);
+    snapshotStore.publish(snapshot);
+    snapshotStore.saveManifest(snapshot);
+    return snapshot;
+  }
+}
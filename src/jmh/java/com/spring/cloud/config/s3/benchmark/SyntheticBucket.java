@@ -0,0 +1,130 @@
+package com.spring.cloud.config.s3.benchmark;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+
+import com.spring.cloud.config.s3.config.S3EnvironmentRepositoryProperties;
+import com.spring.cloud.config.s3.repository.S3EnvironmentRepository;
+import com.spring.cloud.config.s3.repository.S3Repository;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import org.mockito.Mockito;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Synthetic config bucket on local disk, standing in for S3 in benchmarks.
+ * Layout follows the search paths of the tests: application.yml at the root,
+ * {profile}/application-{profile}.yml and {profile}/{application}/{application}-{profile}.yml.
+ *
+ * @author Nagesh Salunke
+ */
+final class SyntheticBucket {
+
+  static final String[] PROFILES = {"dev", "staging", "prod"};
+
+  /**
+   * Bucket content.
+   */
+  final Path source;
+
+  /**
+   * Application names, each has a file per profile.
+   */
+  final List<String> applications = new ArrayList<>();
+
+  /**
+   * Version returned as x-amz-meta-version of the metafile.
+   */
+  final AtomicReference<String> version = new AtomicReference<>("v0");
+
+  /**
+   * Writes a bucket of roughly the given number of files.
+   *
+   * @param files - number of files.
+   * @throws IOException - {@link IOException}
+   */
+  SyntheticBucket(int files) throws IOException {
+    source = Files.createTempDirectory("benchmark-bucket-");
+    write(source.resolve("application.yml"), "application", "default");
+    int written = 1;
+    for (String profile : PROFILES) {
+      write(source.resolve(profile).resolve("application-" + profile + ".yml"), "application",
+          profile);
+      written++;
+    }
+    for (int app = 0; written < files; app++) {
+      String application = "app" + app;
+      applications.add(application);
+      for (String profile : PROFILES) {
+        write(source.resolve(profile).resolve(application)
+            .resolve(application + "-" + profile + ".yml"), application, profile);
+        written++;
+      }
+    }
+  }
+
+  /**
+   * Returns a mocked {@link S3Repository} serving this bucket from disk.
+   *
+   * @return {@link S3Repository}
+   * @throws Exception - mock setup.
+   */
+  S3Repository s3Repository() throws Exception {
+    S3Repository s3Repository = Mockito.mock(S3Repository.class);
+    Mockito.doAnswer(k -> {
+      FileSystemUtils.copyRecursively(source.toFile(), (File) k.getArgument(1));
+      return null;
+    }).when(s3Repository).downloadBucket(anyString(), any());
+    Mockito.when(s3Repository.getBucketVersion(anyString()))
+        .thenAnswer(k -> Optional.of(version.get()));
+    return s3Repository;
+  }
+
+  /**
+   * Creates a repository on this bucket, with a fresh base directory.
+   *
+   * @param properties - {@link S3EnvironmentRepositoryProperties}
+   * @return {@link S3EnvironmentRepository}
+   * @throws Exception - setup.
+   */
+  S3EnvironmentRepository repository(S3EnvironmentRepositoryProperties properties)
+      throws Exception {
+    S3EnvironmentRepository repository = new S3EnvironmentRepository(new StandardEnvironment(),
+        properties, s3Repository());
+    repository.setUri("s3://benchmark");
+    repository.setBasedir(Files.createTempDirectory("benchmark-repo-").toFile());
+    return repository;
+  }
+
+  /**
+   * Deletes the bucket and the base directory of a repository.
+   *
+   * @param repository - repository created by this bucket, may be null.
+   */
+  void delete(S3EnvironmentRepository repository) {
+    if (repository != null) {
+      repository.destroy();
+      FileSystemUtils.deleteRecursively(repository.getBasedir());
+    }
+    FileSystemUtils.deleteRecursively(source.toFile());
+  }
+
+  private static void write(Path file, String application, String profile) throws IOException {
+    Files.createDirectories(file.toFile().getParentFile().toPath());
+    StringBuilder yaml = new StringBuilder();
+    yaml.append(application).append(":\n");
+    for (int i = 0; i < 20; i++) {
+      yaml.append("  key").append(i).append(": ").append(profile).append("-value-").append(i)
+          .append('\n');
+    }
+    Files.write(file, yaml.toString().getBytes(StandardCharsets.UTF_8));
+  }
+}
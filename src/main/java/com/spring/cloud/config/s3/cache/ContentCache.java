@@ -0,0 +1,97 @@
+package com.spring.cloud.config.s3.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of file contents keyed by their SHA-256, see
+ * {@link com.spring.cloud.config.s3.snapshot.SnapshotManifest#getFiles()}.
+ * Being content addressed, entries stay valid across snapshots and are shared by every
+ * snapshot and label containing the same file; the cache is bounded by the cached bytes.
+ *
+ * @author Nagesh Salunke
+ */
+public class ContentCache {
+
+  /**
+   * Maximum number of cached bytes, 0 disables the cache.
+   */
+  private final long maxBytes;
+
+  /**
+   * Contents by SHA-256 in access order, guarded by itself.
+   */
+  private final Map<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  /**
+   * Number of cached bytes, guarded by entries.
+   */
+  private long bytes;
+
+  /**
+   * Constructor.
+   *
+   * @param maxBytes - maximum number of cached bytes, 0 disables caching.
+   */
+  public ContentCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns the cached content of a file. Callers share the returned array and must not
+   * modify it.
+   *
+   * @param sha256 - hex encoded SHA-256 of the content.
+   * @return content, null on miss.
+   */
+  public byte[] get(String sha256) {
+    synchronized (entries) {
+      return entries.get(sha256);
+    }
+  }
+
+  /**
+   * Caches the content of a file, evicting the least recently used contents beyond maxBytes.
+   * Contents larger than maxBytes aren't cached.
+   *
+   * @param sha256 - hex encoded SHA-256 of the content.
+   * @param content - content, not modified afterwards.
+   */
+  public void put(String sha256, byte[] content) {
+    if (content.length > maxBytes) {
+      return;
+    }
+    synchronized (entries) {
+      byte[] replaced = entries.put(sha256, content);
+      bytes += content.length - (replaced == null ? 0 : replaced.length);
+      Iterator<byte[]> eldest = entries.values().iterator();
+      while (bytes > maxBytes) {
+        bytes -= eldest.next().length;
+        eldest.remove();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of cached bytes.
+   *
+   * @return bytes
+   */
+  public long getBytes() {
+    synchronized (entries) {
+      return bytes;
+    }
+  }
+
+  /**
+   * Returns the number of cached contents.
+   *
+   * @return size
+   */
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+}
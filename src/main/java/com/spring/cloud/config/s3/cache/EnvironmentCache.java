@@ -0,0 +1,293 @@
+package com.spring.cloud.config.s3.cache;
+
+import com.spring.cloud.config.s3.constant.ConfigConstants;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Value;
+import org.springframework.cloud.config.environment.Environment;
+
+/**
+ * Bounded LRU cache of resolved {@link Environment} objects.
+ * Entries are keyed by application, profile, label and configuration version. Only entries
+ * of the version the cache was last invalidated with are accepted, so resolutions racing with
+ * a refresh can't pollute the cache with a stale version.
+ *
+ * @author Nagesh Salunke
+ */
+public class EnvironmentCache implements MeterBinder {
+
+  /**
+   * Maximum number of entries, 0 disables the cache.
+   */
+  private final int maxSize;
+
+  /**
+   * Entries in access order, guarded by itself.
+   */
+  private final LruMap entries;
+
+  /**
+   * Version currently accepted by the cache.
+   */
+  private volatile String version;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Constructor.
+   *
+   * @param maxSize - maximum number of cached environments, 0 disables caching.
+   */
+  public EnvironmentCache(int maxSize) {
+    this.maxSize = maxSize;
+    this.entries = new LruMap(maxSize);
+  }
+
+  /**
+   * Returns cached environment for the key.
+   *
+   * @param key - {@link Key}
+   * @return cached {@link Environment}, null on miss.
+   */
+  public Environment get(Key key) {
+    Environment environment = null;
+    synchronized (entries) {
+      Entry entry = entries.get(key);
+      if (entry != null) {
+        entry.requests++;
+        environment = entry.environment;
+      }
+    }
+    if (environment == null) {
+      misses.incrementAndGet();
+    } else {
+      hits.incrementAndGet();
+    }
+    return environment;
+  }
+
+  /**
+   * Caches the environment, ignored if the key doesn't belong to the current version.
+   *
+   * @param key - {@link Key}
+   * @param environment - resolved {@link Environment}
+   */
+  public void put(Key key, Environment environment) {
+    if (maxSize <= 0 || !key.getVersion().equals(version)) {
+      return;
+    }
+    synchronized (entries) {
+      //The miss resolving it counts as first request.
+      entries.put(key, new Entry(environment, 1));
+    }
+  }
+
+  /**
+   * Drops all entries and only accepts entries of the given version from now on.
+   *
+   * @param newVersion - newly published configuration version.
+   */
+  public void invalidate(String newVersion) {
+    invalidate(newVersion, Collections.emptyMap());
+  }
+
+  /**
+   * Drops all entries and caches the environments of the given version resolved ahead of
+   * requests, in one step.
+   *
+   * @param newVersion - newly published configuration version.
+   * @param prewarmed - environments of the new version by key.
+   */
+  public void invalidate(String newVersion, Map<Key, Environment> prewarmed) {
+    invalidate(newVersion, prewarmed, Collections.emptySet());
+  }
+
+  /**
+   * Drops all entries but the retained ones, which are moved to the given version, and caches
+   * the environments of the given version resolved ahead of requests, in one step.
+   *
+   * @param newVersion - newly published configuration version.
+   * @param prewarmed - environments of the new version by key.
+   * @param retained - keys of the cached version whose environments the new version leaves
+   *     unchanged.
+   */
+  public void invalidate(String newVersion, Map<Key, Environment> prewarmed, Set<Key> retained) {
+    synchronized (entries) {
+      Map<Key, Environment> moved = new LinkedHashMap<>();
+      for (Key key : retained) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+          Environment environment = new Environment(entry.environment);
+          environment.addAll(entry.environment.getPropertySources());
+          environment.setVersion(newVersion);
+          moved.put(new Key(key.getApplication(), key.getProfile(), key.getLabel(), newVersion),
+              environment);
+        }
+      }
+      version = newVersion;
+      entries.clear();
+      if (maxSize > 0) {
+        moved.forEach((key, environment) -> entries.put(key, new Entry(environment, 0)));
+        prewarmed.forEach((key, environment) -> entries.put(key, new Entry(environment, 0)));
+      }
+    }
+  }
+
+  /**
+   * Returns the keys of the cached version.
+   *
+   * @return cached keys, least recently used first.
+   */
+  public List<Key> keys() {
+    synchronized (entries) {
+      return new ArrayList<>(entries.keySet());
+    }
+  }
+
+  /**
+   * Returns the most requested keys of the cached version.
+   *
+   * @param count - maximum number of keys.
+   * @return requests by key, most requested first.
+   */
+  public Map<Key, Long> hottest(int count) {
+    List<Map.Entry<Key, Long>> requests = new ArrayList<>();
+    synchronized (entries) {
+      entries.forEach((key, entry) -> requests.add(
+          new AbstractMap.SimpleImmutableEntry<>(key, entry.requests)));
+    }
+    requests.sort(Map.Entry.<Key, Long>comparingByValue().reversed());
+    Map<Key, Long> hottest = new LinkedHashMap<>();
+    for (Map.Entry<Key, Long> entry : requests.subList(0, Math.min(count, requests.size()))) {
+      hottest.put(entry.getKey(), entry.getValue());
+    }
+    return hottest;
+  }
+
+  /**
+   * Returns the number of requests to the cached entries.
+   *
+   * @return requests
+   */
+  public long requests() {
+    synchronized (entries) {
+      return entries.values().stream().mapToLong(entry -> entry.requests).sum();
+    }
+  }
+
+  /**
+   * Returns number of cached entries.
+   *
+   * @return size
+   */
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return entries.evictions.get();
+  }
+
+  /**
+   * Returns the share of lookups served from the cache.
+   *
+   * @return hit ratio between 0 and 1, 0 before the first lookup.
+   */
+  public double getHitRatio() {
+    long hitCount = getHits();
+    long total = hitCount + getMisses();
+    return total == 0 ? 0 : (double) hitCount / total;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder(ConfigConstants.METRIC_CACHE + ".hits", this,
+        EnvironmentCache::getHits).register(registry);
+    FunctionCounter.builder(ConfigConstants.METRIC_CACHE + ".misses", this,
+        EnvironmentCache::getMisses).register(registry);
+    FunctionCounter.builder(ConfigConstants.METRIC_CACHE + ".evictions", this,
+        EnvironmentCache::getEvictions).register(registry);
+    Gauge.builder(ConfigConstants.METRIC_CACHE + ".size", this, EnvironmentCache::size)
+        .register(registry);
+    Gauge.builder(ConfigConstants.METRIC_CACHE + ".hit.ratio", this,
+        EnvironmentCache::getHitRatio).register(registry);
+  }
+
+  /**
+   * Access ordered map evicting the least recently used entry above max size.
+   */
+  private static final class LruMap extends LinkedHashMap<Key, Entry> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int maxSize;
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    LruMap(int maxSize) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+      if (size() > maxSize) {
+        evictions.incrementAndGet();
+        return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Cached environment and the number of requests it served.
+   */
+  private static final class Entry {
+
+    private final Environment environment;
+
+    private long requests;
+
+    private Entry(Environment environment, long requests) {
+      this.environment = environment;
+      this.requests = requests;
+    }
+  }
+
+  /**
+   * Cache key.
+   */
+  @Value
+  public static class Key {
+
+    private final String application;
+
+    private final String profile;
+
+    private final String label;
+
+    private final String version;
+  }
+}
@@ -0,0 +1,363 @@
+package com.spring.cloud.config.s3.cache;
+
+import com.spring.cloud.config.s3.constant.ConfigConstants;
+import com.spring.cloud.config.s3.repository.MultiBucketEnvironmentRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import org.springframework.cloud.config.server.environment.EnvironmentController;
+import org.springframework.cloud.config.server.resource.ResourceController;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Serves the environment endpoints of {@link EnvironmentController} - JSON, yml and
+ * properties - from bodies rendered once per configuration version.
+ * Responses carry the content version of their environment as weak ETag (JSON bodies also
+ * report the configuration version), so polling clients sending it back as If-None-Match are
+ * answered with 304 Not Modified while the files their environment is resolved from are
+ * unchanged - also across versions only changing other applications - without resolving it.
+ * Responses of the resource endpoints of {@link ResourceController} are tagged with the
+ * configuration version they are served from the same way, but not cached.
+ * It is registered as handler interceptor, which looks up the version of the application and
+ * label of a mapped request, and as filter, which keeps a copy of the body rendered on a miss
+ * while it is sent. Other responses pass through untouched.
+ *
+ * @author Nagesh Salunke
+ */
+public class ResponseCacheFilter extends OncePerRequestFilter implements HandlerInterceptor {
+
+  /**
+   * Request attribute holding the key a rendered body is cached with - request URI, query,
+   * Accept header and the configuration version it is served from.
+   */
+  private static final String KEY_ATTRIBUTE = ResponseCacheFilter.class.getName() + ".key";
+
+  /**
+   * Placeholder of '/' in labels, see {@link EnvironmentController}.
+   */
+  private static final String SLASH_PLACEHOLDER = "(_)";
+
+  private final MultiBucketEnvironmentRepository repository;
+
+  private final MeterRegistry meterRegistry;
+
+  /**
+   * Maximum number of responses, 0 disables the cache.
+   */
+  private final int maxSize;
+
+  /**
+   * Responses in access order, guarded by itself.
+   */
+  private final LruMap responses;
+
+  /**
+   * Constructor.
+   *
+   * @param repository - repository serving the environment endpoints.
+   * @param maxSize - maximum number of cached responses, 0 only tags responses.
+   * @param meterRegistry - {@link MeterRegistry}
+   */
+  public ResponseCacheFilter(MultiBucketEnvironmentRepository repository, int maxSize,
+      MeterRegistry meterRegistry) {
+    this.repository = repository;
+    this.maxSize = maxSize;
+    this.meterRegistry = meterRegistry;
+    this.responses = new LruMap(maxSize);
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+      FilterChain filterChain) throws ServletException, IOException {
+    if (!HttpMethod.GET.matches(request.getMethod())) {
+      filterChain.doFilter(request, response);
+      return;
+    }
+    CapturingResponse capturing = new CapturingResponse(response);
+    filterChain.doFilter(request, capturing);
+    @SuppressWarnings("unchecked")
+    List<String> key = (List<String>) request.getAttribute(KEY_ATTRIBUTE);
+    if (key != null && capturing.getStatus() == HttpServletResponse.SC_OK
+        && capturing.captured != null) {
+      put(key, new Response(capturing.captured.toByteArray(), capturing.getContentType()));
+    }
+  }
+
+  /**
+   * Answers requests of environment endpoints from the cache, or with 304 Not Modified if the
+   * client has the version already.
+   * A snapshot published between the version lookups and the resolution is cached under the
+   * previous version, which is no longer requested once the new one is served; its body may
+   * carry the previous content version, which the next request replaces.
+   */
+  @Override
+  public boolean preHandle(HttpServletRequest request, HttpServletResponse response,
+      Object handler) throws IOException {
+    if (!HttpMethod.GET.matches(request.getMethod()) || !(handler instanceof HandlerMethod)) {
+      return true;
+    }
+    Class<?> controller = ((HandlerMethod) handler).getBeanType();
+    boolean resource = ResourceController.class.isAssignableFrom(controller);
+    if (!resource && !EnvironmentController.class.isAssignableFrom(controller)) {
+      return true;
+    }
+    @SuppressWarnings("unchecked")
+    Map<String, String> variables = (Map<String, String>) request.getAttribute(
+        HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+    String application = unescape(variables.get("name"));
+    String label = unescape(variables.get("label"));
+    if (resource) {
+      return tagResource(request, response, repository.getServingVersion(application, label));
+    }
+    String contentVersion = repository.getContentVersion(application, variables.get("profiles"),
+        label);
+    String version = repository.getServingVersion(application, label);
+    if (contentVersion == null || version == null) {
+      return true;
+    }
+    String tag = "\"" + contentVersion.replace("\"", "") + "\"";
+    String etag = "W/" + tag;
+    if (matches(request, tag)) {
+      record("not-modified");
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      response.setHeader(HttpHeaders.ETAG, etag);
+      return false;
+    }
+    List<String> key = Arrays.asList(request.getRequestURI(), request.getQueryString(),
+        request.getHeader(HttpHeaders.ACCEPT), version);
+    Response cached;
+    synchronized (responses) {
+      cached = responses.get(key);
+    }
+    if (cached == null) {
+      record("miss");
+      if (response instanceof CapturingResponse) {
+        ((CapturingResponse) response).capture(etag);
+        request.setAttribute(KEY_ATTRIBUTE, key);
+      }
+      return true;
+    }
+    record("hit");
+    response.setHeader(HttpHeaders.ETAG, etag);
+    response.setContentType(cached.contentType);
+    response.setContentLength(cached.body.length);
+    response.getOutputStream().write(cached.body);
+    return false;
+  }
+
+  /**
+   * Tags responses of the resource endpoints with the configuration version they are served
+   * from, answering clients which have it with 304 Not Modified. Their bodies aren't cached,
+   * the files are served from memory already, see
+   * {@link com.spring.cloud.config.s3.repository.S3ResourceRepository}.
+   */
+  private boolean tagResource(HttpServletRequest request, HttpServletResponse response,
+      String version) {
+    if (version == null) {
+      return true;
+    }
+    String tag = "\"" + version.replace("\"", "") + "\"";
+    if (matches(request, tag)) {
+      meterRegistry.counter(ConfigConstants.METRIC_RESOURCES, "cache", "not-modified")
+          .increment();
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      response.setHeader(HttpHeaders.ETAG, "W/" + tag);
+      return false;
+    }
+    if (response instanceof CapturingResponse) {
+      ((CapturingResponse) response).tag("W/" + tag);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the number of cached responses.
+   *
+   * @return size
+   */
+  public int size() {
+    synchronized (responses) {
+      return responses.size();
+    }
+  }
+
+  private void put(List<String> key, Response response) {
+    if (maxSize <= 0) {
+      return;
+    }
+    synchronized (responses) {
+      responses.put(key, response);
+    }
+  }
+
+  private void record(String cache) {
+    meterRegistry.counter(ConfigConstants.METRIC_RESPONSES, "cache", cache).increment();
+  }
+
+  /**
+   * Returns true if If-None-Match lists the tag, compared weakly.
+   */
+  private static boolean matches(HttpServletRequest request, String tag) {
+    Enumeration<String> headers = request.getHeaders(HttpHeaders.IF_NONE_MATCH);
+    while (headers != null && headers.hasMoreElements()) {
+      for (String candidate : StringUtils.commaDelimitedListToStringArray(
+          headers.nextElement())) {
+        candidate = candidate.trim();
+        if (candidate.equals(tag) || candidate.equals("W/" + tag) || candidate.equals("*")) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static String unescape(String value) {
+    return value == null ? null : value.replace(SLASH_PLACEHOLDER, "/");
+  }
+
+  /**
+   * Response passing the body through, tagging it once {@link #tag} is called and keeping a
+   * copy of it once {@link #capture} is called.
+   * The ETag is only sent with a successful body, error responses of a tagged request don't
+   * carry it. Bodies written as characters aren't copied, the environment endpoints render
+   * them as bytes.
+   */
+  private static final class CapturingResponse extends HttpServletResponseWrapper {
+
+    private String etag;
+
+    private ByteArrayOutputStream captured;
+
+    private ServletOutputStream outputStream;
+
+    private CapturingResponse(HttpServletResponse response) {
+      super(response);
+    }
+
+    private void tag(String etag) {
+      this.etag = etag;
+    }
+
+    private void capture(String etag) {
+      tag(etag);
+      this.captured = new ByteArrayOutputStream();
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+      if (etag == null) {
+        return super.getOutputStream();
+      }
+      if (outputStream == null) {
+        if (getStatus() == SC_OK) {
+          setHeader(HttpHeaders.ETAG, etag);
+        }
+        outputStream = captured == null ? super.getOutputStream()
+            : new TeeOutputStream(super.getOutputStream(), captured);
+      }
+      return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+      captured = null;
+      return super.getWriter();
+    }
+  }
+
+  /**
+   * Output stream writing to the response and to a copy.
+   */
+  private static final class TeeOutputStream extends ServletOutputStream {
+
+    private final ServletOutputStream delegate;
+
+    private final ByteArrayOutputStream copy;
+
+    private TeeOutputStream(ServletOutputStream delegate, ByteArrayOutputStream copy) {
+      this.delegate = delegate;
+      this.copy = copy;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      delegate.write(b);
+      copy.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      delegate.write(b, off, len);
+      copy.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      delegate.flush();
+    }
+
+    @Override
+    public boolean isReady() {
+      return delegate.isReady();
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      delegate.setWriteListener(writeListener);
+    }
+  }
+
+  /**
+   * LinkedHashMap in access order evicting the least recently used entry beyond maxSize.
+   */
+  private static final class LruMap extends LinkedHashMap<List<String>, Response> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int maxSize;
+
+    LruMap(int maxSize) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<List<String>, Response> eldest) {
+      return size() > maxSize;
+    }
+  }
+
+  /**
+   * Rendered body.
+   */
+  private static final class Response {
+
+    private final byte[] body;
+
+    private final String contentType;
+
+    private Response(byte[] body, String contentType) {
+      this.body = body;
+      this.contentType = contentType;
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package com.spring.cloud.config.s3.cluster;
+
+import com.spring.cloud.config.s3.constant.ConfigConstants;
+import com.spring.cloud.config.s3.snapshot.SnapshotArchive;
+import com.spring.cloud.config.s3.snapshot.SnapshotManifest;
+import com.spring.cloud.config.s3.snapshot.SnapshotStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Fetches snapshots from the cluster leader, see {@link SnapshotController}.
+ * A snapshot is only accepted if the leader serves exactly the requested version and the
+ * extracted files match the checksum of its manifest; otherwise the caller falls back to S3.
+ *
+ * @author Nagesh Salunke
+ */
+@Log4j2
+public class PeerSnapshotClient {
+
+  private final String leaderUrl;
+
+  private final String token;
+
+  private final RestTemplate restTemplate;
+
+  private final MeterRegistry meterRegistry;
+
+  /**
+   * Constructor.
+   *
+   * @param leaderUrl - base URL of the leader.
+   * @param token - cluster token, may be empty.
+   * @param timeout - connect and read timeout in ms.
+   * @param meterRegistry - registry of the fetch counter.
+   */
+  public PeerSnapshotClient(String leaderUrl, String token, int timeout,
+      MeterRegistry meterRegistry) {
+    this.leaderUrl = StringUtils.trimTrailingCharacter(leaderUrl, '/');
+    this.token = token;
+    this.meterRegistry = meterRegistry;
+    SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+    requestFactory.setConnectTimeout(timeout);
+    requestFactory.setReadTimeout(timeout);
+    requestFactory.setBufferRequestBody(false);
+    this.restTemplate = new RestTemplate(requestFactory);
+  }
+
+  /**
+   * Fetches a version from the leader into the destination directory.
+   *
+   * @param version - version to fetch.
+   * @param destDir - empty destination directory, left empty if the fetch fails.
+   * @return manifest of the fetched snapshot, null if the leader couldn't provide it.
+   */
+  public SnapshotManifest fetch(String version, Path destDir) {
+    String outcome = "error";
+    try {
+      SnapshotManifest leaderManifest = restTemplate.exchange(
+          leaderUrl + SnapshotController.MANIFEST_PATH + "?version={version}", HttpMethod.GET,
+          new HttpEntity<>(headers()), SnapshotManifest.class, version).getBody();
+      if (leaderManifest == null || !version.equals(leaderManifest.getVersion())) {
+        outcome = "miss";
+        return null;
+      }
+      //Archive of a version published meanwhile is rejected by the leader or the checksum.
+      restTemplate.execute(leaderUrl + SnapshotController.ARCHIVE_PATH + "?version={version}",
+          HttpMethod.GET, request -> request.getHeaders().addAll(headers()),
+          response -> SnapshotArchive.extract(response.getBody(), destDir), version);
+      String checksum = SnapshotStore.checksum(destDir);
+      if (!checksum.equals(leaderManifest.getChecksum())) {
+        log.warn("Snapshot from leader doesn't match its checksum. (version={}, expected={},"
+            + " actual={})", version, leaderManifest.getChecksum(), checksum);
+        outcome = "corrupt";
+        clear(destDir);
+        return null;
+      }
+      SnapshotManifest manifest = new SnapshotManifest();
+      manifest.setVersion(version);
+      manifest.setObjects(leaderManifest.getObjects());
+      outcome = "fetched";
+      log.info("Fetched snapshot from leader. (leaderUrl={}, version={})", leaderUrl, version);
+      return manifest;
+    } catch (HttpStatusCodeException e) {
+      if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
+        outcome = "miss";
+      }
+      log.warn("Leader didn't serve snapshot. (leaderUrl={}, version={}, status={})",
+          leaderUrl, version, e.getStatusCode());
+      clear(destDir);
+      return null;
+    } catch (RestClientException | IOException e) {
+      log.warn("Could not fetch snapshot from leader. (leaderUrl={}, version={}, error={})",
+          leaderUrl, version, e.getMessage());
+      clear(destDir);
+      return null;
+    } finally {
+      meterRegistry.counter(ConfigConstants.METRIC_PEER_FETCH, "outcome", outcome).increment();
+    }
+  }
+
+  private HttpHeaders headers() {
+    HttpHeaders headers = new HttpHeaders();
+    if (StringUtils.hasText(token)) {
+      headers.set(SnapshotController.TOKEN_HEADER, token);
+    }
+    return headers;
+  }
+
+  /**
+   * Empties the destination directory for the fallback download.
+   *
+   * @param destDir - destination directory.
+   */
+  private static void clear(Path destDir) {
+    try {
+      FileSystemUtils.deleteRecursively(destDir);
+      Files.createDirectories(destDir);
+    } catch (IOException e) {
+      log.warn("Could not clear staging directory. (dir={})", destDir.toAbsolutePath(), e);
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package com.spring.cloud.config.s3.cluster;
+
+import com.spring.cloud.config.s3.config.S3EnvironmentRepositoryProperties;
+import com.spring.cloud.config.s3.repository.S3EnvironmentRepository;
+import com.spring.cloud.config.s3.snapshot.ConfigSnapshot;
+import com.spring.cloud.config.s3.snapshot.SnapshotArchive;
+import com.spring.cloud.config.s3.snapshot.SnapshotManifest;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Serves the published snapshot to peer replicas, see {@link PeerSnapshotClient}.
+ * A peer asks for the version it saw in S3; if this replica serves another version it refreshes
+ * first (shared with every other trigger) and waits up to refreshWaitTimeout, so a new version
+ * is downloaded from S3 once for the whole cluster. Versions the version check doesn't report
+ * are answered with 404 right away.
+ * Registered by ClusterConfiguration, callers must send the cluster token.
+ *
+ * @author Nagesh Salunke
+ */
+@RequestMapping
+public class SnapshotController {
+
+  /**
+   * Header carrying the cluster token.
+   */
+  public static final String TOKEN_HEADER = "X-Config-Cluster-Token";
+
+  /**
+   * Header carrying the version of a served archive.
+   */
+  public static final String VERSION_HEADER = "X-Config-Version";
+
+  /**
+   * Path of the snapshot manifest.
+   */
+  public static final String MANIFEST_PATH = "/s3/snapshot/manifest";
+
+  /**
+   * Path of the snapshot archive.
+   */
+  public static final String ARCHIVE_PATH = "/s3/snapshot";
+
+  private final S3EnvironmentRepository repository;
+
+  private final String token;
+
+  /**
+   * Constructor.
+   *
+   * @param repository - repository whose snapshot is served.
+   * @param properties - S3EnvironmentRepository properties, for the expected token.
+   * @throws IllegalStateException if no token is configured.
+   */
+  public SnapshotController(S3EnvironmentRepository repository,
+      S3EnvironmentRepositoryProperties properties) {
+    this.repository = repository;
+    this.token = properties.getCluster().getToken();
+    Assert.state(StringUtils.hasText(token),
+        "A cluster token is required to serve snapshots, set cluster.token");
+  }
+
+  /**
+   * Returns the manifest of a version.
+   *
+   * @param providedToken - token header.
+   * @param version - requested version.
+   * @return manifest, 404 if the version can't be served.
+   */
+  @GetMapping(path = MANIFEST_PATH, produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<SnapshotManifest> manifest(
+      @RequestHeader(name = TOKEN_HEADER, required = false) String providedToken,
+      @RequestParam("version") String version) {
+    if (!authorized(providedToken)) {
+      return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+    }
+    ConfigSnapshot snapshot = repository.acquireSnapshot(version);
+    if (snapshot == null) {
+      return ResponseEntity.notFound().build();
+    }
+    try {
+      return ResponseEntity.ok(snapshot.getManifest());
+    } finally {
+      repository.releaseSnapshot(snapshot);
+    }
+  }
+
+  /**
+   * Streams the archive of a version, the snapshot stays leased until it is written.
+   *
+   * @param providedToken - token header.
+   * @param version - requested version.
+   * @return zip archive, 404 if the version can't be served.
+   */
+  @GetMapping(path = ARCHIVE_PATH, produces = "application/zip")
+  public ResponseEntity<StreamingResponseBody> archive(
+      @RequestHeader(name = TOKEN_HEADER, required = false) String providedToken,
+      @RequestParam("version") String version) {
+    if (!authorized(providedToken)) {
+      return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+    }
+    ConfigSnapshot snapshot = repository.acquireSnapshot(version);
+    if (snapshot == null) {
+      return ResponseEntity.notFound().build();
+    }
+    StreamingResponseBody body = out -> {
+      try {
+        SnapshotArchive.write(snapshot.getDirectory().toPath(), out);
+      } finally {
+        repository.releaseSnapshot(snapshot);
+      }
+    };
+    return ResponseEntity.ok().header(VERSION_HEADER, snapshot.getVersion()).body(body);
+  }
+
+  private boolean authorized(String providedToken) {
+    return providedToken != null && MessageDigest.isEqual(
+        token.getBytes(StandardCharsets.UTF_8), providedToken.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -1,48 +1,130 @@
 package com.spring.cloud.config.s3.component.aspect;
 
-import com.amazonaws.services.s3.AmazonS3URI;
-import com.spring.cloud.config.s3.repository.S3Repository;
-import java.util.Optional;
+import com.spring.cloud.config.s3.config.S3EnvironmentRepositoryProperties;
+import com.spring.cloud.config.s3.repository.RefreshStatus;
+import com.spring.cloud.config.s3.repository.S3EnvironmentRepository;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Resource;
-import org.springframework.beans.factory.annotation.Value;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 
 /**
  * Health indicator for configuration service.
- * Checks
- *  - Meta version from S3 bucket for file - config.metadata.
+ * Reports from the state the refresh loop maintains, without calling S3 on the probe:
+ *  - Version being served and time of the last successful refresh.
+ *  - S3 reachability from the last version check of file - config.metadata.
+ * With healthProbeTtl set, an outdated S3 check is renewed in the background.
  *
  * @author Nagesh Salunke
  */
+@Log4j2
 @Component("ConfigurationServiceHealthIndicator")
-public class ConfigServiceHealthIndicator implements HealthIndicator {
+public class ConfigServiceHealthIndicator implements HealthIndicator, DisposableBean {
 
   /**
-   * S3Repository instance.
+   * S3EnvironmentRepository instance, absent when the s3 repository is disabled.
+   */
+  @Autowired
+  private ObjectProvider<S3EnvironmentRepository> environmentRepository;
+
+  /**
+   * S3EnvironmentRepository properties.
    */
   @Resource
-  private S3Repository s3Repository;
+  private S3EnvironmentRepositoryProperties properties;
 
   /**
-   * S3 bucket name.
+   * Runs background S3 probes.
    */
-  @Value("${spring.cloud.config.server.s3.uri}")
-  private String bucketNameURI;
+  private final ExecutorService probeExecutor;
+
+  /**
+   * Set while a background probe is queued or running.
+   */
+  private final AtomicBoolean probing = new AtomicBoolean();
+
+  /**
+   * Constructor.
+   */
+  public ConfigServiceHealthIndicator() {
+    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("S3HealthProbe-");
+    threadFactory.setDaemon(true);
+    this.probeExecutor = Executors.newSingleThreadExecutor(threadFactory);
+  }
 
   @Override
   public Health health() {
-    try {
-      String bucketName = new AmazonS3URI(bucketNameURI).getBucket();
-      Optional<String> currentBucketVersion = s3Repository.getBucketVersion(bucketName);
-      if (currentBucketVersion.isPresent()) {
-        return Health.up().withDetail("config-version", currentBucketVersion.get()).build();
-      } else {
-        return Health.down().withDetail("reason", "Could not access bucket " + bucketName).build();
-      }
-    } catch (Exception e) {
-      return Health.down().withDetail("reason", "Could not access bucket " + bucketNameURI).build();
+    S3EnvironmentRepository repository = environmentRepository.getIfAvailable();
+    if (repository == null) {
+      return Health.unknown().withDetail("reason", "S3 repository is not enabled").build();
+    }
+    long now = System.currentTimeMillis();
+    RefreshStatus status = repository.getRefreshStatus();
+    probeIfExpired(repository, status, now);
+
+    Health.Builder health;
+    if (status.getConfigVersion() == null) {
+      //Not failed, just not ready: the first refresh runs with the first poll or request.
+      health = Health.outOfService().withDetail("reason", "No configuration published yet");
+    } else if (status.getLastS3CheckTime() != 0 && !status.isS3Reachable()
+        && (properties.getHealthMaxStaleness() <= 0
+            || status.stalenessAt(now) > properties.getHealthMaxStaleness())) {
+      health = Health.down().withDetail("reason", "Could not access bucket " + repository.getUri());
+    } else {
+      health = Health.up();
     }
+    if (status.getConfigVersion() != null) {
+      health.withDetail("config-version", status.getConfigVersion());
+    }
+    if (status.getLastRefreshTime() != 0) {
+      health.withDetail("last-refresh",
+          Instant.ofEpochMilli(status.getLastRefreshTime()).toString())
+          .withDetail("staleness-ms", status.stalenessAt(now));
+    }
+    if (status.getLastS3CheckTime() != 0) {
+      health.withDetail("s3-reachable", status.isS3Reachable())
+          .withDetail("last-s3-check",
+              Instant.ofEpochMilli(status.getLastS3CheckTime()).toString());
+    }
+    return health.build();
+  }
+
+  /**
+   * Queues a S3 probe when the last check is older than healthProbeTtl, at most one at a time.
+   *
+   * @param repository - {@link S3EnvironmentRepository}
+   * @param status - current {@link RefreshStatus}
+   * @param now - current epoch millis.
+   */
+  private void probeIfExpired(S3EnvironmentRepository repository, RefreshStatus status,
+      long now) {
+    long ttl = properties.getHealthProbeTtl();
+    if (ttl <= 0 || now - status.getLastS3CheckTime() < ttl
+        || !probing.compareAndSet(false, true)) {
+      return;
+    }
+    probeExecutor.execute(() -> {
+      try {
+        repository.probeS3();
+      } catch (RuntimeException e) {
+        log.warn("Health probe of S3 failed. (uri={})", repository.getUri());
+      } finally {
+        probing.set(false);
+      }
+    });
+  }
+
+  @Override
+  public void destroy() {
+    probeExecutor.shutdownNow();
   }
 }
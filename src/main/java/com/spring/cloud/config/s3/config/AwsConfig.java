@@ -1,5 +1,6 @@
 package com.spring.cloud.config.s3.config;
 
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
@@ -7,9 +8,11 @@ import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.transfer.TransferManager;
 import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import java.util.concurrent.Executors;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 /**
  * AWS Config.
@@ -49,24 +52,33 @@ public class AwsConfig {
   }
 
   /**
-   * Creates {@link AmazonS3} bean.
+   * Creates {@link AmazonS3} bean, with a connection pool sized for parallel downloads.
    *
    * @return {@link AmazonS3}
    */
   @Bean
-  public AmazonS3 s3Client(AWSCredentialsProvider awsCredentialsProvider) {
+  public AmazonS3 s3Client(AWSCredentialsProvider awsCredentialsProvider,
+      S3EnvironmentRepositoryProperties properties) {
+    ClientConfiguration clientConfiguration = new ClientConfiguration()
+        .withMaxConnections(properties.getDownload().getMaxConnections());
     return AmazonS3ClientBuilder.standard().withCredentials(awsCredentialsProvider)
         .withRegion(region)
+        .withClientConfiguration(clientConfiguration)
         .build();
   }
 
   /**
-   * Creates {@link TransferManager} bean.
+   * Creates {@link TransferManager} bean, with a thread pool of the download parallelism.
    * @return {@link TransferManager}
    */
   @Bean
-  public TransferManager transferManager(AmazonS3 amazonS3) {
-    return TransferManagerBuilder.standard().withS3Client(amazonS3).build();
+  public TransferManager transferManager(AmazonS3 amazonS3,
+      S3EnvironmentRepositoryProperties properties) {
+    int parallelism = properties.getDownload().getParallelism();
+    return TransferManagerBuilder.standard().withS3Client(amazonS3)
+        .withExecutorFactory(() -> Executors.newFixedThreadPool(parallelism,
+            new CustomizableThreadFactory("S3Transfer-")))
+        .build();
   }
 
 }
@@ -0,0 +1,49 @@
+package com.spring.cloud.config.s3.config;
+
+import com.spring.cloud.config.s3.cluster.SnapshotController;
+import com.spring.cloud.config.s3.constant.ConfigConstants;
+import com.spring.cloud.config.s3.repository.S3EnvironmentRepository;
+import javax.annotation.Resource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Cluster configuration of the leader - {@link SnapshotController} serves the published snapshot
+ * to peers. Archives are written by a bounded pool instead of a thread per request, requests
+ * beyond its queue are rejected and peers fall back to S3.
+ *
+ * @author Nagesh Salunke
+ */
+@Configuration
+@ConditionalOnProperty(prefix = ConfigConstants.S3_REPO_PROP_PATH,
+    name = {"enabled", "cluster.serve-snapshots"}, havingValue = "true")
+public class ClusterConfiguration implements WebMvcConfigurer {
+
+  @Resource
+  private S3EnvironmentRepositoryProperties properties;
+
+  @Bean
+  public SnapshotController snapshotController(S3EnvironmentRepository environmentRepository) {
+    return new SnapshotController(environmentRepository, properties);
+  }
+
+  @Bean
+  public ThreadPoolTaskExecutor snapshotArchiveExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(properties.getCluster().getArchiveThreads());
+    executor.setMaxPoolSize(properties.getCluster().getArchiveThreads());
+    executor.setQueueCapacity(properties.getCluster().getArchiveQueueCapacity());
+    executor.setThreadNamePrefix("snapshot-archive-");
+    return executor;
+  }
+
+  @Override
+  public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+    configurer.setTaskExecutor(snapshotArchiveExecutor());
+    configurer.setDefaultTimeout(properties.getCluster().getArchiveTimeout());
+  }
+}
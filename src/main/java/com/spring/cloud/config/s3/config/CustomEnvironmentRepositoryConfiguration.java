@@ -1,14 +1,25 @@
 package com.spring.cloud.config.s3.config;
 
+import com.amazonaws.services.s3.AmazonS3URI;
+import com.spring.cloud.config.s3.cluster.PeerSnapshotClient;
 import com.spring.cloud.config.s3.constant.ConfigConstants;
+import com.spring.cloud.config.s3.repository.MultiBucketEnvironmentRepository;
+import com.spring.cloud.config.s3.repository.MultiBucketEnvironmentRepository.Tenant;
 import com.spring.cloud.config.s3.repository.S3EnvironmentRepository;
 import com.spring.cloud.config.s3.repository.S3Repository;
+import com.spring.cloud.config.s3.repository.S3ResourceRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
-import org.springframework.cloud.config.server.environment.EnvironmentRepository;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 
 /**
  * Custom repository - S3 configuration.
@@ -22,9 +33,69 @@ public class CustomEnvironmentRepositoryConfiguration {
   @ConditionalOnProperty(prefix = ConfigConstants.S3_REPO_PROP_PATH, name = "enabled",
       havingValue = "true")
   @Bean
-  public EnvironmentRepository environmentRepository(ConfigurableEnvironment environment,
-      S3EnvironmentRepositoryProperties properties, S3Repository s3Repository) {
-    return new S3EnvironmentRepository(environment, properties, s3Repository);
+  public S3EnvironmentRepository environmentRepository(ConfigurableEnvironment environment,
+      S3EnvironmentRepositoryProperties properties, S3Repository s3Repository,
+      MeterRegistry meterRegistry) {
+    S3EnvironmentRepository repository = new S3EnvironmentRepository(environment, properties,
+        s3Repository, meterRegistry);
+    S3EnvironmentRepositoryProperties.Cluster cluster = properties.getCluster();
+    if (StringUtils.hasText(cluster.getLeaderUrl())) {
+      repository.setPeerSnapshotClient(new PeerSnapshotClient(cluster.getLeaderUrl(),
+          cluster.getToken(), cluster.getTimeout(), meterRegistry));
+    }
+    return repository;
+  }
+
+  /**
+   * Creates the repository requests are served from, routing them to the tenant buckets or to
+   * the default one. Replaces the composite of Spring Cloud Config, tenant repositories aren't
+   * beans so their property sources are never merged into other responses.
+   *
+   * @return {@link MultiBucketEnvironmentRepository}
+   */
+  @ConditionalOnProperty(prefix = ConfigConstants.S3_REPO_PROP_PATH, name = "enabled",
+      havingValue = "true")
+  @Bean
+  @Primary
+  public MultiBucketEnvironmentRepository multiBucketEnvironmentRepository(
+      ConfigurableEnvironment environment, S3EnvironmentRepositoryProperties properties,
+      S3EnvironmentRepository environmentRepository, S3Repository s3Repository,
+      MeterRegistry meterRegistry) {
+    List<Tenant> tenants = new ArrayList<>();
+    File basedir = environmentRepository.getBasedir();
+    properties.getTenants().forEach((name, tenantProperties) -> {
+      Assert.state(!tenantProperties.getApplications().isEmpty()
+          || !tenantProperties.getLabels().isEmpty(),
+          "Tenant " + name + " needs application or label patterns");
+      S3EnvironmentRepository repository = new S3EnvironmentRepository(environment, properties,
+          s3Repository, meterRegistry);
+      repository.setUri(tenantProperties.getUri());
+      if (!tenantProperties.getSearchPaths().isEmpty()) {
+        repository.setSearchPaths(tenantProperties.getSearchPaths().toArray(new String[0]));
+      }
+      //Sibling of the default basedir, snapshots of a basedir purge the other directories in it.
+      repository.setBasedir(new File(basedir.getParentFile(), basedir.getName() + "-" + name));
+      repository.afterPropertiesSet();
+      s3Repository.isolateBucket(new AmazonS3URI(repository.getUri()).getBucket(),
+          tenantProperties.getDownloadParallelism());
+      tenants.add(new Tenant(name, tenantProperties.getApplications(),
+          tenantProperties.getLabels(), repository, tenantProperties.getPollingRefreshRate(),
+          tenantProperties.getMaxConcurrentRequests(), properties.getRefreshWaitTimeout()));
+    });
+    return new MultiBucketEnvironmentRepository(environmentRepository, tenants);
+  }
+
+  /**
+   * Creates the repository of the resource endpoints, replacing the one of Spring Cloud Config.
+   *
+   * @return {@link S3ResourceRepository}
+   */
+  @ConditionalOnProperty(prefix = ConfigConstants.S3_REPO_PROP_PATH, name = "enabled",
+      havingValue = "true")
+  @Bean
+  public S3ResourceRepository resourceRepository(
+      MultiBucketEnvironmentRepository multiBucketEnvironmentRepository) {
+    return new S3ResourceRepository(multiBucketEnvironmentRepository);
   }
 
 }
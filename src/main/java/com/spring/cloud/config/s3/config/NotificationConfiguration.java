@@ -0,0 +1,82 @@
+package com.spring.cloud.config.s3.config;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
+import com.spring.cloud.config.s3.constant.ConfigConstants;
+import com.spring.cloud.config.s3.notification.ChangeNotificationListener;
+import com.spring.cloud.config.s3.notification.RefreshOnChangeListener;
+import com.spring.cloud.config.s3.notification.SqsChangeNotificationSource;
+import com.spring.cloud.config.s3.notification.WebhookChangeNotificationController;
+import com.spring.cloud.config.s3.repository.MultiBucketEnvironmentRepository;
+import com.spring.cloud.config.s3.repository.S3EnvironmentRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Change notification configuration - S3 event notifications from SQS or the webhook
+ * ({@link WebhookChangeNotificationController}) trigger refreshes, polling stays as fallback.
+ *
+ * @author Nagesh Salunke
+ */
+@Configuration
+@ConditionalOnProperty(prefix = ConfigConstants.S3_REPO_PROP_PATH, name = "enabled",
+    havingValue = "true")
+public class NotificationConfiguration {
+
+  /**
+   * AWS region.
+   */
+  @Value("${aws.region}")
+  private String region;
+
+  @Bean
+  @ConditionalOnMissingBean
+  public ChangeNotificationListener changeNotificationListener(
+      S3EnvironmentRepository environmentRepository,
+      ObjectProvider<MultiBucketEnvironmentRepository> multiBucketRepository,
+      MeterRegistry meterRegistry) {
+    List<S3EnvironmentRepository> repositories = new ArrayList<>();
+    repositories.add(environmentRepository);
+    MultiBucketEnvironmentRepository tenants = multiBucketRepository.getIfAvailable();
+    if (tenants != null) {
+      tenants.getTenants().forEach(tenant -> repositories.add(tenant.getRepository()));
+    }
+    return new RefreshOnChangeListener(repositories, meterRegistry);
+  }
+
+  @Bean
+  @ConditionalOnProperty(prefix = ConfigConstants.S3_REPO_PROP_PATH,
+      name = "notifications.sqs-queue-url")
+  @ConditionalOnMissingBean
+  public AmazonSQS amazonSqs(AWSCredentialsProvider awsCredentialsProvider) {
+    return AmazonSQSClientBuilder.standard().withCredentials(awsCredentialsProvider)
+        .withRegion(region)
+        .build();
+  }
+
+  @Bean
+  @ConditionalOnProperty(prefix = ConfigConstants.S3_REPO_PROP_PATH,
+      name = "notifications.sqs-queue-url")
+  public SqsChangeNotificationSource sqsChangeNotificationSource(AmazonSQS amazonSqs,
+      S3EnvironmentRepositoryProperties properties, ChangeNotificationListener listener) {
+    return new SqsChangeNotificationSource(amazonSqs,
+        properties.getNotifications().getSqsQueueUrl(),
+        properties.getNotifications().getSqsWaitTimeSeconds(), listener);
+  }
+
+  @Bean
+  @ConditionalOnProperty(prefix = ConfigConstants.S3_REPO_PROP_PATH,
+      name = "notifications.webhook-enabled", havingValue = "true")
+  public WebhookChangeNotificationController webhookChangeNotificationController(
+      ChangeNotificationListener listener, S3EnvironmentRepositoryProperties properties) {
+    return new WebhookChangeNotificationController(listener, properties);
+  }
+}
@@ -0,0 +1,48 @@
+package com.spring.cloud.config.s3.config;
+
+import com.spring.cloud.config.s3.cache.ResponseCacheFilter;
+import com.spring.cloud.config.s3.constant.ConfigConstants;
+import com.spring.cloud.config.s3.repository.MultiBucketEnvironmentRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import javax.annotation.Resource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Response cache configuration - {@link ResponseCacheFilter} is registered as servlet filter and
+ * as interceptor of the environment endpoints.
+ *
+ * @author Nagesh Salunke
+ */
+@Configuration
+@ConditionalOnProperty(prefix = ConfigConstants.S3_REPO_PROP_PATH, name = "enabled",
+    havingValue = "true")
+public class ResponseCacheConfiguration implements WebMvcConfigurer {
+
+  /**
+   * Repository serving the environment endpoints.
+   */
+  @Autowired
+  private MultiBucketEnvironmentRepository multiBucketEnvironmentRepository;
+
+  @Resource
+  private S3EnvironmentRepositoryProperties properties;
+
+  @Resource
+  private MeterRegistry meterRegistry;
+
+  @Bean
+  public ResponseCacheFilter responseCacheFilter() {
+    return new ResponseCacheFilter(multiBucketEnvironmentRepository,
+        properties.getResponseCacheSize(), meterRegistry);
+  }
+
+  @Override
+  public void addInterceptors(InterceptorRegistry registry) {
+    registry.addInterceptor(responseCacheFilter());
+  }
+}
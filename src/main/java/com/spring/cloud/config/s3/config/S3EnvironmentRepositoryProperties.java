@@ -1,6 +1,10 @@
 package com.spring.cloud.config.s3.config;
 
 import com.spring.cloud.config.s3.constant.ConfigConstants;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -21,6 +25,391 @@ public class S3EnvironmentRepositoryProperties extends AbstractScmAccessorProper
    */
   private static final String DEFAULT_LABEL = "master";
 
+  /**
+   * Check the S3 metafile version on every request. When disabled, requests are served from the
+   * last published snapshot and only the poller (or an explicit refresh) talks to S3.
+   */
+  private boolean refreshOnRequest = true;
+
+  /**
+   * Milliseconds a request waits for an in-flight refresh before it is served from the current
+   * snapshot. Only applies with refreshOnRequest, requests without any snapshot always wait.
+   */
+  private long refreshWaitTimeout = 5000;
+
+  /**
+   * Maximum number of resolved environments cached per version, 0 disables the cache.
+   */
+  private int environmentCacheSize = 1000;
+
+  /**
+   * Number of the most requested environments resolved against a new snapshot before it is
+   * published, 0 publishes it cold.
+   */
+  private int prewarmSize = 100;
+
+  /**
+   * Maximum number of rendered responses of the environment endpoints cached per version,
+   * 0 disables the cache. Responses are tagged with their version either way.
+   */
+  private int responseCacheSize = 1000;
+
+  /**
+   * Maximum number of bytes of configuration files cached for the resource endpoints,
+   * 0 reads them from disk on every request.
+   */
+  private long resourceCacheBytes = 64L * 1024 * 1024;
+
+  /**
+   * Parse all configuration files once per version and compose environments from the parsed
+   * property sources, instead of a NativeEnvironmentRepository context per request.
+   * Opt-in: the index reimplements the ConfigFileApplicationListener ordering, falling back to
+   * native resolution only for profile activation and placeholders in spring.profiles.
+   */
+  private boolean indexPropertySources;
+
+  /**
+   * How a new version is fetched from the bucket.
+   */
+  private SyncMode syncMode = SyncMode.FULL;
+
+  /**
+   * Key of the snapshot archive in PACKED sync mode, {version} is replaced by the metafile
+   * version.
+   */
+  private String packKey = "snapshots/{version}.zip";
+
+  /**
+   * Milliseconds a metafile version check is reused by requests, refreshes and health probes,
+   * 0 checks S3 every time. Checks after the TTL are conditional on the last ETag.
+   */
+  private long versionCacheTtl = 1000;
+
+  /**
+   * Milliseconds after which the health indicator probes S3 again in the background when it is
+   * queried, 0 leaves S3 checks to refreshes.
+   */
+  private long healthProbeTtl = 0;
+
+  /**
+   * Milliseconds since the last successful refresh the service stays UP while S3 is unreachable,
+   * 0 reports DOWN as soon as a S3 check fails.
+   */
+  private long healthMaxStaleness = 0;
+
+  /**
+   * Download engine settings.
+   */
+  private Download download = new Download();
+
+  /**
+   * Download engine settings, objects are fetched with parallel GETs.
+   */
+  @Getter
+  @Setter
+  public static class Download {
+
+    /**
+     * Number of objects downloaded in parallel.
+     */
+    private int parallelism = 16;
+
+    /**
+     * Maximum number of pooled HTTP connections of the S3 client.
+     */
+    private int maxConnections = 64;
+
+    /**
+     * Milliseconds a single object request may take, 0 for no limit. Objects downloaded
+     * through the TransferManager get it per largeObjectThreshold bytes.
+     */
+    private int objectTimeout = 30000;
+
+    /**
+     * Objects of at least this many bytes are downloaded through the TransferManager, which
+     * fetches multipart objects in parallel parts.
+     */
+    private long largeObjectThreshold = 16L * 1024 * 1024;
+
+    /**
+     * Key of a sha256sum formatted file (a 'sha256  key' line per object) published with the
+     * metafile, downloaded objects listed in it must match their SHA-256. Empty verifies objects
+     * against their ETag and size only.
+     */
+    private String checksumsKey = "";
+
+    /**
+     * Re-hash a persisted snapshot on startup before it is restored. Snapshots are verified
+     * while they are downloaded, false restores them without reading them again.
+     */
+    private boolean verifyRestoredSnapshots = true;
+  }
+
+  /**
+   * LAZY sync mode settings.
+   */
+  private Lazy lazy = new Lazy();
+
+  /**
+   * LAZY sync mode settings, prefixes are fetched on demand and evicted least recently used.
+   */
+  @Getter
+  @Setter
+  public static class Lazy {
+
+    /**
+     * Bytes of fetched objects kept on disk per version before prefixes are evicted.
+     */
+    private long maxCacheSize = 256L * 1024 * 1024;
+  }
+
+  /**
+   * Change notification settings.
+   */
+  private Notifications notifications = new Notifications();
+
+  /**
+   * Change notification settings, S3 event notifications trigger a refresh within seconds while
+   * polling stays as fallback.
+   */
+  @Getter
+  @Setter
+  public static class Notifications {
+
+    /**
+     * URL of the SQS queue S3 event notifications are delivered to, empty disables the queue.
+     */
+    private String sqsQueueUrl;
+
+    /**
+     * Seconds a receive call on the queue waits for messages (long polling, at most 20).
+     */
+    private int sqsWaitTimeSeconds = 20;
+
+    /**
+     * Enables the webhook endpoint receiving S3 event notifications (directly or through SNS).
+     */
+    private boolean webhookEnabled;
+
+    /**
+     * Token the webhook expects in the X-Config-Webhook-Token header, empty accepts any caller.
+     */
+    private String webhookToken;
+
+    /**
+     * Enables the watch endpoint clients long-poll for new versions of their configuration.
+     */
+    private boolean watchEnabled = true;
+
+    /**
+     * Milliseconds a watch is held before it is answered with 304 Not Modified.
+     */
+    private long watchTimeout = 30000;
+
+    /**
+     * Maximum number of watches held at once, further watches are answered with 429.
+     */
+    private int maxWatches = 50000;
+  }
+
+  /**
+   * Adaptive polling settings.
+   */
+  private Polling polling = new Polling();
+
+  /**
+   * Adaptive polling settings, the interval shrinks after a change, grows while the version is
+   * stable and backs off on S3 errors, starting from pollingRefreshRate.
+   */
+  @Getter
+  @Setter
+  public static class Polling {
+
+    /**
+     * Milliseconds between polls right after a change, 0 for a quarter of pollingRefreshRate.
+     */
+    private long minInterval = 0;
+
+    /**
+     * Upper bound in milliseconds of the interval while versions are stable, 0 for
+     * pollingRefreshRate - stable buckets are only polled less often if it is set.
+     */
+    private long maxInterval = 0;
+
+    /**
+     * Upper bound in milliseconds of the interval while S3 fails, 0 for four times
+     * pollingRefreshRate.
+     */
+    private long maxBackoffInterval = 0;
+
+    /**
+     * Relative random spread of every interval, so replicas don't poll in lockstep.
+     */
+    private double jitter = 0.1;
+  }
+
+  /**
+   * Cluster settings.
+   */
+  private Cluster cluster = new Cluster();
+
+  /**
+   * Cluster settings, one replica downloads new versions from S3 and serves them to its peers.
+   */
+  @Getter
+  @Setter
+  public static class Cluster {
+
+    /**
+     * Base URL of the replica peers fetch snapshots from, empty fetches from S3 only.
+     * Not to be set on the leader itself.
+     */
+    private String leaderUrl;
+
+    /**
+     * Serves the published snapshot to peers on /s3/snapshot.
+     */
+    private boolean serveSnapshots;
+
+    /**
+     * Token expected in the X-Config-Cluster-Token header, sent by peers. Required to serve
+     * snapshots, they contain the whole configuration.
+     */
+    private String token;
+
+    /**
+     * Milliseconds to connect to and read from the leader before falling back to S3.
+     */
+    private int timeout = 30000;
+
+    /**
+     * Threads writing snapshot archives to peers.
+     */
+    private int archiveThreads = 4;
+
+    /**
+     * Archive requests queued while every archive thread is busy, rejected beyond.
+     */
+    private int archiveQueueCapacity = 16;
+
+    /**
+     * Milliseconds an archive may take to write before the request is timed out.
+     */
+    private long archiveTimeout = 300000;
+  }
+
+  /**
+   * Label settings.
+   */
+  private Labels labels = new Labels();
+
+  /**
+   * Label settings, labels other than the default label are served from immutable versions
+   * below a key prefix, so clients can pin or roll back configuration.
+   */
+  @Getter
+  @Setter
+  public static class Labels {
+
+    /**
+     * Serves labels from the prefix, disabled labels are ignored.
+     */
+    private boolean enabled;
+
+    /**
+     * Key prefix of a label version, {label} is the requested label. Objects below its root are
+     * left out of the default label snapshot.
+     */
+    private String prefix = "versions/{label}/";
+
+    /**
+     * Label snapshots kept locally, least recently used ones are deleted beyond.
+     */
+    private int maxSnapshots = 8;
+
+    /**
+     * Milliseconds a label without objects is remembered as missing before S3 is listed again.
+     */
+    private long missingTtl = 60000;
+  }
+
+  /**
+   * Additional buckets by tenant name, requests are routed to the first tenant whose patterns
+   * match and to uri otherwise.
+   */
+  private Map<String, Tenant> tenants = new LinkedHashMap<>();
+
+  /**
+   * Bucket of a tenant, with its own snapshot, version, polling and download pool.
+   */
+  @Getter
+  @Setter
+  public static class Tenant {
+
+    /**
+     * Bucket uri (e.g. 's3://bucket/').
+     */
+    private String uri;
+
+    /**
+     * Application name patterns routed to the bucket ('*' wildcards), empty for any.
+     */
+    private List<String> applications = new ArrayList<>();
+
+    /**
+     * Label patterns routed to the bucket ('*' wildcards), empty for any.
+     */
+    private List<String> labels = new ArrayList<>();
+
+    /**
+     * Search paths in the bucket, empty for the searchPaths of uri.
+     */
+    private List<String> searchPaths = new ArrayList<>();
+
+    /**
+     * Base polling interval in ms, 0 for pollingRefreshRate.
+     */
+    private long pollingRefreshRate = 0;
+
+    /**
+     * Objects of the bucket downloaded in parallel, on a pool of its own.
+     */
+    private int downloadParallelism = 4;
+
+    /**
+     * Requests for the bucket served at once, further requests wait up to refreshWaitTimeout.
+     */
+    private int maxConcurrentRequests = 32;
+  }
+
+  /**
+   * Modes of fetching a new version from the bucket.
+   */
+  public enum SyncMode {
+
+    /**
+     * Download every object of the bucket.
+     */
+    FULL,
+
+    /**
+     * Download only objects whose ETag or size changed since the previous snapshot.
+     */
+    INCREMENTAL,
+
+    /**
+     * Download a single zip archive of the configuration uploaded for the version, see
+     * packKey. Falls back to FULL while there is no archive for the version.
+     */
+    PACKED,
+
+    /**
+     * Download only the search path prefixes requested applications and profiles resolve to,
+     * when they are first requested; see lazy.maxCacheSize.
+     */
+    LAZY
+  }
+
   public S3EnvironmentRepositoryProperties() {
     super();
     setDefaultLabel(DEFAULT_LABEL);
@@ -1,6 +1,18 @@
 package com.spring.cloud.config.s3.config;
 
 import com.spring.cloud.config.s3.constant.ConfigConstants;
+import com.spring.cloud.config.s3.polling.AdaptivePollingTrigger;
+import com.spring.cloud.config.s3.polling.RepositoryPoller;
+import com.spring.cloud.config.s3.repository.MultiBucketEnvironmentRepository;
+import com.spring.cloud.config.s3.repository.MultiBucketEnvironmentRepository.Tenant;
+import com.spring.cloud.config.s3.repository.S3EnvironmentRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
@@ -10,7 +22,9 @@ import org.springframework.scheduling.config.ScheduledTaskRegistrar;
 
 /**
  * Scheduler configuration - This configuration is for ThreadPool for scheduler.
- * Config Refresh Task threads will use this scheduler config.
+ * Config Refresh Task threads will use this scheduler config, the repository is polled with an
+ * {@link AdaptivePollingTrigger} starting at pollingRefreshRate, each tenant bucket with a trigger
+ * of its own.
  *
  * @author Nagesh Salunke
  */
@@ -22,12 +36,87 @@ public class SchedulerConfig implements SchedulingConfigurer {
 
   private static final int DEFAULT_POOL_SIZE = 2;
 
+  /**
+   * Tenant tag of the default bucket.
+   */
+  private static final String DEFAULT_TENANT = "default";
+
+  private final ObjectProvider<S3EnvironmentRepository> repository;
+
+  private final ObjectProvider<MultiBucketEnvironmentRepository> multiBucketEnvironmentRepository;
+
+  private final ObjectProvider<MeterRegistry> meterRegistry;
+
+  private final S3EnvironmentRepositoryProperties properties;
+
+  private final long pollingRefreshRate;
+
+  /**
+   * Constructor.
+   *
+   * @param repository - repository to poll, if any.
+   * @param multiBucketEnvironmentRepository - tenant repositories to poll, if any.
+   * @param meterRegistry - registry of the polling interval gauge, if any.
+   * @param properties - repository properties.
+   * @param pollingRefreshRate - base polling interval in ms.
+   */
+  public SchedulerConfig(ObjectProvider<S3EnvironmentRepository> repository,
+      ObjectProvider<MultiBucketEnvironmentRepository> multiBucketEnvironmentRepository,
+      ObjectProvider<MeterRegistry> meterRegistry, S3EnvironmentRepositoryProperties properties,
+      @Value("${spring.cloud.config.server.s3.pollingRefreshRate:60000}") long pollingRefreshRate) {
+    this.repository = repository;
+    this.multiBucketEnvironmentRepository = multiBucketEnvironmentRepository;
+    this.meterRegistry = meterRegistry;
+    this.properties = properties;
+    this.pollingRefreshRate = pollingRefreshRate;
+  }
+
   @Override
   public void configureTasks(ScheduledTaskRegistrar scheduledTaskRegistrar) {
+    MultiBucketEnvironmentRepository multiBucketRepository =
+        multiBucketEnvironmentRepository.getIfAvailable();
+    List<Tenant> tenants = multiBucketRepository == null ? Collections.emptyList()
+        : multiBucketRepository.getTenants();
     ThreadPoolTaskScheduler threadPoolTaskScheduler = new ThreadPoolTaskScheduler();
-    threadPoolTaskScheduler.setPoolSize(DEFAULT_POOL_SIZE);
+    //Polls block while a new version downloads, a thread per tenant keeps buckets independent.
+    threadPoolTaskScheduler.setPoolSize(DEFAULT_POOL_SIZE + tenants.size());
     threadPoolTaskScheduler.setThreadNamePrefix("ScheduleTaskPool-");
     threadPoolTaskScheduler.initialize();
     scheduledTaskRegistrar.setTaskScheduler(threadPoolTaskScheduler);
+
+    S3EnvironmentRepository s3EnvironmentRepository = repository.getIfAvailable();
+    if (s3EnvironmentRepository == null) {
+      return;
+    }
+    schedule(scheduledTaskRegistrar, s3EnvironmentRepository, DEFAULT_TENANT,
+        pollingRefreshRate);
+    for (Tenant tenant : tenants) {
+      schedule(scheduledTaskRegistrar, tenant.getRepository(), tenant.getName(),
+          tenant.getPollingRefreshRate() > 0 ? tenant.getPollingRefreshRate()
+              : pollingRefreshRate);
+    }
+  }
+
+  private void schedule(ScheduledTaskRegistrar scheduledTaskRegistrar,
+      S3EnvironmentRepository s3EnvironmentRepository, String tenant, long baseInterval) {
+    S3EnvironmentRepositoryProperties.Polling polling = properties.getPolling();
+    long minInterval = polling.getMinInterval() > 0
+        ? polling.getMinInterval() : baseInterval / 4;
+    long maxInterval = polling.getMaxInterval() > 0
+        ? polling.getMaxInterval() : baseInterval;
+    long maxBackoffInterval = polling.getMaxBackoffInterval() > 0
+        ? polling.getMaxBackoffInterval() : baseInterval * 4;
+    AdaptivePollingTrigger trigger = new AdaptivePollingTrigger(baseInterval, minInterval,
+        maxInterval, maxBackoffInterval, polling.getJitter(), new Random());
+    MeterRegistry registry = meterRegistry.getIfAvailable();
+    if (registry != null) {
+      Gauge.builder(ConfigConstants.METRIC_POLLING_INTERVAL, trigger,
+          AdaptivePollingTrigger::getEffectiveInterval)
+          .baseUnit("milliseconds")
+          .tag("tenant", tenant)
+          .register(registry);
+    }
+    scheduledTaskRegistrar.addTriggerTask(
+        new RepositoryPoller(s3EnvironmentRepository, trigger), trigger);
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,39 @@
+package com.spring.cloud.config.s3.config;
+
+import com.spring.cloud.config.s3.constant.ConfigConstants;
+import com.spring.cloud.config.s3.notification.ConfigWatcher;
+import com.spring.cloud.config.s3.notification.WatchController;
+import com.spring.cloud.config.s3.repository.MultiBucketEnvironmentRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Watch configuration - {@link ConfigWatcher} holds the long-polls of {@link WatchController}
+ * until a new version of the watched bucket is published.
+ *
+ * @author Nagesh Salunke
+ */
+@Configuration
+@ConditionalOnProperty(prefix = ConfigConstants.S3_REPO_PROP_PATH, name = "enabled",
+    havingValue = "true")
+public class WatchConfiguration {
+
+  @Bean
+  @ConditionalOnProperty(prefix = ConfigConstants.S3_REPO_PROP_PATH,
+      name = "notifications.watch-enabled", havingValue = "true", matchIfMissing = true)
+  public ConfigWatcher configWatcher(MultiBucketEnvironmentRepository multiBucketRepository,
+      S3EnvironmentRepositoryProperties properties, MeterRegistry meterRegistry) {
+    return new ConfigWatcher(multiBucketRepository,
+        properties.getNotifications().getWatchTimeout(),
+        properties.getNotifications().getMaxWatches(), meterRegistry);
+  }
+
+  @Bean
+  @ConditionalOnProperty(prefix = ConfigConstants.S3_REPO_PROP_PATH,
+      name = "notifications.watch-enabled", havingValue = "true", matchIfMissing = true)
+  public WatchController watchController(ConfigWatcher configWatcher) {
+    return new WatchController(configWatcher);
+  }
+}
@@ -13,4 +13,55 @@ public class ConfigConstants {
 
   // Temp config repo - Prefix
   public static final String TEMP_CONFIG_REPO_PREFIX = "config-repo-tmp-";
-}
\ No newline at end of file
+
+  // Snapshot manifest - File name in base directory
+  public static final String SNAPSHOT_MANIFEST_FILE = "snapshot-manifest.json";
+
+  // Metrics - S3 call latency, tagged by operation and outcome
+  public static final String METRIC_S3_REQUESTS = "s3.config.s3.requests";
+
+  // Metrics - Bytes downloaded from S3
+  public static final String METRIC_DOWNLOAD_BYTES = "s3.config.download.bytes";
+
+  // Metrics - Objects downloaded from S3
+  public static final String METRIC_DOWNLOAD_OBJECTS = "s3.config.download.objects";
+
+  // Metrics - Refresh duration, tagged by outcome
+  public static final String METRIC_REFRESH = "s3.config.refresh";
+
+  // Metrics - Refresh phase duration, tagged by phase (check, download, publish)
+  public static final String METRIC_REFRESH_PHASE = "s3.config.refresh.phase";
+
+  // Metrics - findOne latency, tagged by application and cache outcome
+  public static final String METRIC_FIND_ONE = "s3.config.find";
+
+  // Metrics - Environment cache meters prefix
+  public static final String METRIC_CACHE = "s3.config.cache";
+
+  // Metrics - Change notifications received, tagged by source and relevance
+  public static final String METRIC_NOTIFICATIONS = "s3.config.notifications";
+
+  // Metrics - Effective interval of the adaptive poller in milliseconds, jitter included
+  public static final String METRIC_POLLING_INTERVAL = "s3.config.polling.interval";
+
+  // Metrics - Snapshot fetches from the cluster leader, tagged by outcome
+  public static final String METRIC_PEER_FETCH = "s3.config.peer.fetch";
+
+  // Metrics - Metafile version checks, tagged by outcome (cached, not-modified, fetched, error)
+  public static final String METRIC_VERSION_CHECKS = "s3.config.version.checks";
+
+  // Metrics - Downloaded objects rejected because they don't match their checksum
+  public static final String METRIC_DOWNLOAD_CORRUPT = "s3.config.download.corrupt";
+
+  // Metrics - Environment endpoint responses, tagged by cache (hit, not-modified, miss)
+  public static final String METRIC_RESPONSES = "s3.config.responses";
+
+  // Metrics - Prewarming of a new snapshot, and the share of requests its environments served
+  public static final String METRIC_PREWARM = "s3.config.prewarm";
+
+  // Metrics - Watches held until a new version is published
+  public static final String METRIC_WATCHES = "s3.config.watches";
+
+  // Metrics - Resource endpoint files served, tagged by cache (hit, miss)
+  public static final String METRIC_RESOURCES = "s3.config.resources";
+}
@@ -0,0 +1,309 @@
+package com.spring.cloud.config.s3.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.env.PropertiesPropertySourceLoader;
+import org.springframework.boot.env.PropertySourceLoader;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.util.StringUtils;
+
+/**
+ * Property sources of every configuration file of a snapshot, parsed once when the snapshot is
+ * published. Environments are composed from the parsed documents in the order Spring Boot's
+ * ConfigFileApplicationListener loads them for NativeEnvironmentRepository, without creating an
+ * application context or reading files per request.
+ * Snapshots activating or including profiles from within configuration files, or using
+ * placeholders in spring.profiles, aren't indexed; those are resolved the native way.
+ *
+ * @author Nagesh Salunke
+ */
+@Log4j2
+public final class PropertySourceIndex {
+
+  private static final List<PropertySourceLoader> LOADERS = Collections.unmodifiableList(
+      Arrays.asList(new PropertiesPropertySourceLoader(), new YamlPropertySourceLoader()));
+
+  /**
+   * Parsed documents by file URI, e.g. file:/basedir/v1-1/staging/application-staging.yml
+   */
+  private final Map<String, List<Document>> files;
+
+  private PropertySourceIndex(Map<String, List<Document>> files) {
+    this.files = files;
+  }
+
+  /**
+   * Parses every configuration file below the directory.
+   *
+   * @param directory - snapshot directory.
+   * @return {@link PropertySourceIndex}, null if the snapshot can't be indexed.
+   */
+  public static PropertySourceIndex build(File directory) {
+    List<Path> paths;
+    try (Stream<Path> walk = Files.walk(directory.toPath())) {
+      paths = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+    } catch (IOException e) {
+      log.warn("Could not index snapshot. (dir={})", directory.getAbsolutePath(), e);
+      return null;
+    }
+    Map<String, List<Document>> files = new HashMap<>();
+    for (Path path : paths) {
+      String extension = StringUtils.getFilenameExtension(path.toFile().getName());
+      PropertySourceLoader loader = extension == null ? null : loader(extension);
+      if (loader == null) {
+        continue;
+      }
+      String location = path.toFile().toURI().toString();
+      List<Document> documents = new ArrayList<>();
+      try {
+        for (org.springframework.core.env.PropertySource<?> source : loader.load(
+            "applicationConfig: [" + location + "]", new FileSystemResource(path.toFile()))) {
+          Document document = Document.of(source);
+          if (document == null) {
+            log.info("Snapshot activates profiles from configuration files, not indexed."
+                + " (file={})", location);
+            return null;
+          }
+          documents.add(document);
+        }
+      } catch (IOException | RuntimeException e) {
+        log.warn("Could not parse configuration file, not indexed. (file={})", location, e);
+        return null;
+      }
+      files.put(location, Collections.unmodifiableList(documents));
+    }
+    return new PropertySourceIndex(Collections.unmodifiableMap(files));
+  }
+
+  private static PropertySourceLoader loader(String extension) {
+    for (PropertySourceLoader loader : LOADERS) {
+      for (String candidate : loader.getFileExtensions()) {
+        if (candidate.equalsIgnoreCase(extension)) {
+          return loader;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Composes the environment of an application, in the order NativeEnvironmentRepository would
+   * resolve it from the search locations.
+   *
+   * @param locations - search locations (file URIs of directories) in precedence order.
+   * @param application - application name(s), comma separated.
+   * @param profile - profile(s), comma separated.
+   * @param label - label.
+   * @return {@link Environment}
+   */
+  public Environment find(String[] locations, String application, String profile,
+      String label) {
+    Set<String> profiles = new LinkedHashSet<>(Arrays.asList(
+        StringUtils.trimArrayElements(StringUtils.commaDelimitedListToStringArray(profile))));
+    String config = application.startsWith("application") ? application
+        : "application," + application;
+    List<String> searchLocations = reversed(StringUtils.arrayToCommaDelimitedString(locations));
+    List<String> names = reversed(config);
+
+    //Profile null (documents without spring.profiles) first, then the profiles in order.
+    Map<String, Map<String, Document>> loaded = new LinkedHashMap<>();
+    List<String> processed = new ArrayList<>();
+    List<String> queue = new ArrayList<>();
+    queue.add(null);
+    queue.addAll(profiles);
+    for (String current : queue) {
+      for (String location : searchLocations) {
+        for (String name : names) {
+          for (String extension : extensions()) {
+            String prefix = location + name;
+            if (current != null) {
+              String profileSpecific = prefix + "-" + current + extension;
+              load(loaded, current, profileSpecific, null, profiles, false);
+              load(loaded, current, profileSpecific, current, profiles, false);
+              for (String previous : processed) {
+                if (previous != null) {
+                  load(loaded, current, prefix + "-" + previous + extension, current, profiles,
+                      false);
+                }
+              }
+            }
+            load(loaded, current, prefix + extension, current, profiles, false);
+          }
+        }
+      }
+      processed.add(current);
+    }
+    //Profile sections of default files for any active profile, unless loaded already.
+    for (String location : searchLocations) {
+      for (String name : names) {
+        for (String extension : extensions()) {
+          load(loaded, null, location + name + extension, null, profiles, true);
+        }
+      }
+    }
+
+    Environment result = new Environment(application,
+        StringUtils.commaDelimitedListToStringArray(profile), label, null, null);
+    List<Map<String, Document>> groups = new ArrayList<>(loaded.values());
+    Collections.reverse(groups);
+    Set<String> added = new LinkedHashSet<>();
+    for (Map<String, Document> group : groups) {
+      for (Document document : group.values()) {
+        if (added.add(document.name)) {
+          result.add(new org.springframework.cloud.config.environment.PropertySource(
+              document.name, document.properties));
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Adds the matching documents of a file to the group of a profile.
+   *
+   * @param loaded - groups by profile.
+   * @param group - profile of the group.
+   * @param location - file URI.
+   * @param profile - profile documents must declare, null for documents without profiles.
+   * @param active - active profiles.
+   * @param negative - match documents with any accepted profiles, added first unless present.
+   */
+  private void load(Map<String, Map<String, Document>> loaded, String group, String location,
+      String profile, Set<String> active, boolean negative) {
+    List<Document> documents = files.get(location);
+    if (documents == null) {
+      return;
+    }
+    List<Document> matching = new ArrayList<>();
+    for (Document document : documents) {
+      boolean match = negative
+          ? document.profiles.length > 0 && document.acceptedBy(active)
+          : profile == null ? document.profiles.length == 0
+              : Arrays.asList(document.profiles).contains(profile) && document.acceptedBy(active);
+      if (match) {
+        matching.add(document);
+      }
+    }
+    Collections.reverse(matching);
+    for (Document document : matching) {
+      if (negative) {
+        if (loaded.values().stream().noneMatch(sources -> sources.containsKey(document.name))) {
+          Map<String, Document> sources = loaded.computeIfAbsent(group,
+              k -> new LinkedHashMap<>());
+          Map<String, Document> reordered = new LinkedHashMap<>();
+          reordered.put(document.name, document);
+          reordered.putAll(sources);
+          sources.clear();
+          sources.putAll(reordered);
+        }
+      } else {
+        Map<String, Document> sources = loaded.computeIfAbsent(group, k -> new LinkedHashMap<>());
+        sources.remove(document.name);
+        sources.put(document.name, document);
+      }
+    }
+  }
+
+  private static List<String> extensions() {
+    Set<String> extensions = new LinkedHashSet<>();
+    for (PropertySourceLoader loader : LOADERS) {
+      for (String extension : loader.getFileExtensions()) {
+        extensions.add("." + extension);
+      }
+    }
+    return new ArrayList<>(extensions);
+  }
+
+  private static List<String> reversed(String commaDelimited) {
+    List<String> list = new ArrayList<>(Arrays.asList(StringUtils.trimArrayElements(
+        StringUtils.commaDelimitedListToStringArray(commaDelimited))));
+    Collections.reverse(list);
+    return new ArrayList<>(new LinkedHashSet<>(list));
+  }
+
+  /**
+   * Parsed document of a configuration file.
+   */
+  private static final class Document {
+
+    /**
+     * Property source name as reported by NativeEnvironmentRepository.
+     */
+    private final String name;
+
+    /**
+     * Profiles of the document (spring.profiles), empty for none.
+     */
+    private final String[] profiles;
+
+    private final Map<String, Object> properties;
+
+    private Document(String name, String[] profiles, Map<String, Object> properties) {
+      this.name = name;
+      this.profiles = profiles;
+      this.properties = properties;
+    }
+
+    /**
+     * Parses a loaded property source.
+     *
+     * @param source - loaded property source.
+     * @return {@link Document}, null if it changes the active profiles.
+     */
+    static Document of(org.springframework.core.env.PropertySource<?> source) {
+      if (source.containsProperty("spring.profiles.active")
+          || source.containsProperty("spring.profiles.include")
+          || source.containsProperty("spring.profiles[0]")) {
+        return null;
+      }
+      Object declared = source.getProperty("spring.profiles");
+      if (declared != null && declared.toString().contains("${")) {
+        return null;
+      }
+      Map<String, Object> properties = new LinkedHashMap<>();
+      if (source instanceof MapPropertySource) {
+        for (String key : ((MapPropertySource) source).getPropertyNames()) {
+          properties.put(key, source.getProperty(key));
+        }
+      }
+      String[] profiles = declared == null ? new String[0] : StringUtils.trimArrayElements(
+          StringUtils.commaDelimitedListToStringArray(declared.toString()));
+      String name = source.getName().replace("applicationConfig: [", "").replace("]", "");
+      return new Document(name, profiles, Collections.unmodifiableMap(properties));
+    }
+
+    /**
+     * Returns true if the profiles of the document accept the active profiles, supporting
+     * negations (!profile).
+     *
+     * @param active - active profiles.
+     * @return accepted flag.
+     */
+    boolean acceptedBy(Set<String> active) {
+      for (String profile : profiles) {
+        if (profile.startsWith("!") ? !active.contains(profile.substring(1))
+            : active.contains(profile)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
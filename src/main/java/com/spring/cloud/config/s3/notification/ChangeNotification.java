@@ -0,0 +1,29 @@
+package com.spring.cloud.config.s3.notification;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Change of an object in a bucket, as reported by a {@link ChangeNotificationListener} source.
+ *
+ * @author Nagesh Salunke
+ */
+@Getter
+@RequiredArgsConstructor
+public final class ChangeNotification {
+
+  /**
+   * Bucket of the changed object.
+   */
+  private final String bucket;
+
+  /**
+   * Key of the changed object.
+   */
+  private final String key;
+
+  /**
+   * S3 event name, e.g. ObjectCreated:Put.
+   */
+  private final String eventName;
+}
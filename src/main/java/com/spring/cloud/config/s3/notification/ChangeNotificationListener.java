@@ -0,0 +1,20 @@
+package com.spring.cloud.config.s3.notification;
+
+import java.util.List;
+
+/**
+ * Receives change notifications. Sources of notifications - the SQS queue, the webhook or any
+ * custom source - deliver them to the listener bean.
+ *
+ * @author Nagesh Salunke
+ */
+public interface ChangeNotificationListener {
+
+  /**
+   * Called with the notifications of one delivery.
+   *
+   * @param source - name of the source, e.g. sqs or webhook.
+   * @param notifications - {@link ChangeNotification}s, may be empty.
+   */
+  void onChange(String source, List<ChangeNotification> notifications);
+}
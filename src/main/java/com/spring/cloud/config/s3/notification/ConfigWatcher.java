@@ -0,0 +1,218 @@
+package com.spring.cloud.config.s3.notification;
+
+import com.spring.cloud.config.s3.constant.ConfigConstants;
+import com.spring.cloud.config.s3.repository.MultiBucketEnvironmentRepository;
+import com.spring.cloud.config.s3.repository.MultiBucketEnvironmentRepository.Tenant;
+import com.spring.cloud.config.s3.repository.S3EnvironmentRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.web.context.request.async.DeferredResult;
+
+/**
+ * Holds client watches of an environment until the bucket serving it publishes a version
+ * changing its content version, see {@link S3EnvironmentRepository#getContentVersion}.
+ * Watches are {@link DeferredResult}s, a held watch occupies no thread; the watches of a bucket
+ * are checked from a single notifier thread once its repository has published, each
+ * environment compared and resolved once for all of its watches.
+ *
+ * @author Nagesh Salunke
+ */
+@Log4j2
+public class ConfigWatcher implements DisposableBean {
+
+  private final MultiBucketEnvironmentRepository repository;
+
+  private final long timeout;
+
+  private final int maxWatches;
+
+  /**
+   * Held watches by the repository they are waiting for.
+   */
+  private final Map<S3EnvironmentRepository, Set<Watch>> watches = new ConcurrentHashMap<>();
+
+  private final AtomicInteger held = new AtomicInteger();
+
+  private final ExecutorService notifier;
+
+  /**
+   * Constructor.
+   *
+   * @param repository - repository serving the watched configuration.
+   * @param timeout - ms a watch is held before it is answered with 304 Not Modified.
+   * @param maxWatches - maximum number of watches held at once.
+   * @param meterRegistry - {@link MeterRegistry}
+   */
+  public ConfigWatcher(MultiBucketEnvironmentRepository repository, long timeout, int maxWatches,
+      MeterRegistry meterRegistry) {
+    this.repository = repository;
+    this.timeout = timeout;
+    this.maxWatches = maxWatches;
+    this.notifier = Executors.newSingleThreadExecutor(
+        new CustomizableThreadFactory("S3ConfigWatch-"));
+    watch(repository.getDefaultRepository());
+    for (Tenant tenant : repository.getTenants()) {
+      watch(tenant.getRepository());
+    }
+    Gauge.builder(ConfigConstants.METRIC_WATCHES, held, AtomicInteger::get)
+        .register(meterRegistry);
+  }
+
+  /**
+   * Watches the configuration of an application.
+   *
+   * @param application - application name.
+   * @param profile - profiles.
+   * @param label - label, null for the default label.
+   * @param version - content version the client has, null for none.
+   * @return the environment once another content version than the client's is served; 304 Not
+   *     Modified if none is published within the timeout; 429 if too many watches are held.
+   */
+  public DeferredResult<ResponseEntity<Environment>> watch(String application, String profile,
+      String label, String version) {
+    Tenant tenant = repository.route(application, label);
+    S3EnvironmentRepository watched = tenant == null ? repository.getDefaultRepository()
+        : tenant.getRepository();
+    DeferredResult<ResponseEntity<Environment>> result = new DeferredResult<>(timeout,
+        ResponseEntity.status(HttpStatus.NOT_MODIFIED).build());
+    String served = repository.getContentVersion(application, profile, label);
+    if (served != null && !served.equals(version)) {
+      result.setResult(changed(served, repository.findOne(application, profile, label)));
+      return result;
+    }
+    if (watched.isVersionLabel(label)) {
+      //Label versions never change, the watch only times out.
+      return result;
+    }
+    if (held.incrementAndGet() > maxWatches) {
+      held.decrementAndGet();
+      result.setResult(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build());
+      return result;
+    }
+    Set<Watch> bucketWatches = watches.get(watched);
+    Watch watch = new Watch(application, profile, label, version, result);
+    bucketWatches.add(watch);
+    result.onCompletion(() -> release(bucketWatches, watch));
+    //A version published before the watch was added doesn't notify it.
+    String current = repository.getContentVersion(application, profile, label);
+    if (current != null && !current.equals(version) && release(bucketWatches, watch)) {
+      result.setResult(changed(current, repository.findOne(application, profile, label)));
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of held watches.
+   *
+   * @return held watches
+   */
+  public int size() {
+    return held.get();
+  }
+
+  @Override
+  public void destroy() {
+    notifier.shutdownNow();
+  }
+
+  private void watch(S3EnvironmentRepository watched) {
+    watches.put(watched, ConcurrentHashMap.newKeySet());
+    watched.addPublishListener(version -> notifier.execute(() -> notify(watched, version)));
+  }
+
+  /**
+   * Answers the watches of a repository which published a version, if it changed their
+   * environment.
+   */
+  private void notify(S3EnvironmentRepository watched, String version) {
+    Set<Watch> bucketWatches = watches.get(watched);
+    Map<List<String>, String> contentVersions = new HashMap<>();
+    Map<List<String>, Environment> environments = new HashMap<>();
+    int notified = 0;
+    for (Watch watch : bucketWatches) {
+      List<String> key = Arrays.asList(watch.application, watch.profile, watch.label);
+      ResponseEntity<Environment> response;
+      try {
+        if (!contentVersions.containsKey(key)) {
+          contentVersions.put(key, repository.getContentVersion(watch.application, watch.profile,
+              watch.label));
+        }
+        String contentVersion = contentVersions.get(key);
+        if (contentVersion == null || contentVersion.equals(watch.version)) {
+          //Nothing served or unchanged, the watch stays held.
+          continue;
+        }
+        response = changed(contentVersion, environments.computeIfAbsent(key,
+            k -> repository.findOne(watch.application, watch.profile, watch.label)));
+      } catch (RuntimeException e) {
+        if (release(bucketWatches, watch)) {
+          watch.result.setErrorResult(e);
+        }
+        continue;
+      }
+      //Watches timed out meanwhile are answered already.
+      if (release(bucketWatches, watch)) {
+        watch.result.setResult(response);
+        notified++;
+      }
+    }
+    log.debug("Notified watches. (configVersion={}, notified={}, held={})", version, notified,
+        bucketWatches.size());
+  }
+
+  private boolean release(Set<Watch> bucketWatches, Watch watch) {
+    if (bucketWatches.remove(watch)) {
+      held.decrementAndGet();
+      return true;
+    }
+    return false;
+  }
+
+  private static ResponseEntity<Environment> changed(String version,
+      Environment environment) {
+    return ResponseEntity.ok().eTag("W/\"" + version + "\"").body(environment);
+  }
+
+  /**
+   * Held watch.
+   */
+  private static final class Watch {
+
+    private final String application;
+
+    private final String profile;
+
+    private final String label;
+
+    /**
+     * Content version the client has.
+     */
+    private final String version;
+
+    private final DeferredResult<ResponseEntity<Environment>> result;
+
+    private Watch(String application, String profile, String label, String version,
+        DeferredResult<ResponseEntity<Environment>> result) {
+      this.application = application;
+      this.profile = profile;
+      this.label = label;
+      this.version = version;
+      this.result = result;
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package com.spring.cloud.config.s3.notification;
+
+import com.amazonaws.services.s3.AmazonS3URI;
+import com.spring.cloud.config.s3.constant.ConfigConstants;
+import com.spring.cloud.config.s3.repository.S3EnvironmentRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Collections;
+import java.util.List;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Refreshes the repository when a notification reports a change in its bucket.
+ * Notifications of other buckets are ignored, a burst of changes shares one refresh.
+ *
+ * @author Nagesh Salunke
+ */
+@Log4j2
+public class RefreshOnChangeListener implements ChangeNotificationListener {
+
+  private final List<S3EnvironmentRepository> repositories;
+
+  private final MeterRegistry meterRegistry;
+
+  /**
+   * Constructor.
+   *
+   * @param repository - repository to refresh.
+   * @param meterRegistry - registry notifications are counted in.
+   */
+  public RefreshOnChangeListener(S3EnvironmentRepository repository,
+      MeterRegistry meterRegistry) {
+    this(Collections.singletonList(repository), meterRegistry);
+  }
+
+  /**
+   * Constructor for repositories of several buckets, each refreshed on changes of its own.
+   *
+   * @param repositories - repositories to refresh.
+   * @param meterRegistry - registry notifications are counted in.
+   */
+  public RefreshOnChangeListener(List<S3EnvironmentRepository> repositories,
+      MeterRegistry meterRegistry) {
+    this.repositories = repositories;
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public void onChange(String source, List<ChangeNotification> notifications) {
+    boolean relevant = false;
+    for (S3EnvironmentRepository repository : repositories) {
+      relevant |= onChange(source, notifications, repository);
+    }
+    meterRegistry.counter(ConfigConstants.METRIC_NOTIFICATIONS, "source", source,
+        "relevant", String.valueOf(relevant)).increment();
+  }
+
+  private boolean onChange(String source, List<ChangeNotification> notifications,
+      S3EnvironmentRepository repository) {
+    String bucketName = new AmazonS3URI(repository.getUri()).getBucket();
+    ChangeNotification change = notifications.stream()
+        .filter(notification -> bucketName.equals(notification.getBucket()))
+        .findFirst().orElse(null);
+    if (change == null) {
+      return false;
+    }
+    log.info("Change notification received, refreshing. (source={}, bucketName={}, key={},"
+        + " event={})", source, bucketName, change.getKey(), change.getEventName());
+    repository.refreshAfterChange().whenComplete((version, t) -> {
+      if (t != null) {
+        log.warn("Refresh after change notification failed. (source={}, bucketName={})",
+            source, bucketName);
+      }
+    });
+    return true;
+  }
+}
@@ -0,0 +1,59 @@
+package com.spring.cloud.config.s3.notification;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parses S3 event notification messages, delivered directly or wrapped in a SNS notification.
+ *
+ * @author Nagesh Salunke
+ */
+public final class S3EventNotifications {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private S3EventNotifications() {
+  }
+
+  /**
+   * Parses a message into change notifications. Test events and messages without records
+   * yield no notification.
+   *
+   * @param message - message body.
+   * @return {@link ChangeNotification}s.
+   * @throws IOException - if the message is not JSON.
+   */
+  public static List<ChangeNotification> parse(String message) throws IOException {
+    JsonNode root = MAPPER.readTree(message);
+    if (root == null) {
+      return Collections.emptyList();
+    }
+    if ("Notification".equals(root.path("Type").asText())) {
+      return parse(root.path("Message").asText());
+    }
+    List<ChangeNotification> notifications = new ArrayList<>();
+    for (JsonNode record : root.path("Records")) {
+      JsonNode s3 = record.path("s3");
+      String bucket = s3.path("bucket").path("name").asText(null);
+      String key = s3.path("object").path("key").asText(null);
+      if (bucket != null && key != null) {
+        notifications.add(new ChangeNotification(bucket, decode(key),
+            record.path("eventName").asText()));
+      }
+    }
+    return notifications;
+  }
+
+  /**
+   * Keys in S3 events are URL encoded.
+   */
+  private static String decode(String key) throws UnsupportedEncodingException {
+    return URLDecoder.decode(key, "UTF-8");
+  }
+}
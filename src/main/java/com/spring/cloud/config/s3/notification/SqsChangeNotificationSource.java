@@ -0,0 +1,138 @@
+package com.spring.cloud.config.s3.notification;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Long polls a SQS queue S3 event notifications are delivered to, and hands them to the
+ * {@link ChangeNotificationListener}. Messages are deleted once handled; messages which can't
+ * be parsed are deleted as well, so they aren't redelivered forever.
+ *
+ * @author Nagesh Salunke
+ */
+@Log4j2
+public class SqsChangeNotificationSource implements SmartLifecycle {
+
+  /**
+   * Source name reported to the listener.
+   */
+  public static final String SOURCE = "sqs";
+
+  /**
+   * Milliseconds to back off after a failed receive.
+   */
+  private static final long ERROR_BACKOFF_MILLIS = 5000;
+
+  private final AmazonSQS sqs;
+
+  private final String queueUrl;
+
+  private final int waitTimeSeconds;
+
+  private final ChangeNotificationListener listener;
+
+  private volatile boolean running;
+
+  private ExecutorService executor;
+
+  /**
+   * Constructor.
+   *
+   * @param sqs - {@link AmazonSQS}
+   * @param queueUrl - queue url.
+   * @param waitTimeSeconds - long polling wait time.
+   * @param listener - {@link ChangeNotificationListener}
+   */
+  public SqsChangeNotificationSource(AmazonSQS sqs, String queueUrl, int waitTimeSeconds,
+      ChangeNotificationListener listener) {
+    this.sqs = sqs;
+    this.queueUrl = queueUrl;
+    this.waitTimeSeconds = waitTimeSeconds;
+    this.listener = listener;
+  }
+
+  @Override
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("S3ConfigSqs-");
+    threadFactory.setDaemon(true);
+    executor = Executors.newSingleThreadExecutor(threadFactory);
+    executor.execute(this::run);
+    log.info("Listening for change notifications. (queueUrl={})", queueUrl);
+  }
+
+  @Override
+  public synchronized void stop() {
+    running = false;
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public boolean isAutoStartup() {
+    return true;
+  }
+
+  @Override
+  public void stop(Runnable callback) {
+    stop();
+    callback.run();
+  }
+
+  @Override
+  public int getPhase() {
+    return Integer.MAX_VALUE;
+  }
+
+  private void run() {
+    while (running && !Thread.currentThread().isInterrupted()) {
+      try {
+        poll();
+      } catch (RuntimeException e) {
+        log.warn("Receiving change notifications failed. (queueUrl={})", queueUrl, e);
+        try {
+          TimeUnit.MILLISECONDS.sleep(ERROR_BACKOFF_MILLIS);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+
+  /**
+   * Receives one batch of messages and handles it.
+   */
+  void poll() {
+    List<Message> messages = sqs.receiveMessage(new ReceiveMessageRequest(queueUrl)
+        .withMaxNumberOfMessages(10)
+        .withWaitTimeSeconds(waitTimeSeconds)).getMessages();
+    for (Message message : messages) {
+      try {
+        listener.onChange(SOURCE, S3EventNotifications.parse(message.getBody()));
+      } catch (IOException e) {
+        log.warn("Dropping unreadable change notification. (queueUrl={}, messageId={})",
+            queueUrl, message.getMessageId());
+      }
+      sqs.deleteMessage(queueUrl, message.getReceiptHandle());
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package com.spring.cloud.config.s3.notification;
+
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.async.DeferredResult;
+
+/**
+ * Watch endpoint clients long-poll with the content version of their environment (the value of
+ * the ETag it was served with); the request is answered with the environment as soon as its
+ * content version changes, see
+ * {@link ConfigWatcher}.
+ * The endpoint lives below spring.cloud.config.server.prefix like the environment endpoints.
+ * It is registered by {@link com.spring.cloud.config.s3.config.WatchConfiguration} rather than
+ * component scanned, so it only exists along with the watcher.
+ *
+ * @author Nagesh Salunke
+ */
+@RequestMapping(WatchController.PATH)
+public class WatchController {
+
+  /**
+   * Path of the watch endpoint, below the config server prefix.
+   */
+  public static final String PATH = "${spring.cloud.config.server.prefix:}/watch";
+
+  /**
+   * Request parameter carrying the content version the client has.
+   */
+  public static final String VERSION_PARAM = "version";
+
+  /**
+   * Placeholder of '/' in labels, as in the environment endpoints.
+   */
+  private static final String SLASH_PLACEHOLDER = "(_)";
+
+  private final ConfigWatcher watcher;
+
+  /**
+   * Constructor.
+   *
+   * @param watcher - {@link ConfigWatcher}
+   */
+  public WatchController(ConfigWatcher watcher) {
+    this.watcher = watcher;
+  }
+
+  /**
+   * Watches the configuration of the default label.
+   *
+   * @param name - application name.
+   * @param profiles - profiles.
+   * @param version - content version the client has, none answers with the current environment.
+   * @return environment with its content version as ETag, or 304 Not Modified after the timeout.
+   */
+  @GetMapping("/{name}/{profiles}")
+  public DeferredResult<ResponseEntity<Environment>> watch(@PathVariable String name,
+      @PathVariable String profiles,
+      @RequestParam(name = VERSION_PARAM, required = false) String version) {
+    return watcher.watch(name, profiles, null, version);
+  }
+
+  /**
+   * Watches the configuration of a label.
+   *
+   * @param name - application name.
+   * @param profiles - profiles.
+   * @param label - label, '/' written as "(_)".
+   * @param version - content version the client has, none answers with the current environment.
+   * @return environment with its content version as ETag, or 304 Not Modified after the timeout.
+   */
+  @GetMapping("/{name}/{profiles}/{label:.+}")
+  public DeferredResult<ResponseEntity<Environment>> watch(@PathVariable String name,
+      @PathVariable String profiles, @PathVariable String label,
+      @RequestParam(name = VERSION_PARAM, required = false) String version) {
+    return watcher.watch(name, profiles, label.replace(SLASH_PLACEHOLDER, "/"), version);
+  }
+}
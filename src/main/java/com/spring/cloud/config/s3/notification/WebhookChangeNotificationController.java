@@ -0,0 +1,96 @@
+package com.spring.cloud.config.s3.notification;
+
+import com.spring.cloud.config.s3.config.S3EnvironmentRepositoryProperties;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+/**
+ * Webhook receiving S3 event notifications, posted directly or by a SNS HTTP subscription.
+ * SNS subscription confirmations are logged for an operator to confirm, the endpoint never
+ * calls back URLs from request bodies.
+ * Registered by {@link com.spring.cloud.config.s3.config.NotificationConfiguration} rather than
+ * component scanned, so it only exists along with the S3 repository it refreshes.
+ *
+ * @author Nagesh Salunke
+ */
+@Log4j2
+@RequestMapping(WebhookChangeNotificationController.PATH)
+public class WebhookChangeNotificationController {
+
+  /**
+   * Source name reported to the listener.
+   */
+  public static final String SOURCE = "webhook";
+
+  /**
+   * Header carrying the webhook token.
+   */
+  public static final String TOKEN_HEADER = "X-Config-Webhook-Token";
+
+  /**
+   * Path of the webhook.
+   */
+  public static final String PATH = "/s3/notifications";
+
+  private final ChangeNotificationListener listener;
+
+  private final String token;
+
+  /**
+   * Constructor.
+   *
+   * @param listener - {@link ChangeNotificationListener}
+   * @param properties - S3EnvironmentRepository properties, for the expected token.
+   */
+  public WebhookChangeNotificationController(ChangeNotificationListener listener,
+      S3EnvironmentRepositoryProperties properties) {
+    this.listener = listener;
+    this.token = properties.getNotifications().getWebhookToken();
+  }
+
+  /**
+   * Receives a notification.
+   *
+   * @param providedToken - token header.
+   * @param messageType - SNS message type header.
+   * @param body - S3 event or SNS message.
+   * @return 202 if accepted.
+   */
+  @PostMapping
+  public ResponseEntity<Void> notify(
+      @RequestHeader(name = TOKEN_HEADER, required = false) String providedToken,
+      @RequestHeader(name = "x-amz-sns-message-type", required = false) String messageType,
+      @RequestBody String body) {
+    if (!authorized(providedToken)) {
+      return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+    }
+    if ("SubscriptionConfirmation".equals(messageType)) {
+      log.warn("SNS subscription confirmation received, confirm it through the SNS console"
+          + " or the SubscribeURL of the message.");
+      return ResponseEntity.accepted().build();
+    }
+    try {
+      listener.onChange(SOURCE, S3EventNotifications.parse(body));
+    } catch (IOException e) {
+      return ResponseEntity.badRequest().build();
+    }
+    return ResponseEntity.accepted().build();
+  }
+
+  private boolean authorized(String providedToken) {
+    if (!StringUtils.hasText(token)) {
+      return true;
+    }
+    return providedToken != null && MessageDigest.isEqual(
+        token.getBytes(StandardCharsets.UTF_8), providedToken.getBytes(StandardCharsets.UTF_8));
+  }
+}
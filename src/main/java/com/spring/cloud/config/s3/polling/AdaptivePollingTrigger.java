@@ -0,0 +1,130 @@
+package com.spring.cloud.config.s3.polling;
+
+import java.util.Date;
+import java.util.Random;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.TriggerContext;
+
+/**
+ * Polling {@link Trigger} adapting the interval to what the previous polls saw:
+ *  - a change shortens the interval to minInterval, follow-up changes are picked up quickly.
+ *  - each poll without change stretches the interval by half, up to maxInterval.
+ *  - failures back off exponentially from the base interval, up to maxBackoffInterval.
+ * The first poll runs right away, as with a fixed rate schedule; every later delay is spread by
+ * +/- jitter, so replicas don't poll S3 in lockstep.
+ *
+ * @author Nagesh Salunke
+ */
+public class AdaptivePollingTrigger implements Trigger {
+
+  private static final double STABLE_GROWTH = 1.5;
+
+  private final long baseInterval;
+
+  private final long minInterval;
+
+  private final long maxInterval;
+
+  private final long maxBackoffInterval;
+
+  private final double jitter;
+
+  private final Random random;
+
+  /**
+   * Interval before jitter, guarded by this.
+   */
+  private long interval;
+
+  /**
+   * Failed polls in a row, guarded by this.
+   */
+  private int failures;
+
+  /**
+   * Last delay scheduled, jitter included.
+   */
+  private volatile long effectiveInterval;
+
+  /**
+   * Constructor.
+   *
+   * @param baseInterval - interval in ms of a regular poll.
+   * @param minInterval - interval in ms after a change.
+   * @param maxInterval - upper bound in ms of the interval when stable.
+   * @param maxBackoffInterval - upper bound in ms of the interval after failures.
+   * @param jitter - relative spread of delays, e.g. 0.1 for +/- 10%.
+   * @param random - {@link Random} for the jitter.
+   */
+  public AdaptivePollingTrigger(long baseInterval, long minInterval, long maxInterval,
+      long maxBackoffInterval, double jitter, Random random) {
+    this.baseInterval = baseInterval;
+    this.minInterval = Math.min(minInterval, baseInterval);
+    this.maxInterval = Math.max(maxInterval, baseInterval);
+    this.maxBackoffInterval = Math.max(maxBackoffInterval, baseInterval);
+    this.jitter = jitter;
+    this.random = random;
+    this.interval = baseInterval;
+    this.effectiveInterval = baseInterval;
+  }
+
+  /**
+   * Records a poll which found a new version.
+   */
+  public synchronized void onChange() {
+    failures = 0;
+    interval = minInterval;
+  }
+
+  /**
+   * Records a poll which found the version unchanged.
+   */
+  public synchronized void onNoChange() {
+    if (failures > 0) {
+      failures = 0;
+      interval = baseInterval;
+    } else {
+      interval = Math.min(maxInterval, (long) (interval * STABLE_GROWTH));
+    }
+  }
+
+  /**
+   * Records a failed poll.
+   */
+  public synchronized void onFailure() {
+    failures++;
+    interval = Math.min(maxBackoffInterval, baseInterval << Math.min(failures, 20));
+  }
+
+  /**
+   * Returns the interval before jitter.
+   *
+   * @return interval in ms.
+   */
+  public synchronized long getInterval() {
+    return interval;
+  }
+
+  /**
+   * Returns the last delay scheduled, jitter included.
+   *
+   * @return effective interval in ms.
+   */
+  public long getEffectiveInterval() {
+    return effectiveInterval;
+  }
+
+  @Override
+  public Date nextExecutionTime(TriggerContext triggerContext) {
+    Date lastCompletion = triggerContext.lastCompletionTime();
+    if (lastCompletion == null) {
+      return new Date();
+    }
+    long delay;
+    synchronized (this) {
+      delay = (long) (interval * (1 + jitter * (2 * random.nextDouble() - 1)));
+    }
+    effectiveInterval = delay;
+    return new Date(lastCompletion.getTime() + delay);
+  }
+}
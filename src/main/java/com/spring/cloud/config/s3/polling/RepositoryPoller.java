@@ -0,0 +1,46 @@
+package com.spring.cloud.config.s3.polling;
+
+import com.spring.cloud.config.s3.repository.S3EnvironmentRepository;
+import java.util.Objects;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Polling task refreshing the repository and reporting the outcome to the
+ * {@link AdaptivePollingTrigger} scheduling it.
+ *
+ * @author Nagesh Salunke
+ */
+@Log4j2
+public class RepositoryPoller implements Runnable {
+
+  private final S3EnvironmentRepository repository;
+
+  private final AdaptivePollingTrigger trigger;
+
+  /**
+   * Constructor.
+   *
+   * @param repository - repository to refresh.
+   * @param trigger - trigger scheduling the polls.
+   */
+  public RepositoryPoller(S3EnvironmentRepository repository, AdaptivePollingTrigger trigger) {
+    this.repository = repository;
+    this.trigger = trigger;
+  }
+
+  @Override
+  public void run() {
+    String previousVersion = repository.getConfigVersion();
+    try {
+      String version = repository.refresh();
+      if (Objects.equals(previousVersion, version)) {
+        trigger.onNoChange();
+      } else {
+        trigger.onChange();
+      }
+    } catch (RuntimeException e) {
+      trigger.onFailure();
+      log.warn("Polling S3 failed, backing off. (nextInterval={} ms)", trigger.getInterval());
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package com.spring.cloud.config.s3.repository;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.spring.cloud.config.s3.exceptions.SystemException;
+import com.spring.cloud.config.s3.snapshot.SnapshotManifest;
+import com.spring.cloud.config.s3.snapshot.SnapshotManifest.ObjectEntry;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Incremental sync of a bucket into a staging directory.
+ * Objects whose ETag and size match the manifest of the previous snapshot are linked (or
+ * copied) from the previous snapshot directory, only new or changed objects are downloaded.
+ * Objects removed from the bucket are simply not carried over.
+ *
+ * @author Nagesh Salunke
+ */
+@Log4j2
+public class BucketSynchronizer {
+
+  /**
+   * {@link S3Repository} for operations from S3.
+   */
+  private final S3Repository s3Repository;
+
+  /**
+   * Constructor.
+   *
+   * @param s3Repository - {@link S3Repository}
+   */
+  public BucketSynchronizer(S3Repository s3Repository) {
+    this.s3Repository = s3Repository;
+  }
+
+  /**
+   * Syncs the bucket into the destination directory.
+   *
+   * @param bucketName - bucketName.
+   * @param baseline - manifest of the previous snapshot, null to download everything.
+   * @param baselineDir - directory of the previous snapshot.
+   * @param destDir - destination directory.
+   * @return {@link SnapshotManifest} of the synced objects, without version.
+   * @throws SystemException - {@link SystemException}
+   */
+  public SnapshotManifest sync(String bucketName, SnapshotManifest baseline, File baselineDir,
+      Path destDir) throws SystemException {
+    final long startTimeMillis = System.currentTimeMillis();
+    SnapshotManifest manifest = new SnapshotManifest();
+    List<S3ObjectSummary> changed = new ArrayList<>();
+    long downloadedBytes = 0;
+    try {
+      for (S3ObjectSummary summary : s3Repository.listObjects(bucketName)) {
+        String key = summary.getKey();
+        Path target = S3Repository.resolveObjectPath(destDir, key);
+        if (target == null) {
+          if (!key.endsWith("/")) {
+            log.warn("Skipping object outside of the snapshot. (bucketName={}, key={})",
+                bucketName, key);
+          }
+          continue;
+        }
+        ObjectEntry entry = new ObjectEntry(summary.getETag(), summary.getSize());
+        if (!reuse(baseline, baselineDir, key, entry, target)) {
+          changed.add(summary);
+          downloadedBytes += entry.getSize();
+        }
+        manifest.getObjects().put(key, entry);
+      }
+      s3Repository.downloadObjects(bucketName, changed, destDir);
+    } catch (IOException | RuntimeException e) {
+      throw new SystemException("Could not sync s3 bucket.", e);
+    }
+    log.info("Synced S3 bucket, (bucketName={}, objects={}, downloaded={}, downloadedBytes={},"
+        + " totalTime={} ms)", bucketName, manifest.getObjects().size(), changed.size(),
+        downloadedBytes, (System.currentTimeMillis() - startTimeMillis));
+    return manifest;
+  }
+
+  /**
+   * Carries an unchanged object over from the previous snapshot.
+   *
+   * @return true if the object was carried over, false if it has to be downloaded.
+   */
+  private boolean reuse(SnapshotManifest baseline, File baselineDir, String key,
+      ObjectEntry entry, Path target) throws IOException {
+    if (baseline == null) {
+      return false;
+    }
+    ObjectEntry previous = baseline.getObjects().get(key);
+    File source = new File(baselineDir, key);
+    if (previous == null || !entry.getEtag().equals(previous.getEtag())
+        || entry.getSize() != previous.getSize() || !source.isFile()
+        || source.length() != entry.getSize()) {
+      return false;
+    }
+    Files.createDirectories(target.toFile().getParentFile().toPath());
+    try {
+      //Snapshot files are never modified in place, sharing them is safe.
+      Files.createLink(target, source.toPath());
+    } catch (IOException | UnsupportedOperationException e) {
+      Files.copy(source.toPath(), target);
+    }
+    return true;
+  }
+}
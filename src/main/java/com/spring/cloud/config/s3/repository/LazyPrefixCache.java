@@ -0,0 +1,260 @@
+package com.spring.cloud.config.s3.repository;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.spring.cloud.config.s3.exceptions.SystemException;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.util.Assert;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * On-demand copy of a bucket version in a snapshot directory, for buckets much larger than the
+ * configuration a server actually serves.
+ * Objects are fetched per key prefix (search path directory) when a request first needs it, and
+ * prefixes are evicted least recently used once the fetched bytes exceed the cap. Prefixes without
+ * objects are remembered as well, so unknown names are listed once, up to MAX_PREFIXES prefixes.
+ * A new version starts with a new, empty cache.
+ * S3 objects aren't versioned by the metafile, so the version is checked again after every
+ * fetch; once it changed, the cache can't fetch for its version any more and asks for a refresh.
+ *
+ * @author Nagesh Salunke
+ */
+@Log4j2
+public class LazyPrefixCache {
+
+  /**
+   * Maximum number of remembered prefixes, fetched or without objects.
+   */
+  static final int MAX_PREFIXES = 10000;
+
+  private final S3Repository s3Repository;
+
+  private final String bucketName;
+
+  /**
+   * Version the cache fetches for, the version of its snapshot.
+   */
+  @Getter
+  private final String version;
+
+  /**
+   * Snapshot directory the prefixes are fetched into.
+   */
+  @Getter
+  private final File directory;
+
+  private final long maxBytes;
+
+  /**
+   * Called once the version in S3 differs from the version of the cache.
+   */
+  private final Runnable onVersionChange;
+
+  /**
+   * Set once the version in S3 differed after a fetch.
+   */
+  private volatile boolean stale;
+
+  /**
+   * Bytes of fetched prefixes in access order, guarded by itself.
+   */
+  private final Map<String, Long> prefixes = new LinkedHashMap<>(16, 0.75f, true);
+
+  /**
+   * Serializes fetches.
+   */
+  private final Object fetchLock = new Object();
+
+  /**
+   * Readers hold the read lock while they read fetched files, eviction takes the write lock.
+   */
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * Constructor.
+   *
+   * @param s3Repository - {@link S3Repository}
+   * @param bucketName - bucketName.
+   * @param version - version of the snapshot.
+   * @param directory - snapshot directory.
+   * @param maxBytes - bytes kept on disk before prefixes are evicted.
+   * @param onVersionChange - called once a fetch found another version in S3, e.g. to refresh.
+   */
+  public LazyPrefixCache(S3Repository s3Repository, String bucketName, String version,
+      File directory, long maxBytes, Runnable onVersionChange) {
+    this.s3Repository = s3Repository;
+    this.bucketName = bucketName;
+    this.version = version;
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    this.onVersionChange = onVersionChange;
+  }
+
+  /**
+   * Fetches missing prefixes, then reads them while no prefix can be evicted.
+   *
+   * @param keyPrefixes - key prefixes ("" for the bucket root, "dir/" for a directory,
+   *     "dir/*" for everything below dir/).
+   * @param <T> - result type.
+   * @param reader - reads the fetched files.
+   * @return result of the reader.
+   * @throws IllegalStateException if a prefix can't be fetched, or the version in S3 changed
+   *     since the snapshot was published.
+   */
+  public <T> T read(Collection<String> keyPrefixes, Supplier<T> reader) {
+    T result;
+    lock.readLock().lock();
+    try {
+      for (String prefix : keyPrefixes) {
+        fetch(prefix);
+      }
+      result = reader.get();
+    } finally {
+      lock.readLock().unlock();
+    }
+    evict();
+    return result;
+  }
+
+  /**
+   * Returns the fetched bytes.
+   *
+   * @return bytes on disk.
+   */
+  public long size() {
+    synchronized (prefixes) {
+      return prefixes.values().stream().mapToLong(Long::longValue).sum();
+    }
+  }
+
+  /**
+   * Returns true if the prefix is fetched.
+   *
+   * @param prefix - key prefix.
+   * @return fetched flag.
+   */
+  public boolean contains(String prefix) {
+    synchronized (prefixes) {
+      return prefixes.containsKey(prefix);
+    }
+  }
+
+  /**
+   * Fetches a prefix unless it is fetched already. Fetches are serialized, so overlapping
+   * prefixes never write the same file concurrently; readers of fetched prefixes don't wait.
+   * The prefix is only remembered if the version in S3 is still the version of the cache
+   * afterwards (or can't be checked).
+   */
+  private void fetch(String prefix) {
+    synchronized (prefixes) {
+      if (prefixes.get(prefix) != null) {
+        return;
+      }
+    }
+    synchronized (fetchLock) {
+      synchronized (prefixes) {
+        if (prefixes.containsKey(prefix)) {
+          return;
+        }
+      }
+      Assert.state(!stale, "Version changed since " + version + ", refresh pending");
+      boolean recursive = isRecursive(prefix);
+      String keyPrefix = keyPrefix(prefix);
+      Path destDir = directory.toPath();
+      List<S3ObjectSummary> objects = new ArrayList<>();
+      long bytes = 0;
+      for (S3ObjectSummary summary : s3Repository.listObjects(bucketName,
+          keyPrefix.isEmpty() ? null : keyPrefix, recursive ? null : "/")) {
+        if (S3Repository.resolveObjectPath(destDir, summary.getKey()) != null) {
+          objects.add(summary);
+          bytes += summary.getSize();
+        }
+      }
+      try {
+        s3Repository.downloadObjects(bucketName, objects, destDir);
+      } catch (SystemException e) {
+        throw new IllegalStateException("Could not fetch prefix " + prefix, e);
+      }
+      s3Repository.expireBucketVersion(bucketName);
+      String current = s3Repository.getBucketVersion(bucketName).orElse(version);
+      if (!current.equals(version)) {
+        stale = true;
+        log.info("Version changed while fetching prefix. (bucketName={}, prefix={}, version={},"
+            + " s3Version={})", bucketName, prefix, version, current);
+        onVersionChange.run();
+        throw new IllegalStateException("Version changed since " + version + ", refresh pending");
+      }
+      log.debug("Fetched prefix. (bucketName={}, prefix={}, objects={})", bucketName, prefix,
+          objects.size());
+      synchronized (prefixes) {
+        prefixes.put(prefix, bytes);
+      }
+    }
+  }
+
+  /**
+   * Evicts least recently used prefixes while the cache exceeds its cap or MAX_PREFIXES,
+   * skipped while other requests are reading.
+   */
+  private void evict() {
+    if (!exceeded() || !lock.writeLock().tryLock()) {
+      return;
+    }
+    try {
+      synchronized (prefixes) {
+        while (exceeded() && !prefixes.isEmpty()) {
+          String eldest = prefixes.keySet().iterator().next();
+          remove(eldest);
+          log.debug("Evicted prefix. (bucketName={}, prefix={})", bucketName, eldest);
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Deletes the files of a prefix and forgets the prefixes overlapping it: prefixes below an
+   * evicted recursive prefix lost their files, recursive prefixes above it are incomplete.
+   * Directories stay, they may hold other prefixes.
+   */
+  private void remove(String prefix) {
+    String keyPrefix = keyPrefix(prefix);
+    boolean recursive = isRecursive(prefix);
+    File[] files = new File(directory, keyPrefix).listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (recursive || file.isFile()) {
+          FileSystemUtils.deleteRecursively(file);
+        }
+      }
+    }
+    prefixes.keySet().removeIf(other -> other.equals(prefix)
+        || (recursive && keyPrefix(other).startsWith(keyPrefix))
+        || (isRecursive(other) && keyPrefix.startsWith(keyPrefix(other))));
+  }
+
+  private boolean exceeded() {
+    synchronized (prefixes) {
+      return prefixes.size() > MAX_PREFIXES || size() > maxBytes;
+    }
+  }
+
+  private static boolean isRecursive(String prefix) {
+    return prefix.endsWith("*");
+  }
+
+  private static String keyPrefix(String prefix) {
+    return isRecursive(prefix) ? prefix.substring(0, prefix.length() - 1) : prefix;
+  }
+}
@@ -0,0 +1,238 @@
+package com.spring.cloud.config.s3.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.server.environment.EnvironmentRepository;
+import org.springframework.cloud.config.server.environment.SearchPathCompositeEnvironmentRepository;
+import org.springframework.core.io.Resource;
+import org.springframework.util.PatternMatchUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Routes requests to the bucket of the first tenant whose application and label patterns
+ * match, and to the default bucket otherwise.
+ * Every tenant has an {@link S3EnvironmentRepository} of its own - snapshot, version and
+ * refresh - and a bounded number of requests it serves at once, so a slow bucket never holds
+ * the request threads of the others.
+ *
+ * @author Nagesh Salunke
+ */
+@Log4j2
+public class MultiBucketEnvironmentRepository extends SearchPathCompositeEnvironmentRepository
+    implements DisposableBean {
+
+  /**
+   * Repository of the default bucket.
+   */
+  @Getter
+  private final S3EnvironmentRepository defaultRepository;
+
+  /**
+   * Tenants in routing order.
+   */
+  @Getter
+  private final List<Tenant> tenants;
+
+  /**
+   * Constructor.
+   *
+   * @param defaultRepository - repository of requests no tenant matches.
+   * @param tenants - tenants in routing order.
+   */
+  public MultiBucketEnvironmentRepository(S3EnvironmentRepository defaultRepository,
+      List<Tenant> tenants) {
+    super(new ArrayList<EnvironmentRepository>(Collections.singletonList(defaultRepository)));
+    this.defaultRepository = defaultRepository;
+    this.tenants = tenants;
+  }
+
+  @Override
+  public Environment findOne(String application, String profile, String label) {
+    Tenant tenant = route(application, label);
+    if (tenant == null) {
+      return super.findOne(application, profile, label);
+    }
+    return tenant.call(() -> tenant.composite.findOne(application, profile, label));
+  }
+
+  @Override
+  public Locations getLocations(String application, String profile, String label) {
+    Tenant tenant = route(application, label);
+    if (tenant == null) {
+      return super.getLocations(application, profile, label);
+    }
+    return tenant.call(() -> tenant.composite.getLocations(application, profile, label));
+  }
+
+  /**
+   * Returns the version a request is served from by the bucket it is routed to.
+   *
+   * @param application - application name.
+   * @param label - label.
+   * @return configuration version, see {@link S3EnvironmentRepository#getServingVersion}.
+   */
+  public String getServingVersion(String application, String label) {
+    Tenant tenant = route(application, label);
+    if (tenant == null) {
+      return defaultRepository.getServingVersion(label);
+    }
+    return tenant.call(() -> tenant.repository.getServingVersion(label));
+  }
+
+  /**
+   * Returns the content version of an environment in the bucket it is routed to.
+   *
+   * @param application - application name.
+   * @param profile - profile.
+   * @param label - label.
+   * @return content version, see {@link S3EnvironmentRepository#getContentVersion}.
+   */
+  public String getContentVersion(String application, String profile, String label) {
+    Tenant tenant = route(application, label);
+    if (tenant == null) {
+      return defaultRepository.getContentVersion(application, profile, label);
+    }
+    return tenant.call(() -> tenant.repository.getContentVersion(application, profile, label));
+  }
+
+  /**
+   * Finds a configuration file in the bucket the application is routed to.
+   *
+   * @param application - application name.
+   * @param profile - profile.
+   * @param label - label.
+   * @param path - path of the file.
+   * @return {@link Resource}, see {@link S3EnvironmentRepository#findResource}.
+   */
+  public Resource findResource(String application, String profile, String label, String path) {
+    Tenant tenant = route(application, label);
+    if (tenant == null) {
+      return defaultRepository.findResource(application, profile, label, path);
+    }
+    return tenant.call(() -> tenant.repository.findResource(application, profile, label, path));
+  }
+
+  @Override
+  public void destroy() {
+    tenants.forEach(tenant -> tenant.repository.destroy());
+  }
+
+  /**
+   * Returns the first tenant matching the request, null for the default bucket.
+   *
+   * @param application - application name, comma separated names must all match.
+   * @param label - label.
+   * @return {@link Tenant}
+   */
+  public Tenant route(String application, String label) {
+    for (Tenant tenant : tenants) {
+      if (tenant.matches(application, label)) {
+        return tenant;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Bucket of a tenant and the patterns of the requests routed to it.
+   */
+  public static class Tenant {
+
+    @Getter
+    private final String name;
+
+    @Getter
+    private final List<String> applications;
+
+    @Getter
+    private final List<String> labels;
+
+    @Getter
+    private final S3EnvironmentRepository repository;
+
+    /**
+     * Base polling interval in ms.
+     */
+    @Getter
+    private final long pollingRefreshRate;
+
+    private final SearchPathCompositeEnvironmentRepository composite;
+
+    private final Semaphore permits;
+
+    private final long acquireTimeout;
+
+    /**
+     * Constructor.
+     *
+     * @param name - tenant name.
+     * @param applications - application name patterns, empty for any.
+     * @param labels - label patterns, empty for any.
+     * @param repository - repository of the tenant bucket.
+     * @param pollingRefreshRate - base polling interval in ms.
+     * @param maxConcurrentRequests - requests served at once.
+     * @param acquireTimeout - ms further requests wait before they are rejected.
+     */
+    public Tenant(String name, List<String> applications, List<String> labels,
+        S3EnvironmentRepository repository, long pollingRefreshRate, int maxConcurrentRequests,
+        long acquireTimeout) {
+      this.name = name;
+      this.applications = applications;
+      this.labels = labels;
+      this.repository = repository;
+      this.pollingRefreshRate = pollingRefreshRate;
+      this.composite = new SearchPathCompositeEnvironmentRepository(
+          new ArrayList<EnvironmentRepository>(Collections.singletonList(repository)));
+      this.permits = new Semaphore(maxConcurrentRequests);
+      this.acquireTimeout = acquireTimeout;
+    }
+
+    private boolean matches(String application, String label) {
+      for (String app : StringUtils.commaDelimitedListToStringArray(application)) {
+        if (!matchesAny(applications, app)) {
+          return false;
+        }
+      }
+      return matchesAny(labels, label);
+    }
+
+    private static boolean matchesAny(List<String> patterns, String value) {
+      return patterns.isEmpty()
+          || (value != null && PatternMatchUtils.simpleMatch(patterns.toArray(new String[0]),
+          value));
+    }
+
+    /**
+     * Serves a request within the concurrency bound of the tenant.
+     *
+     * @throws IllegalStateException if the tenant is serving its maximum of requests for longer
+     *     than the acquire timeout.
+     */
+    private <T> T call(Supplier<T> request) {
+      boolean acquired;
+      try {
+        acquired = permits.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        acquired = false;
+      }
+      if (!acquired) {
+        log.warn("Rejecting request, tenant is at its concurrency limit. (tenant={})", name);
+        throw new IllegalStateException("Too many concurrent requests for tenant " + name);
+      }
+      try {
+        return request.get();
+      } finally {
+        permits.release();
+      }
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package com.spring.cloud.config.s3.repository;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * State of the refresh loop of {@link S3EnvironmentRepository}, as seen by the last refresh and
+ * the last S3 version check.
+ *
+ * @author Nagesh Salunke
+ */
+@Getter
+@RequiredArgsConstructor
+public final class RefreshStatus {
+
+  /**
+   * Version being served, null if nothing is published yet.
+   */
+  private final String configVersion;
+
+  /**
+   * Epoch millis of the last successful refresh, 0 if there was none.
+   */
+  private final long lastRefreshTime;
+
+  /**
+   * Epoch millis of the last S3 version check, 0 if there was none.
+   */
+  private final long lastS3CheckTime;
+
+  /**
+   * Whether the last S3 version check returned a version.
+   */
+  private final boolean s3Reachable;
+
+  /**
+   * Returns milliseconds since the last successful refresh.
+   *
+   * @param now - current epoch millis.
+   * @return age, -1 if there was no successful refresh.
+   */
+  public long stalenessAt(long now) {
+    return lastRefreshTime == 0 ? -1 : now - lastRefreshTime;
+  }
+}
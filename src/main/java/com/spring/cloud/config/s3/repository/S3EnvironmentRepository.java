@@ -1,26 +1,69 @@
 package com.spring.cloud.config.s3.repository;
 
 import com.amazonaws.services.s3.AmazonS3URI;
+import com.spring.cloud.config.s3.cache.ContentCache;
+import com.spring.cloud.config.s3.cache.EnvironmentCache;
+import com.spring.cloud.config.s3.cluster.PeerSnapshotClient;
 import com.spring.cloud.config.s3.config.S3EnvironmentRepositoryProperties;
+import com.spring.cloud.config.s3.config.S3EnvironmentRepositoryProperties.SyncMode;
 import com.spring.cloud.config.s3.constant.ConfigConstants;
 import com.spring.cloud.config.s3.exceptions.SystemException;
+import com.spring.cloud.config.s3.index.PropertySourceIndex;
+import com.spring.cloud.config.s3.snapshot.ConfigSnapshot;
+import com.spring.cloud.config.s3.snapshot.LabelSnapshotStore;
+import com.spring.cloud.config.s3.snapshot.SnapshotManifest;
+import com.spring.cloud.config.s3.snapshot.SnapshotStore;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
 import org.springframework.cloud.config.server.environment.AbstractScmEnvironmentRepository;
+import org.springframework.cloud.config.server.environment.EnvironmentCleaner;
 import org.springframework.cloud.config.server.environment.EnvironmentRepository;
+import org.springframework.cloud.config.server.environment.NativeEnvironmentProperties;
+import org.springframework.cloud.config.server.environment.NativeEnvironmentRepository;
+import org.springframework.cloud.config.server.environment.NoSuchLabelException;
 import org.springframework.cloud.config.server.environment.SearchPathLocator;
+import org.springframework.cloud.config.server.resource.NoSuchResourceException;
 import org.springframework.core.env.ConfigurableEnvironment;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.util.Assert;
-import org.springframework.util.FileSystemUtils;
 import org.springframework.util.StringUtils;
 
 /**
@@ -31,7 +74,7 @@ import org.springframework.util.StringUtils;
  */
 @Log4j2
 public class S3EnvironmentRepository extends AbstractScmEnvironmentRepository
-    implements EnvironmentRepository, SearchPathLocator, InitializingBean {
+    implements EnvironmentRepository, SearchPathLocator, InitializingBean, DisposableBean {
 
   /**
    * {@link S3Repository} for operations from S3.
@@ -43,20 +86,233 @@ public class S3EnvironmentRepository extends AbstractScmEnvironmentRepository
    */
   public static final String DEFAULT_CONFIG_VERSION = "latest";
 
+  /**
+   * Application tag of request metrics for names no files were resolved for.
+   */
+  public static final String UNKNOWN_APPLICATION = "unknown";
+
+  /**
+   * Versioned snapshots below the base directory, the current one is published atomically
+   * once a refresh completes.
+   */
+  private final SnapshotStore snapshotStore = new SnapshotStore();
+
+  /**
+   * Resolved environments of the published snapshot.
+   */
+  @Getter
+  private final EnvironmentCache environmentCache;
+
+  /**
+   * Contents of the files served by the resource endpoints, by SHA-256.
+   */
+  private final ContentCache contentCache;
+
+  /**
+   * Listeners notified with the version of every published snapshot.
+   */
+  private final List<Consumer<String>> publishListeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * Number of the most requested environments resolved before a snapshot is published.
+   */
+  private final int prewarmSize;
+
+  /**
+   * Share of the requests of the replaced snapshot served by the prewarmed environments.
+   */
+  private volatile double prewarmCoverage;
+
+  /**
+   * Replaces local paths in property source names with the repository uri.
+   */
+  private final EnvironmentCleaner cleaner = new EnvironmentCleaner();
+
+  /**
+   * Check S3 for a newer version on every request, see
+   * {@link S3EnvironmentRepositoryProperties#isRefreshOnRequest()}.
+   */
+  @Setter
+  @Getter
+  private boolean refreshOnRequest;
+
+  /**
+   * Resolve environments from property sources parsed at publish time, see
+   * {@link S3EnvironmentRepositoryProperties#isIndexPropertySources()}.
+   */
+  @Setter
+  @Getter
+  private boolean indexPropertySources;
+
+  /**
+   * Milliseconds a request waits for an in-flight refresh, see
+   * {@link S3EnvironmentRepositoryProperties#getRefreshWaitTimeout()}.
+   */
   @Setter
   @Getter
-  private String configVersion;
+  private long refreshWaitTimeout;
+
+  /**
+   * Runs refreshes, one at a time.
+   */
+  private final ExecutorService refreshExecutor;
+
+  /**
+   * Refresh currently running, joined by concurrent triggers. Guarded by {@link #refreshLock}.
+   */
+  private CompletableFuture<String> inflightRefresh;
+
+  /**
+   * Refresh queued behind the in-flight one by {@link #refreshAfterChange()}. Guarded by
+   * {@link #refreshLock}.
+   */
+  private CompletableFuture<String> followUpRefresh;
+
+  private final Object refreshLock = new Object();
 
   /**
-   * Constructor with env and properties as parameters.
+   * How new versions are fetched, see {@link S3EnvironmentRepositoryProperties#getSyncMode()}.
+   */
+  @Setter
+  @Getter
+  private SyncMode syncMode;
+
+  /**
+   * Fetches new versions from the cluster leader before falling back to S3, null to always
+   * fetch from S3.
+   */
+  @Setter
+  @Getter
+  private PeerSnapshotClient peerSnapshotClient;
+
+  /**
+   * Key of the snapshot archive in PACKED mode, see
+   * {@link S3EnvironmentRepositoryProperties#getPackKey()}.
+   */
+  @Setter
+  @Getter
+  private String packKey;
+
+  /**
+   * Bytes a LAZY snapshot keeps on disk, see
+   * {@link S3EnvironmentRepositoryProperties.Lazy#getMaxCacheSize()}.
+   */
+  @Setter
+  @Getter
+  private long lazyCacheSize;
+
+  /**
+   * On-demand caches of LAZY snapshots by directory - the published one and the one it
+   * replaced, for requests still reading it.
+   */
+  private final Map<File, LazyPrefixCache> lazyCaches = new ConcurrentHashMap<>();
+
+  /**
+   * Re-hash a persisted snapshot before it is restored, see
+   * {@link S3EnvironmentRepositoryProperties.Download#isVerifyRestoredSnapshots()}.
+   */
+  @Setter
+  @Getter
+  private boolean verifyRestoredSnapshots;
+
+  /**
+   * Serve labels other than the default label from immutable versions below labelPrefix, see
+   * {@link S3EnvironmentRepositoryProperties.Labels}.
+   */
+  @Setter
+  @Getter
+  private boolean labelsEnabled;
+
+  /**
+   * Key prefix of a label version, see
+   * {@link S3EnvironmentRepositoryProperties.Labels#getPrefix()}.
+   */
+  @Setter
+  @Getter
+  private String labelPrefix;
+
+  /**
+   * Label served from the metafile version.
+   */
+  @Setter
+  @Getter
+  private String defaultLabel;
+
+  /**
+   * Snapshots of the requested labels.
+   */
+  private final LabelSnapshotStore labelSnapshots;
+
+  /**
+   * Incremental sync of the bucket.
+   */
+  private final BucketSynchronizer bucketSynchronizer;
+
+  /**
+   * Epoch millis of the last successful refresh, 0 if there was none.
+   */
+  private volatile long lastRefreshTime;
+
+  /**
+   * Epoch millis of the last S3 version check, 0 if there was none.
+   */
+  private volatile long lastS3CheckTime;
+
+  /**
+   * Whether the last S3 version check returned a version.
+   */
+  private volatile boolean s3Reachable;
+
+  /**
+   * {@link MeterRegistry} for refresh, request and cache metrics.
+   */
+  private final MeterRegistry meterRegistry;
+
+  /**
+   * Constructor with env and properties as parameters, metrics are kept locally.
    * @param environment - environment.
    * @param properties - S3EnvironmentRepository properties.
    */
-  @Autowired
   public S3EnvironmentRepository(ConfigurableEnvironment environment,
       S3EnvironmentRepositoryProperties properties, S3Repository s3Repository) {
+    this(environment, properties, s3Repository, new SimpleMeterRegistry());
+  }
+
+  /**
+   * Constructor with env, properties and meter registry as parameters.
+   * @param environment - environment.
+   * @param properties - S3EnvironmentRepository properties.
+   * @param meterRegistry - registry metrics are published to.
+   */
+  @Autowired
+  public S3EnvironmentRepository(ConfigurableEnvironment environment,
+      S3EnvironmentRepositoryProperties properties, S3Repository s3Repository,
+      MeterRegistry meterRegistry) {
     super(environment, properties);
+    this.meterRegistry = meterRegistry;
     this.s3Repository = s3Repository;
+    this.refreshOnRequest = properties.isRefreshOnRequest();
+    this.indexPropertySources = properties.isIndexPropertySources();
+    this.environmentCache = new EnvironmentCache(properties.getEnvironmentCacheSize());
+    this.environmentCache.bindTo(meterRegistry);
+    this.contentCache = new ContentCache(properties.getResourceCacheBytes());
+    this.prewarmSize = properties.getPrewarmSize();
+    Gauge.builder(ConfigConstants.METRIC_PREWARM + ".coverage", this,
+        repository -> repository.prewarmCoverage).register(meterRegistry);
+    this.syncMode = properties.getSyncMode();
+    this.packKey = properties.getPackKey();
+    this.lazyCacheSize = properties.getLazy().getMaxCacheSize();
+    this.verifyRestoredSnapshots = properties.getDownload().isVerifyRestoredSnapshots();
+    this.labelsEnabled = properties.getLabels().isEnabled();
+    this.labelPrefix = properties.getLabels().getPrefix();
+    this.defaultLabel = properties.getDefaultLabel();
+    this.labelSnapshots = new LabelSnapshotStore(properties.getLabels().getMaxSnapshots(),
+        properties.getLabels().getMissingTtl());
+    this.bucketSynchronizer = new BucketSynchronizer(s3Repository);
+    this.refreshWaitTimeout = properties.getRefreshWaitTimeout();
+    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("S3ConfigRefresh-");
+    threadFactory.setDaemon(true);
+    this.refreshExecutor = Executors.newSingleThreadExecutor(threadFactory);
   }
 
   @Override
@@ -64,59 +320,824 @@ public class S3EnvironmentRepository extends AbstractScmEnvironmentRepository
     Assert.state(getUri() != null,
         "You need to configure a uri for the s3 bucket (e.g. 's3://bucket/')");
     new AmazonS3URI(getUri());
+    if (labelsEnabled) {
+      //Label snapshots of a previous run aren't verified, they are fetched again on demand.
+      snapshotStore.discard(labelsDirectory().toPath());
+    }
+    if (restoreSnapshot()) {
+      lastRefreshTime = System.currentTimeMillis();
+    }
   }
 
   @Override
-  public synchronized Locations getLocations(String application, String profile, String label) {
-    String version = refresh();
-    return new Locations(application, profile, label, version,
-        getSearchLocations(getWorkingDirectory(), application, profile, label));
+  public void destroy() {
+    refreshExecutor.shutdownNow();
+  }
+
+  @Override
+  public Environment findOne(String application, String profile, String label) {
+    Timer.Sample sample = Timer.start(meterRegistry);
+    String cache = "miss";
+    Environment environment = null;
+    try {
+      if (isVersionLabel(label)) {
+        cache = "label";
+        ConfigSnapshot leased = acquireLabel(label);
+        try {
+          environment = resolve(leased, application, profile, label);
+          return copyOf(environment);
+        } finally {
+          labelSnapshots.release(leased);
+        }
+      }
+      ConfigSnapshot current = currentSnapshot();
+      EnvironmentCache.Key key = new EnvironmentCache.Key(application, profile, label,
+          current.getVersion());
+      environment = environmentCache.get(key);
+      if (environment == null) {
+        ConfigSnapshot leased = snapshotStore.acquire();
+        try {
+          environment = resolve(leased, application, profile, label);
+          environmentCache.put(new EnvironmentCache.Key(application, profile, label,
+              leased.getVersion()), environment);
+        } finally {
+          snapshotStore.release(leased);
+        }
+      } else {
+        cache = "hit";
+      }
+      return copyOf(environment);
+    } finally {
+      sample.stop(meterRegistry.timer(ConfigConstants.METRIC_FIND_ONE,
+          "application", applicationTag(application, environment), "cache", cache));
+    }
+  }
+
+  /**
+   * Returns the application tag of request metrics - the requested name if files of the
+   * application were resolved, {@link #UNKNOWN_APPLICATION} otherwise, so client supplied names
+   * can't create meters without bound.
+   *
+   * @param application - requested application name(s).
+   * @param environment - resolved environment, null if the request failed.
+   * @return tag value.
+   */
+  private static String applicationTag(String application, Environment environment) {
+    if (environment == null || application == null) {
+      return UNKNOWN_APPLICATION;
+    }
+    for (String name : StringUtils.commaDelimitedListToStringArray(application)) {
+      String trimmed = name.trim();
+      for (PropertySource source : environment.getPropertySources()) {
+        String path = StringUtils.cleanPath(source.getName());
+        String file = StringUtils.stripFilenameExtension(
+            path.substring(path.lastIndexOf('/') + 1));
+        if (path.contains("/" + trimmed + "/") || file.equals(trimmed)
+            || file.startsWith(trimmed + "-")) {
+          return application;
+        }
+      }
+    }
+    return UNKNOWN_APPLICATION;
+  }
+
+  /**
+   * Returns the search locations of a request, for SearchPathLocator clients. The snapshot is
+   * only leased while they are resolved: its directory stays on disk until two more versions
+   * are published. Environments and resources are read under a lease by
+   * {@link #findOne} and {@link #findResource} instead.
+   */
+  @Override
+  public Locations getLocations(String application, String profile, String label) {
+    if (isVersionLabel(label)) {
+      ConfigSnapshot leased = acquireLabel(label);
+      try {
+        return new Locations(application, profile, label, leased.getVersion(),
+            getSearchLocations(leased.getDirectory(), application, profile, label));
+      } finally {
+        labelSnapshots.release(leased);
+      }
+    }
+    currentSnapshot();
+    ConfigSnapshot leased = snapshotStore.acquire();
+    try {
+      LazyPrefixCache lazyCache = lazyCaches.get(leased.getDirectory());
+      Supplier<String[]> locations = () -> getSearchLocations(leased.getDirectory(),
+          application, profile, label);
+      return new Locations(application, profile, label, leased.getVersion(), lazyCache == null
+          ? locations.get()
+          : lazyCache.read(lazyPrefixes(application, profile, label), locations));
+    } finally {
+      snapshotStore.release(leased);
+    }
+  }
+
+  /**
+   * Finds a configuration file for the resource endpoints by looking its path up in the file
+   * index of the snapshot, see {@link ConfigSnapshot#findFile}. The contents are served from
+   * memory, each distinct file read from disk once while it stays in the resource cache.
+   * Snapshots without file index (LAZY snapshots, manifests of earlier versions) are searched on
+   * disk. Either way the file is read while the snapshot is leased, so it can't be reclaimed by
+   * publishes in between.
+   *
+   * @param application - application name.
+   * @param profile - profile(s), the file of the profiles is preferred as for
+   *     GenericResourceRepository.
+   * @param label - label, null for the default label.
+   * @param path - path of the file relative to the search locations.
+   * @return {@link Resource} with the contents and modification time of the file.
+   * @throws NoSuchResourceException if there is no such file.
+   */
+  public Resource findResource(String application, String profile, String label, String path) {
+    boolean versionLabel = isVersionLabel(label);
+    ConfigSnapshot leased;
+    if (versionLabel) {
+      leased = acquireLabel(label);
+    } else {
+      currentSnapshot();
+      leased = snapshotStore.acquire();
+      Assert.state(leased != null, "No configuration published");
+    }
+    try {
+      LazyPrefixCache lazyCache = lazyCaches.get(leased.getDirectory());
+      if (lazyCache != null) {
+        return lazyCache.read(lazyPrefixes(application, profile, label),
+            () -> readResource(leased, application, profile, label, path));
+      }
+      return readResource(leased, application, profile, label, path);
+    } finally {
+      if (versionLabel) {
+        labelSnapshots.release(leased);
+      } else {
+        snapshotStore.release(leased);
+      }
+    }
+  }
+
+  private Resource readResource(ConfigSnapshot leased, String application, String profile,
+      String label, String path) {
+    String file = leased.findFile(getSearchLocations(leased.getDirectory(), application,
+        profile, label), profile, path);
+    if (file == null) {
+      throw new NoSuchResourceException("Not found: " + path);
+    }
+    String sha256 = leased.getManifest().getFiles().get(file);
+    File local = new File(leased.getDirectory(), file);
+    byte[] content = sha256 == null ? null : contentCache.get(sha256);
+    String cache = "hit";
+    if (content == null) {
+      cache = "miss";
+      try {
+        content = Files.readAllBytes(local.toPath());
+      } catch (IOException e) {
+        throw new NoSuchResourceException("Error : " + path + ". (" + e.getMessage() + ")");
+      }
+      if (sha256 != null) {
+        contentCache.put(sha256, content);
+      }
+    }
+    meterRegistry.counter(ConfigConstants.METRIC_RESOURCES, "cache", cache).increment();
+    return new SnapshotFileResource(content, file + " of version " + leased.getVersion(),
+        local.lastModified());
+  }
+
+  /**
+   * Returns true if the label is served from a label version rather than the metafile version.
+   *
+   * @param label - requested label.
+   * @return label version flag.
+   */
+  public boolean isVersionLabel(String label) {
+    return labelsEnabled && StringUtils.hasText(label) && !label.equals(defaultLabel);
   }
 
   /**
-   * Refreshes the config state with local directory.
-   * {@link Scheduled} Operation configured by {spring.cloud.config.server.s3.pollingRefreshRate}
+   * Leases the snapshot of a label version, fetching it on first use.
+   *
+   * @param label - label.
+   * @return leased {@link ConfigSnapshot}
+   * @throws NoSuchLabelException if there are no objects below the label prefix.
+   */
+  private ConfigSnapshot acquireLabel(String label) {
+    ConfigSnapshot snapshot = labelSnapshots.acquire(label, this::fetchLabel);
+    if (snapshot == null) {
+      throw new NoSuchLabelException("No such label: " + label);
+    }
+    return snapshot;
+  }
+
+  /**
+   * Downloads the objects below the prefix of a label into a snapshot of its own.
+   *
+   * @param label - label.
+   * @return {@link ConfigSnapshot} versioned by the label, null if the label has no objects.
+   * @throws IllegalStateException if the label couldn't be downloaded.
+   */
+  private ConfigSnapshot fetchLabel(String label) {
+    String bucketName = new AmazonS3URI(getUri()).getBucket();
+    String prefix = labelPrefix.replace(S3Repository.LABEL_PLACEHOLDER, label);
+    Path staging = null;
+    try {
+      staging = snapshotStore.createStagingDirectory(labelsDirectory());
+      int objects = s3Repository.downloadPrefix(bucketName, prefix, staging);
+      if (objects == 0) {
+        snapshotStore.discard(staging);
+        return null;
+      }
+      SnapshotManifest manifest = new SnapshotManifest();
+      manifest.setVersion(label);
+      ConfigSnapshot snapshot = snapshotStore.promote(staging, manifest);
+      if (indexPropertySources) {
+        snapshot.setIndex(PropertySourceIndex.build(snapshot.getDirectory()));
+      }
+      log.info("Fetched label version. (bucketName={}, prefix={}, objects={})", bucketName,
+          prefix, objects);
+      return snapshot;
+    } catch (IOException | SystemException e) {
+      if (staging != null) {
+        snapshotStore.discard(staging);
+      }
+      throw new IllegalStateException("Could not fetch label " + label, e);
+    }
+  }
+
+  /**
+   * Returns the directory of label snapshots, next to basedir so publishing doesn't purge them.
+   *
+   * @return label snapshots directory.
+   */
+  private File labelsDirectory() {
+    File basedir = getBasedir().getAbsoluteFile();
+    return new File(basedir.getParentFile(), basedir.getName() + ".labels");
+  }
+
+  /**
+   * Returns the key prefixes the search paths resolve to, for LAZY snapshots.
+   * Search paths with wildcards resolve to everything below their last literal directory.
+   * Names are client supplied, names that would leave their directory are rejected.
+   *
+   * @param application - application name.
+   * @param profile - profile.
+   * @param label - label.
+   * @return key prefixes, see {@link LazyPrefixCache#read}.
+   * @throws IllegalArgumentException if a name contains "..", '/' or '\'.
+   */
+  private Set<String> lazyPrefixes(String application, String profile, String label) {
+    List<String> locations = new ArrayList<>();
+    locations.add("/");
+    if (getSearchPaths() != null) {
+      locations.addAll(Arrays.asList(getSearchPaths()));
+    }
+    Set<String> prefixes = new LinkedHashSet<>();
+    for (String location : locations) {
+      for (String prof : StringUtils.commaDelimitedListToStringArray(profile)) {
+        for (String app : StringUtils.commaDelimitedListToStringArray(application)) {
+          checkName(app);
+          checkName(prof);
+          checkName(label);
+          String value = location.replace("{application}", app).replace("{profile}", prof);
+          if (label != null) {
+            value = value.replace("{label}", label);
+          }
+          value = StringUtils.trimLeadingCharacter(value, '/');
+          int wildcard = value.indexOf('*');
+          if (wildcard >= 0) {
+            prefixes.add(value.substring(0, value.lastIndexOf('/', wildcard) + 1) + "*");
+          } else {
+            prefixes.add(value.isEmpty() || value.endsWith("/") ? value : value + "/");
+          }
+        }
+      }
+    }
+    return prefixes;
+  }
+
+  private static void checkName(String name) {
+    if (name != null && (name.contains("..") || name.contains("/") || name.contains("\\"))) {
+      throw new IllegalArgumentException("Invalid name: " + name);
+    }
+  }
+
+  /**
+   * Resolves the environment from a leased snapshot and caches it.
+   *
+   * @param current - leased {@link ConfigSnapshot}
+   * @param application - application name.
+   * @param profile - profile.
+   * @param label - label.
+   * @return resolved {@link Environment}
+   */
+  private Environment resolve(ConfigSnapshot current, String application, String profile,
+      String label) {
+    LazyPrefixCache lazyCache = lazyCaches.get(current.getDirectory());
+    if (lazyCache != null) {
+      return lazyCache.read(lazyPrefixes(application, profile, label),
+          () -> resolveFiles(current, application, profile, label));
+    }
+    return resolveFiles(current, application, profile, label);
+  }
+
+  private Environment resolveFiles(ConfigSnapshot current, String application, String profile,
+      String label) {
+    String[] locations = getSearchLocations(current.getDirectory(), application, profile,
+        label);
+    PropertySourceIndex index = current.getIndex();
+    Environment result;
+    if (index != null && StringUtils.hasText(profile)) {
+      result = index.find(locations, application, profile, "");
+    } else {
+      NativeEnvironmentRepository delegate = new NativeEnvironmentRepository(getEnvironment(),
+          new NativeEnvironmentProperties());
+      delegate.setSearchLocations(locations);
+      result = delegate.findOne(application, profile, "");
+    }
+    result.setVersion(current.getVersion());
+    result.setLabel(label);
+    return cleaner.clean(result, current.getDirectory().toURI().toString(), getUri());
+  }
+
+  /**
+   * Returns a copy of a cached environment, so callers can't modify the cached instance.
+   *
+   * @param environment - cached {@link Environment}
+   * @return copy of environment.
+   */
+  private static Environment copyOf(Environment environment) {
+    Environment copy = new Environment(environment);
+    copy.addAll(environment.getPropertySources());
+    return copy;
+  }
+
+  /**
+   * Returns current version of the configuration being served.
+   *
+   * @return version of the published snapshot, null if nothing is published yet.
+   */
+  public String getConfigVersion() {
+    ConfigSnapshot current = snapshotStore.current();
+    return current == null ? null : current.getVersion();
+  }
+
+  /**
+   * Adds a listener notified on the refresh thread with the version of every snapshot
+   * published from now on, once requests are served from it.
+   *
+   * @param listener - consumer of the published version, must not block.
+   */
+  public void addPublishListener(Consumer<String> listener) {
+    publishListeners.add(listener);
+  }
+
+  /**
+   * Returns the version requests of a label are served from, checking S3 first like
+   * {@link #findOne} does.
+   *
+   * @param label - label, null for the default label.
+   * @return configuration version - the label itself for label versions, which are immutable;
+   *     null if nothing is published yet.
+   */
+  public String getServingVersion(String label) {
+    if (isVersionLabel(label)) {
+      return label;
+    }
+    ConfigSnapshot current = currentSnapshot();
+    return current == null ? null : current.getVersion();
+  }
+
+  /**
+   * Returns the content version of an environment, which only changes with a new snapshot if
+   * one of the files it is resolved from changes, see {@link ConfigSnapshot#getContentVersion}.
+   *
+   * @param application - application name.
+   * @param profile - profile.
+   * @param label - label, null for the default label.
+   * @return content version - the label itself for label versions; the configuration version
+   *     for LAZY snapshots; null if nothing is published yet.
+   */
+  public String getContentVersion(String application, String profile, String label) {
+    if (isVersionLabel(label)) {
+      return label;
+    }
+    ConfigSnapshot current = currentSnapshot();
+    return current == null ? null : contentVersion(current, application, profile, label);
+  }
+
+  private String contentVersion(ConfigSnapshot snapshot, String application, String profile,
+      String label) {
+    if (lazyCaches.containsKey(snapshot.getDirectory())) {
+      //Files of LAZY snapshots are fetched on demand, they can't be hashed ahead.
+      return snapshot.getVersion();
+    }
+    return snapshot.getContentVersion(application, profile, label,
+        () -> getSearchLocations(snapshot.getDirectory(), application, profile, label));
+  }
+
+  /**
+   * Leases the published snapshot of a version, e.g. to ship it to a peer. If another version
+   * is published, a refresh is triggered and awaited up to refreshWaitTimeout first - only if
+   * the version check (within versionCacheTtl answered from the cache) reports the requested
+   * version, so made-up versions never reach S3.
+   *
+   * @param version - requested version.
+   * @return leased {@link ConfigSnapshot}, to {@link #releaseSnapshot}; null if the version
+   *     isn't published.
+   */
+  public ConfigSnapshot acquireSnapshot(String version) {
+    ConfigSnapshot snapshot = acquireVersion(version);
+    if (snapshot == null
+        && version.equals(bucketVersion(new AmazonS3URI(getUri()).getBucket()).orElse(null))) {
+      awaitRefresh(refreshBehindInflight());
+      snapshot = acquireVersion(version);
+    }
+    return snapshot;
+  }
+
+  private ConfigSnapshot acquireVersion(String version) {
+    ConfigSnapshot snapshot = snapshotStore.acquire();
+    if (snapshot != null && !snapshot.getVersion().equals(version)) {
+      snapshotStore.release(snapshot);
+      return null;
+    }
+    return snapshot;
+  }
+
+  /**
+   * Releases a snapshot leased with {@link #acquireSnapshot(String)}.
+   *
+   * @param snapshot - {@link ConfigSnapshot}
+   */
+  public void releaseSnapshot(ConfigSnapshot snapshot) {
+    snapshotStore.release(snapshot);
+  }
+
+  /**
+   * Returns the state of the refresh loop, without contacting S3.
+   *
+   * @return {@link RefreshStatus}
+   */
+  public RefreshStatus getRefreshStatus() {
+    return new RefreshStatus(getConfigVersion(), lastRefreshTime, lastS3CheckTime, s3Reachable);
+  }
+
+  /**
+   * Checks the version in S3, updating the reachability reported by {@link #getRefreshStatus()}.
+   *
+   * @return true if S3 returned a version.
+   */
+  public boolean probeS3() {
+    return bucketVersion(new AmazonS3URI(getUri()).getBucket()).isPresent();
+  }
+
+  /**
+   * Returns the version of the bucket, recording the outcome of the check.
+   *
+   * @param bucketName - bucketName.
+   * @return {@link Optional} version.
+   */
+  private Optional<String> bucketVersion(String bucketName) {
+    Optional<String> version = s3Repository.getBucketVersion(bucketName);
+    s3Reachable = version.isPresent();
+    lastS3CheckTime = System.currentTimeMillis();
+    return version;
+  }
+
+  /**
+   * Returns the snapshot to serve a request from.
+   * S3 is only consulted when refreshOnRequest is enabled or when nothing is published yet.
+   * Requests never take a lock; with refreshOnRequest they wait for the (shared) refresh up to
+   * refreshWaitTimeout and are served from the current snapshot after that.
+   *
+   * @return {@link ConfigSnapshot}
+   */
+  private ConfigSnapshot currentSnapshot() {
+    ConfigSnapshot current = snapshotStore.current();
+    if (current == null) {
+      refresh();
+      return snapshotStore.current();
+    }
+    if (refreshOnRequest) {
+      awaitRefresh(refreshAsync());
+      return snapshotStore.current();
+    }
+    return current;
+  }
+
+  /**
+   * Waits up to refreshWaitTimeout for a refresh, failures leave the current snapshot served.
+   *
+   * @param refresh - refresh to wait for.
+   */
+  private void awaitRefresh(CompletableFuture<String> refresh) {
+    try {
+      refresh.get(refreshWaitTimeout, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      log.debug("Refresh still running, serving current configuration. (configVersion={})",
+          getConfigVersion());
+    } catch (ExecutionException e) {
+      log.warn("Refresh failed, serving current configuration. (configVersion={})",
+          getConfigVersion());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Refreshes the config state with local directory and waits for it.
+   * Polled by the adaptive poller starting at {spring.cloud.config.server.s3.pollingRefreshRate}
+   * @return Current version of the configuration.
+   */
+  public String refresh() {
+    try {
+      return refreshAsync().join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Unable to refresh local config.", e.getCause());
+    }
+  }
+
+  /**
+   * Triggers a refresh unless one is running already, in which case the caller joins it.
+   *
+   * @return {@link CompletableFuture} completed with the version once the refresh is done.
+   */
+  public CompletableFuture<String> refreshAsync() {
+    synchronized (refreshLock) {
+      if (inflightRefresh != null) {
+        return inflightRefresh;
+      }
+      CompletableFuture<String> refresh = new CompletableFuture<>();
+      inflightRefresh = refresh;
+      refreshExecutor.execute(() -> {
+        try {
+          String version = doRefresh();
+          clearInflightRefresh();
+          refresh.complete(version);
+        } catch (Throwable t) {
+          clearInflightRefresh();
+          refresh.completeExceptionally(t);
+        }
+      });
+      return refresh;
+    }
+  }
+
+  /**
+   * Triggers a refresh for a change that just happened. A refresh already running may have
+   * checked S3 before the change, so one more refresh is queued behind it; changes arriving
+   * meanwhile share that refresh. The version check skips the version cache.
+   *
+   * @return {@link CompletableFuture} completed with the version once the change is picked up.
+   */
+  public CompletableFuture<String> refreshAfterChange() {
+    s3Repository.expireBucketVersion(new AmazonS3URI(getUri()).getBucket());
+    return refreshBehindInflight();
+  }
+
+  /**
+   * Triggers a refresh that checks S3 after now, queued behind a refresh already running.
+   */
+  private CompletableFuture<String> refreshBehindInflight() {
+    synchronized (refreshLock) {
+      if (inflightRefresh == null) {
+        return refreshAsync();
+      }
+      if (followUpRefresh == null) {
+        followUpRefresh = inflightRefresh.handle((version, t) -> version)
+            .thenCompose(ignored -> {
+              synchronized (refreshLock) {
+                followUpRefresh = null;
+                return refreshAsync();
+              }
+            });
+      }
+      return followUpRefresh;
+    }
+  }
+
+  private void clearInflightRefresh() {
+    synchronized (refreshLock) {
+      inflightRefresh = null;
+    }
+  }
+
+  /**
+   * Refreshes the config state with local directory, runs on the refresh thread only.
+   *
    * @return Current version of the configuration.
    */
-  @Scheduled(fixedRateString = "${spring.cloud.config.server.s3.pollingRefreshRate:60000}")
-  public synchronized String refresh() {
+  private synchronized String doRefresh() {
+    Timer.Sample refreshSample = Timer.start(meterRegistry);
+    String outcome = "error";
     try {
-      if (shouldFetchConfig()) {
+      Timer.Sample phase = Timer.start(meterRegistry);
+      boolean restored = snapshotStore.current() == null && restoreSnapshot();
+      boolean fetch = !restored && shouldFetchConfig();
+      phase.stop(phaseTimer("check"));
+      if (fetch) {
         log.debug("Attempting to refresh configuration by pulling from s3");
-        //fetchConfiguration : To temp directory
-        final Path tmpDir = Files.createTempDirectory(ConfigConstants.TEMP_CONFIG_REPO_PREFIX);
-        fetchConfiguration(tmpDir);
-        //deleteBaseDir : New config is available
-        deleteBaseDirIfExists();
-        //Copy newly fetched config to baseDir
-        copyConfigurationToBaseDir(tmpDir);
-        //Cleanup tempDir
-        FileSystemUtils.deleteRecursively(tmpDir);
+        //fetchConfiguration : To staging directory next to the snapshots
+        final Path stagingDir = snapshotStore.createStagingDirectory(getBasedir());
+        SnapshotManifest manifest;
+        phase = Timer.start(meterRegistry);
+        try {
+          manifest = fetchConfiguration(stagingDir);
+        } catch (SystemException e) {
+          snapshotStore.discard(stagingDir);
+          throw e;
+        }
+        phase.stop(phaseTimer("download"));
+        //Rename into its own snapshot directory and publish new version to request threads
+        phase = Timer.start(meterRegistry);
+        publish(snapshotStore.promote(stagingDir, manifest));
+        phase.stop(phaseTimer("publish"));
       }
+      outcome = restored ? "restored" : fetch ? "updated" : "unchanged";
+      lastRefreshTime = System.currentTimeMillis();
       log.info("Current configuration version (configVersion={})", getConfigVersion());
     } catch (SystemException | IllegalStateException | IOException e) {
       log.error("Exception on refreshing local config, Serving old configuration."
           + "(configVersion={})", getConfigVersion());
       throw new IllegalStateException("Unable to refresh local config.", e);
+    } finally {
+      refreshSample.stop(meterRegistry.timer(ConfigConstants.METRIC_REFRESH, "outcome", outcome));
     }
     return getConfigVersion();
   }
 
+  private Timer phaseTimer(String phase) {
+    return meterRegistry.timer(ConfigConstants.METRIC_REFRESH_PHASE, "phase", phase);
+  }
+
+  /**
+   * Publishes the snapshot persisted by a previous run if it is intact and its version is
+   * still the version in S3, so a restart doesn't download the bucket again.
+   *
+   * @return true if a snapshot was restored.
+   */
+  private synchronized boolean restoreSnapshot() {
+    SnapshotManifest manifest = snapshotStore.loadManifest(getBasedir());
+    if (manifest == null || DEFAULT_CONFIG_VERSION.equals(manifest.getVersion())) {
+      return false;
+    }
+    String bucketName = new AmazonS3URI(getUri()).getBucket();
+    String s3ConfigVersion = bucketVersion(bucketName).orElse(
+        DEFAULT_CONFIG_VERSION);
+    if (!manifest.getVersion().equals(s3ConfigVersion)) {
+      log.info("Persisted snapshot is outdated. (snapshotVersion={}, s3Version={})",
+          manifest.getVersion(), s3ConfigVersion);
+      return false;
+    }
+    ConfigSnapshot restored = snapshotStore.restore(getBasedir(), manifest,
+        verifyRestoredSnapshots);
+    if (restored == null) {
+      return false;
+    }
+    publish(restored);
+    log.info("Restored persisted snapshot. (configVersion={}, dir={})", restored.getVersion(),
+        restored.getDirectory().getAbsolutePath());
+    return true;
+  }
+
+  /**
+   * Publishes a snapshot to request threads, indexing its property sources and replacing
+   * environments of the previous one with the most requested ones resolved against it.
+   *
+   * @param published - {@link ConfigSnapshot}
+   */
+  private void publish(ConfigSnapshot published) {
+    ConfigSnapshot replaced = snapshotStore.current();
+    boolean firstPublish = replaced == null;
+    if (syncMode == SyncMode.LAZY) {
+      lazyCaches.keySet().removeIf(dir -> firstPublish || !dir.equals(replaced.getDirectory()));
+      lazyCaches.put(published.getDirectory(), new LazyPrefixCache(s3Repository,
+          new AmazonS3URI(getUri()).getBucket(), published.getVersion(),
+          published.getDirectory(), lazyCacheSize, this::refreshAfterChange));
+    } else if (indexPropertySources) {
+      published.setIndex(PropertySourceIndex.build(published.getDirectory()));
+    }
+    Set<EnvironmentCache.Key> unchanged = firstPublish ? Collections.emptySet()
+        : unchanged(replaced, published);
+    environmentCache.invalidate(published.getVersion(), prewarm(published, unchanged),
+        unchanged);
+    snapshotStore.publish(published);
+    publishListeners.forEach(listener -> listener.accept(published.getVersion()));
+    if (firstPublish) {
+      snapshotStore.purgeExcept(published);
+    }
+    snapshotStore.saveManifest(published);
+  }
+
+  /**
+   * Returns the cached environments a snapshot about to be published leaves unchanged, which
+   * stay cached for the new version.
+   *
+   * @param replaced - published {@link ConfigSnapshot}
+   * @param published - {@link ConfigSnapshot} not published yet.
+   * @return keys of the cached version with the same content version in both snapshots.
+   */
+  private Set<EnvironmentCache.Key> unchanged(ConfigSnapshot replaced,
+      ConfigSnapshot published) {
+    Set<EnvironmentCache.Key> unchanged = new HashSet<>();
+    for (EnvironmentCache.Key key : environmentCache.keys()) {
+      try {
+        if (key.getVersion().equals(replaced.getVersion())
+            && contentVersion(replaced, key.getApplication(), key.getProfile(), key.getLabel())
+            .equals(contentVersion(published, key.getApplication(), key.getProfile(),
+                key.getLabel()))) {
+          unchanged.add(key);
+        }
+      } catch (RuntimeException e) {
+        log.warn("Could not compare environment versions. (application={}, profile={},"
+            + " label={})", key.getApplication(), key.getProfile(), key.getLabel(), e);
+      }
+    }
+    log.info("Compared cached environments. (configVersion={}, cached={}, unchanged={})",
+        published.getVersion(), environmentCache.size(), unchanged.size());
+    return unchanged;
+  }
+
+  /**
+   * Resolves the most requested environments of the current snapshot against a snapshot about
+   * to be published, so requests find them cached once it is. Unchanged environments are kept
+   * rather than resolved again, environments failing to resolve are left to requests.
+   *
+   * @param published - {@link ConfigSnapshot} not published yet.
+   * @param unchanged - keys of environments the snapshot leaves unchanged.
+   * @return environments by key of the published version.
+   */
+  private Map<EnvironmentCache.Key, Environment> prewarm(ConfigSnapshot published,
+      Set<EnvironmentCache.Key> unchanged) {
+    Map<EnvironmentCache.Key, Long> hottest = environmentCache.hottest(prewarmSize);
+    if (hottest.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    Timer.Sample sample = Timer.start(meterRegistry);
+    long requests = environmentCache.requests();
+    long covered = 0;
+    Map<EnvironmentCache.Key, Environment> prewarmed = new LinkedHashMap<>();
+    for (Map.Entry<EnvironmentCache.Key, Long> hot : hottest.entrySet()) {
+      EnvironmentCache.Key key = hot.getKey();
+      if (unchanged.contains(key)) {
+        covered += hot.getValue();
+        continue;
+      }
+      try {
+        prewarmed.put(new EnvironmentCache.Key(key.getApplication(), key.getProfile(),
+            key.getLabel(), published.getVersion()), resolve(published, key.getApplication(),
+            key.getProfile(), key.getLabel()));
+        covered += hot.getValue();
+      } catch (RuntimeException e) {
+        log.warn("Could not prewarm environment. (application={}, profile={}, label={})",
+            key.getApplication(), key.getProfile(), key.getLabel(), e);
+      }
+    }
+    sample.stop(meterRegistry.timer(ConfigConstants.METRIC_PREWARM));
+    prewarmCoverage = requests == 0 ? 1 : (double) covered / requests;
+    log.info("Prewarmed environments. (configVersion={}, environments={}, coverage={})",
+        published.getVersion(), prewarmed.size(), prewarmCoverage);
+    return prewarmed;
+  }
+
   /**
    * Fetch configuration from S3 to destDir.
    *
    * @param destDir - destination directory
+   * @return manifest of the fetched configuration.
    */
-  private void fetchConfiguration(Path destDir) throws SystemException {
+  private SnapshotManifest fetchConfiguration(Path destDir) throws SystemException {
     String bucketName = new AmazonS3URI(getUri()).getBucket();
     try {
-      log.info("Fetching config from s3 bucket to local directory. (bucketName={}, localDir={})",
-          bucketName, destDir.toAbsolutePath());
+      log.info("Fetching config from s3 bucket to local directory. (bucketName={}, localDir={},"
+          + " syncMode={})", bucketName, destDir.toAbsolutePath(), syncMode);
+      //Read before the download, a change landing meanwhile is fetched by the next refresh
+      //instead of labelling the content downloaded before it.
+      Optional<String> configVersion = bucketVersion(bucketName);
 
-      s3Repository.downloadBucket(bucketName, destDir.toFile());
-      Optional<String> configVersion = s3Repository.getBucketVersion(bucketName);
-      //Set current config version details
-      this.setConfigVersion(configVersion.orElse(DEFAULT_CONFIG_VERSION));
+      if (syncMode == SyncMode.LAZY) {
+        //Objects are fetched when requests need them.
+        SnapshotManifest manifest = new SnapshotManifest();
+        manifest.setVersion(configVersion.orElse(DEFAULT_CONFIG_VERSION));
+        return manifest;
+      }
+      SnapshotManifest manifest = fetchFromPeer(configVersion, destDir);
+      if (manifest == null && syncMode == SyncMode.PACKED) {
+        manifest = fetchPack(bucketName, configVersion, destDir);
+      }
+      if (manifest != null) {
+        return manifest;
+      }
+      if (syncMode == SyncMode.INCREMENTAL) {
+        SnapshotManifest baseline = baselineManifest();
+        manifest = bucketSynchronizer.sync(bucketName, baseline, baseline == null ? null
+            : new File(getBasedir(), baseline.getSnapshot()), destDir);
+      } else {
+        s3Repository.downloadBucket(bucketName, destDir.toFile());
+        manifest = new SnapshotManifest();
+      }
+      manifest.setVersion(configVersion.orElse(DEFAULT_CONFIG_VERSION));
+      return manifest;
     } catch (Throwable t) {
       log.error("Exception while fetching configuration from S3. (bucketName={})", bucketName);
       throw new SystemException("Could not download s3 bucket.", t);
@@ -124,18 +1145,57 @@ public class S3EnvironmentRepository extends AbstractScmEnvironmentRepository
   }
 
   /**
-   * Deletes base directories if Exists.
-   * Synchronize here so that multiple requests don't try to delete the baseDirectory.
+   * Fetches the version in S3 from the cluster leader, if one is configured.
+   *
+   * @param configVersion - version in S3.
+   * @param destDir - destination directory.
+   * @return manifest of the fetched snapshot, null to fetch from S3.
    */
-  private synchronized void deleteBaseDirIfExists() {
-    try {
-      if (getBasedir().exists()) {
-        log.debug("Deleting base directory. (baseDir={})", getBasedir().getAbsolutePath());
-        FileSystemUtils.deleteRecursively(getBasedir().toPath());
-      }
-    } catch (IOException e) {
-      throw new IllegalStateException("Failed to cleanup base directory", e);
+  private SnapshotManifest fetchFromPeer(Optional<String> configVersion, Path destDir) {
+    if (peerSnapshotClient == null) {
+      return null;
     }
+    return configVersion.map(version -> peerSnapshotClient.fetch(version, destDir))
+        .orElse(null);
+  }
+
+  /**
+   * Fetches the archive packed for the version in S3.
+   *
+   * @param bucketName - bucketName.
+   * @param configVersion - version in S3.
+   * @param destDir - destination directory.
+   * @return manifest of the fetched snapshot, null to download the objects instead.
+   * @throws SystemException - {@link SystemException}
+   */
+  private SnapshotManifest fetchPack(String bucketName, Optional<String> configVersion,
+      Path destDir) throws SystemException {
+    if (!configVersion.isPresent()) {
+      return null;
+    }
+    String key = packKey.replace("{version}", configVersion.get());
+    if (!s3Repository.downloadPack(bucketName, key, destDir)) {
+      log.warn("No snapshot pack for the version, downloading objects. (bucketName={}, key={})",
+          bucketName, key);
+      return null;
+    }
+    SnapshotManifest manifest = new SnapshotManifest();
+    manifest.setVersion(configVersion.get());
+    return manifest;
+  }
+
+  /**
+   * Returns the manifest to diff an incremental sync against - the published snapshot,
+   * or on startup the snapshot persisted by the previous run.
+   *
+   * @return {@link SnapshotManifest}, null if there is nothing to diff against.
+   */
+  private SnapshotManifest baselineManifest() {
+    ConfigSnapshot current = snapshotStore.current();
+    if (current != null) {
+      return current.getDirectory().isDirectory() ? current.getManifest() : null;
+    }
+    return snapshotStore.loadManifest(getBasedir());
   }
 
   /**
@@ -143,20 +1203,20 @@ public class S3EnvironmentRepository extends AbstractScmEnvironmentRepository
    * @return boolean indicating if fresh config should be fetched.
    */
   private boolean shouldFetchConfig() {
-
-    //if base directory doesn't exist, always fetch.
-    if (!getBasedir().exists()) {
+    //if snapshot directory doesn't exist, always fetch.
+    ConfigSnapshot current = snapshotStore.current();
+    if (current == null || !current.getDirectory().exists()) {
       return true;
     }
 
-    //always fetch when current config version is set to default or is empty.
-    if (StringUtils.isEmpty(configVersion)
-        || DEFAULT_CONFIG_VERSION.equals(configVersion)) {
+    //always fetch when current config version is set to default.
+    String configVersion = current.getVersion();
+    if (DEFAULT_CONFIG_VERSION.equals(configVersion)) {
       return true;
     }
 
     String bucketName = new AmazonS3URI(getUri()).getBucket();
-    String s3ConfigVersion = s3Repository.getBucketVersion(bucketName).orElse(
+    String s3ConfigVersion = bucketVersion(bucketName).orElse(
         DEFAULT_CONFIG_VERSION);
 
     //Either s3 version is not present or is Default OR
@@ -168,19 +1228,34 @@ public class S3EnvironmentRepository extends AbstractScmEnvironmentRepository
     return false;
   }
 
+
   /**
-   * Copy configuration from srcDir to Base directory to serve.
-   * @param srcDir - Source Directory from where the config will be copied.
-   * @throws IOException - {@link IOException}
+   * Contents of a snapshot file, reporting the modification time of the file so the resource
+   * endpoints keep answering If-Modified-Since.
    */
-  private void copyConfigurationToBaseDir(Path srcDir) {
-    try {
-      log.debug("Copying configuration to base directory. (srcDir={}, baseDir={})",
-          srcDir.toAbsolutePath(), getBasedir().getAbsolutePath());
-      FileSystemUtils.copyRecursively(srcDir.toFile(), getBasedir());
-    } catch (IOException e) {
-      throw new IllegalStateException("Exception while copying configuration to Base Dir", e);
+  private static final class SnapshotFileResource extends ByteArrayResource {
+
+    private final long lastModified;
+
+    private SnapshotFileResource(byte[] content, String description, long lastModified) {
+      super(content, description);
+      this.lastModified = lastModified;
     }
-  }
 
+    @Override
+    public long lastModified() {
+      return lastModified;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return super.equals(other) && other instanceof SnapshotFileResource
+          && lastModified == ((SnapshotFileResource) other).lastModified;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * super.hashCode() + Long.hashCode(lastModified);
+    }
+  }
 }
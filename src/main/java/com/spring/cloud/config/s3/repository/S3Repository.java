@@ -1,19 +1,66 @@
 package com.spring.cloud.config.s3.repository;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.ObjectMetadata;
-import com.amazonaws.services.s3.transfer.MultipleFileDownload;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.SSEAlgorithm;
 import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.util.BinaryUtils;
+import com.amazonaws.util.DateUtils;
+import com.amazonaws.util.IOUtils;
+import com.spring.cloud.config.s3.config.S3EnvironmentRepositoryProperties;
+import com.spring.cloud.config.s3.config.S3EnvironmentRepositoryProperties.Download;
+import com.spring.cloud.config.s3.config.S3EnvironmentRepositoryProperties.Labels;
+import com.spring.cloud.config.s3.constant.ConfigConstants;
 import com.spring.cloud.config.s3.exceptions.SystemException;
+import com.spring.cloud.config.s3.snapshot.SnapshotArchive;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import lombok.NonNull;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 
 /**
  * Repository to download data/metadata of objects with Amazon S3.
@@ -34,6 +81,20 @@ public class S3Repository {
    */
   public static final String METADATA_VERSION = "version";
 
+  /**
+   * Placeholder of the label in the labels prefix.
+   */
+  public static final String LABEL_PLACEHOLDER = "{label}";
+
+  private static final String MD5 = "MD5";
+
+  private static final String SHA_256 = "SHA-256";
+
+  /**
+   * ETag of an object uploaded in a single part, multipart ETags end with '-partCount'.
+   */
+  private static final Pattern MD5_ETAG = Pattern.compile("[0-9a-fA-F]{32}");
+
   /**
    * {@link AmazonS3} instance.
    */
@@ -46,11 +107,74 @@ public class S3Repository {
   @Resource
   private TransferManager transferManager;
 
+  /**
+   * {@link MeterRegistry} for S3 call and download metrics.
+   */
+  @Resource
+  private MeterRegistry meterRegistry;
+
+  /**
+   * S3EnvironmentRepository properties, for the download engine settings.
+   */
+  @Resource
+  private S3EnvironmentRepositoryProperties properties;
+
   @Value("${spring.cloud.config.server.s3.metafile}")
   private String metaFileName;
 
   /**
-   * Downloads a bucket from S3.
+   * Runs object downloads, bounded by the download parallelism.
+   */
+  private ExecutorService downloadExecutor;
+
+  /**
+   * Download pools of buckets isolated from the shared one, see {@link #isolateBucket}.
+   */
+  private final Map<String, ExecutorService> bucketExecutors = new ConcurrentHashMap<>();
+
+  /**
+   * Last metafile response by bucket, see {@link #getBucketVersion(String)}.
+   */
+  private final Map<String, MetafileState> metafiles = new ConcurrentHashMap<>();
+
+  /**
+   * Creates the download thread pool.
+   */
+  @PostConstruct
+  public void init() {
+    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("S3Download-");
+    threadFactory.setDaemon(true);
+    downloadExecutor = Executors.newFixedThreadPool(properties.getDownload().getParallelism(),
+        threadFactory);
+  }
+
+  /**
+   * Shuts the download thread pool down.
+   */
+  @PreDestroy
+  public void destroy() {
+    downloadExecutor.shutdownNow();
+    bucketExecutors.values().forEach(ExecutorService::shutdownNow);
+  }
+
+  /**
+   * Downloads objects of a bucket on a pool of its own, so a large bucket doesn't queue
+   * downloads of the others.
+   *
+   * @param bucketName - bucketName.
+   * @param parallelism - objects of the bucket downloaded in parallel.
+   */
+  public void isolateBucket(String bucketName, int parallelism) {
+    bucketExecutors.computeIfAbsent(bucketName, name -> {
+      CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(
+          "S3Download-" + name + "-");
+      threadFactory.setDaemon(true);
+      return Executors.newFixedThreadPool(parallelism, threadFactory);
+    });
+  }
+
+  /**
+   * Downloads a bucket from S3, objects are fetched in parallel.
    *
    * @param bucketName - bucketName.
    * @param destinationDir - destinationDir where bucket will be downloaded.
@@ -58,34 +182,426 @@ public class S3Repository {
    */
   public void downloadBucket(String bucketName, File destinationDir)
       throws SystemException {
+    final long startTimeMillis = System.currentTimeMillis();
+    Path destDir = destinationDir.toPath();
+    List<S3ObjectSummary> objects = new ArrayList<>();
+    for (S3ObjectSummary summary : listObjects(bucketName)) {
+      if (resolveObjectPath(destDir, summary.getKey()) != null) {
+        objects.add(summary);
+      } else if (!summary.getKey().endsWith("/")) {
+        log.warn("Skipping object outside of the destination. (bucketName={}, key={})",
+            bucketName, summary.getKey());
+      }
+    }
+    downloadObjects(bucketName, objects, destDir);
+    log.info("Downloaded S3 bucket, (bucketName={}, objects={}, totalTime={} ms)",
+        bucketName, objects.size(), (System.currentTimeMillis() - startTimeMillis));
+  }
+
+  /**
+   * Downloads objects below the destination directory in parallel. Fails on the first object
+   * that can't be downloaded, cancelling the others.
+   *
+   * @param bucketName - bucketName.
+   * @param objects - objects to download, keys must resolve below destDir.
+   * @param destDir - destination directory.
+   * @throws SystemException - ${@link SystemException}
+   */
+  public void downloadObjects(String bucketName, Collection<S3ObjectSummary> objects,
+      Path destDir) throws SystemException {
+    Map<S3ObjectSummary, File> targets = new LinkedHashMap<>();
+    for (S3ObjectSummary summary : objects) {
+      targets.put(summary, destDir.resolve(summary.getKey()).toFile());
+    }
+    download(bucketName, targets);
+  }
+
+  /**
+   * Downloads the objects below a key prefix in parallel, to their key relative to the prefix.
+   *
+   * @param bucketName - bucketName.
+   * @param prefix - key prefix (e.g. 'versions/v42/').
+   * @param destDir - destination directory.
+   * @return number of downloaded objects, 0 if there are none below the prefix.
+   * @throws SystemException - ${@link SystemException}
+   */
+  public int downloadPrefix(String bucketName, String prefix, Path destDir)
+      throws SystemException {
+    Map<S3ObjectSummary, File> targets = new LinkedHashMap<>();
+    for (S3ObjectSummary summary : listObjects(bucketName, prefix, null)) {
+      Path target = resolveObjectPath(destDir, summary.getKey().substring(prefix.length()));
+      if (target != null) {
+        targets.put(summary, target.toFile());
+      }
+    }
+    download(bucketName, targets);
+    return targets.size();
+  }
+
+  private void download(String bucketName, Map<S3ObjectSummary, File> targets)
+      throws SystemException {
+    if (targets.isEmpty()) {
+      return;
+    }
+    Map<String, String> checksums = getChecksums(bucketName);
+    ExecutorService executor = bucketExecutors.getOrDefault(bucketName, downloadExecutor);
+    List<Future<?>> downloads = new ArrayList<>(targets.size());
     try {
-      final long startTimeMillis = System.currentTimeMillis();
-      MultipleFileDownload download = transferManager.downloadDirectory(bucketName,
-          null, destinationDir);
-      download.waitForCompletion();
-      log.info("Total time taken to download S3 bucket, (bucketName={}, totalTime={} ms)",
-          bucketName, (System.currentTimeMillis() - startTimeMillis));
+      for (Map.Entry<S3ObjectSummary, File> target : targets.entrySet()) {
+        String sha256 = checksums.get(target.getKey().getKey());
+        downloads.add(executor.submit(() -> {
+          fetchObject(bucketName, target.getKey(), target.getValue(), sha256);
+          return null;
+        }));
+      }
+      for (Future<?> download : downloads) {
+        download.get();
+      }
+    } catch (ExecutionException e) {
+      downloads.forEach(download -> download.cancel(true));
+      throw new SystemException("Exception while downloading s3 objects.", e.getCause());
     } catch (InterruptedException e) {
-      throw new SystemException("Exception while downloading s3 bucket.", e);
+      downloads.forEach(download -> download.cancel(true));
+      Thread.currentThread().interrupt();
+      throw new SystemException("Interrupted while downloading s3 objects.", e);
+    }
+  }
+
+  /**
+   * Resolves the local path of an object key.
+   *
+   * @param destDir - destination directory.
+   * @param key - object key.
+   * @return {@link Path}, null for directory markers and keys not resolving below destDir
+   *     (e.g. the empty key of a prefix marker).
+   */
+  public static Path resolveObjectPath(Path destDir, String key) {
+    if (key.isEmpty() || key.endsWith("/")) {
+      return null;
+    }
+    Path target = destDir.resolve(key).normalize();
+    return target.startsWith(destDir) && !target.equals(destDir) ? target : null;
+  }
+
+  /**
+   * Downloads a single object, large objects through the {@link TransferManager}.
+   * Large objects are verified once they are written, their ETag is no MD5 if they were
+   * uploaded in parts.
+   */
+  private void fetchObject(String bucketName, S3ObjectSummary summary, File target,
+      String sha256) throws InterruptedException, IOException, SystemException {
+    Download settings = properties.getDownload();
+    if (summary.getSize() < settings.getLargeObjectThreshold()) {
+      downloadObject(bucketName, summary.getKey(), target, sha256);
+      return;
+    }
+    record("download", () -> {
+      GetObjectRequest request = objectRequest(bucketName, summary.getKey());
+      //The timeout applies per largeObjectThreshold bytes, large objects take longer.
+      long chunkSize = Math.max(1, settings.getLargeObjectThreshold());
+      long chunks = Math.max(1, (summary.getSize() + chunkSize - 1) / chunkSize);
+      request.setSdkClientExecutionTimeout((int) Math.min(Integer.MAX_VALUE,
+          settings.getObjectTimeout() * chunks));
+      transferManager.download(request, target).waitForCompletion();
+      return null;
+    });
+    if (target.length() != summary.getSize()) {
+      throw corrupt(summary.getKey(), "size", summary.getSize(), target.length());
+    }
+    if (sha256 != null) {
+      MessageDigest digest = digest(SHA_256);
+      try (InputStream in = new DigestInputStream(Files.newInputStream(target.toPath()),
+          digest)) {
+        IOUtils.drainInputStream(in);
+      }
+      verifyDigest(summary.getKey(), SHA_256, sha256, digest);
+    }
+    recordDownload(1, target.length());
+  }
+
+  private GetObjectRequest objectRequest(String bucketName, String key) {
+    GetObjectRequest request = new GetObjectRequest(bucketName, key);
+    int objectTimeout = properties.getDownload().getObjectTimeout();
+    if (objectTimeout > 0) {
+      request.setSdkClientExecutionTimeout(objectTimeout);
     }
+    return request;
+  }
+
+  /**
+   * Lists all objects of a bucket, except the label versions below the labels prefix.
+   *
+   * @param bucketName - bucketName.
+   * @return {@link List} of {@link S3ObjectSummary}
+   */
+  public List<S3ObjectSummary> listObjects(String bucketName) {
+    List<S3ObjectSummary> summaries = listObjects(bucketName, null, null);
+    Labels labels = properties.getLabels();
+    int placeholder = labels.getPrefix().indexOf(LABEL_PLACEHOLDER);
+    if (labels.isEnabled() && placeholder > 0) {
+      String root = labels.getPrefix().substring(0, placeholder);
+      summaries.removeIf(summary -> summary.getKey().startsWith(root));
+    }
+    return summaries;
+  }
+
+  /**
+   * Lists objects of a bucket below a prefix.
+   *
+   * @param bucketName - bucketName.
+   * @param prefix - key prefix, null for all objects.
+   * @param delimiter - delimiter, "/" lists only objects directly below the prefix; null for
+   *     all objects below it.
+   * @return {@link List} of {@link S3ObjectSummary}
+   */
+  public List<S3ObjectSummary> listObjects(String bucketName, String prefix, String delimiter) {
+    List<S3ObjectSummary> summaries = new ArrayList<>();
+    ListObjectsV2Request request = new ListObjectsV2Request().withBucketName(bucketName)
+        .withPrefix(prefix).withDelimiter(delimiter);
+    ListObjectsV2Result result;
+    do {
+      result = record("listObjects", () -> s3Client.listObjectsV2(request));
+      summaries.addAll(result.getObjectSummaries());
+      request.setContinuationToken(result.getNextContinuationToken());
+    } while (result.isTruncated());
+    return summaries;
+  }
+
+  /**
+   * Downloads a single object to the destination file, creating parent directories.
+   * The object is verified while it streams in, see
+   * {@link #downloadObject(String, String, File, String)}.
+   *
+   * @param bucketName - bucketName.
+   * @param key - object key.
+   * @param destination - destination file.
+   * @throws SystemException - if the object can't be written or doesn't match its checksum.
+   */
+  public void downloadObject(String bucketName, String key, File destination)
+      throws SystemException {
+    try {
+      downloadObject(bucketName, key, destination, null);
+    } catch (IOException e) {
+      throw new SystemException("Could not download object " + key, e);
+    }
+  }
+
+  /**
+   * Streams an object to the destination file, hashing it as it is written. The file must have
+   * the Content-Length of the response, the MD5 of a single part upload must match its ETag -
+   * unless it is encrypted with SSE-KMS or SSE-C - and the SHA-256 the expected one.
+   *
+   * @throws IOException - if the object can't be written or doesn't match its checksum.
+   */
+  private void downloadObject(String bucketName, String key, File destination, String sha256)
+      throws IOException {
+    File parent = destination.getAbsoluteFile().getParentFile();
+    if (parent != null) {
+      Files.createDirectories(parent.toPath());
+    }
+    MessageDigest md5 = digest(MD5);
+    MessageDigest sha = digest(SHA_256);
+    long bytes;
+    try (S3Object object = record("getObject",
+        () -> s3Client.getObject(objectRequest(bucketName, key)))) {
+      try (InputStream in = new DigestInputStream(
+          new DigestInputStream(object.getObjectContent(), md5), sha)) {
+        bytes = Files.copy(in, destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      ObjectMetadata metadata = object.getObjectMetadata();
+      if (metadata.getRawMetadataValue(Headers.CONTENT_LENGTH) != null
+          && metadata.getContentLength() != bytes) {
+        throw corrupt(key, "size", metadata.getContentLength(), bytes);
+      }
+      String etag = metadata.getETag();
+      if (etag != null && MD5_ETAG.matcher(etag).matches()
+          && !SSEAlgorithm.KMS.getAlgorithm().equals(metadata.getSSEAlgorithm())
+          && metadata.getSSECustomerAlgorithm() == null) {
+        verifyDigest(key, MD5, etag, md5);
+      }
+    }
+    if (sha256 != null) {
+      verifyDigest(key, SHA_256, sha256, sha);
+    }
+    recordDownload(1, bytes);
+  }
+
+  /**
+   * Returns the SHA-256 of objects listed in the checksums file of a bucket.
+   *
+   * @param bucketName - bucketName.
+   * @return {@link Map} of hex encoded SHA-256 by key, empty if no checksums key is configured
+   *     or the bucket has no such file.
+   * @throws SystemException - if the checksums file can't be read.
+   */
+  public Map<String, String> getChecksums(String bucketName) throws SystemException {
+    String checksumsKey = properties.getDownload().getChecksumsKey();
+    if (!StringUtils.hasText(checksumsKey)) {
+      return Collections.emptyMap();
+    }
+    Map<String, String> checksums = new HashMap<>();
+    try (S3Object object = record("getObject",
+        () -> s3Client.getObject(objectRequest(bucketName, checksumsKey)));
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+            object.getObjectContent(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] fields = line.trim().split("\\s+", 2);
+        if (fields.length == 2 && !fields[0].startsWith("#")) {
+          //sha256sum marks files hashed in binary mode with a '*'.
+          String key = fields[1].startsWith("*") ? fields[1].substring(1) : fields[1];
+          checksums.put(key, fields[0].toLowerCase(Locale.ROOT));
+        }
+      }
+    } catch (AmazonS3Exception e) {
+      if (e.getStatusCode() == 404) {
+        log.warn("Checksums file doesn't exist, verifying objects against their ETag. "
+            + "(bucketName={}, key={})", bucketName, checksumsKey);
+        return Collections.emptyMap();
+      }
+      throw new SystemException("Could not download checksums file.", e);
+    } catch (IOException e) {
+      throw new SystemException("Could not read checksums file.", e);
+    }
+    return checksums;
+  }
+
+  private void verifyDigest(String key, String algorithm, String expected, MessageDigest digest)
+      throws IOException {
+    String actual = BinaryUtils.toHex(digest.digest());
+    if (!actual.equalsIgnoreCase(expected)) {
+      throw corrupt(key, algorithm, expected, actual);
+    }
+  }
+
+  private IOException corrupt(String key, String check, Object expected, Object actual) {
+    meterRegistry.counter(ConfigConstants.METRIC_DOWNLOAD_CORRUPT).increment();
+    log.warn("Downloaded object doesn't match its checksum. (key={}, check={}, expected={}, "
+        + "actual={})", key, check, expected, actual);
+    return new IOException("Object " + key + " doesn't match its " + check);
+  }
+
+  private static MessageDigest digest(String algorithm) {
+    try {
+      return MessageDigest.getInstance(algorithm);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(algorithm + " is not available.", e);
+    }
+  }
+
+  /**
+   * Downloads a packed snapshot - a zip archive of the whole configuration - and extracts it
+   * below the destination directory while it streams in, in a single GET.
+   * If the checksums file lists the archive key, the archive must match its SHA-256; entries are
+   * verified against their zip CRC either way.
+   *
+   * @param bucketName - bucketName.
+   * @param key - key of the archive.
+   * @param destDir - empty destination directory.
+   * @return false if there is no such archive or it contains no files.
+   * @throws SystemException - ${@link SystemException}, also if the archive doesn't match its
+   *     checksum.
+   */
+  public boolean downloadPack(String bucketName, String key, Path destDir)
+      throws SystemException {
+    long startTimeMillis = System.currentTimeMillis();
+    String sha256 = getChecksums(bucketName).get(key);
+    int files;
+    long bytes;
+    try (S3Object object = record("getObject",
+        () -> s3Client.getObject(objectRequest(bucketName, key)))) {
+      MessageDigest digest = digest(SHA_256);
+      InputStream content = new DigestInputStream(object.getObjectContent(), digest);
+      files = SnapshotArchive.extract(content, destDir);
+      //The central directory is left unread, drain it so the connection can be reused.
+      IOUtils.drainInputStream(content);
+      if (sha256 != null) {
+        verifyDigest(key, SHA_256, sha256, digest);
+      }
+      bytes = object.getObjectMetadata().getContentLength();
+    } catch (AmazonS3Exception e) {
+      if (e.getStatusCode() == 404) {
+        return false;
+      }
+      throw new SystemException("Could not download snapshot pack.", e);
+    } catch (IOException e) {
+      throw new SystemException("Could not extract snapshot pack.", e);
+    }
+    recordDownload(1, bytes);
+    log.info("Downloaded snapshot pack, (bucketName={}, key={}, files={}, totalTime={} ms)",
+        bucketName, key, files, (System.currentTimeMillis() - startTimeMillis));
+    return files > 0;
   }
 
   /**
    * Returns x-amz-meta-version of Bucket - by extracting Metadata from Default file in bucket.
    * https://docs.aws.amazon.com/AmazonS3/latest/user-guide/add-object-metadata.html
+   * Checks within versionCacheTtl share the last result, later ones send the metafile ETag and
+   * Last-Modified so an unchanged metafile is answered with 304 Not Modified.
    *
    * @param bucketName - bucketName
    * @return - {@link Optional String}
    */
   public Optional<String> getBucketVersion(String bucketName) {
-    String version = null;
+    long now = System.currentTimeMillis();
+    MetafileState last = metafiles.get(bucketName);
+    long ttl = properties.getVersionCacheTtl();
+    if (last != null && ttl > 0 && now - last.checkTime < ttl) {
+      countVersionCheck("cached");
+      return Optional.ofNullable(last.version);
+    }
     try {
-      Map<String, String> bucketMetadata = getBucketMetadata(bucketName);
-      version = bucketMetadata.get(METADATA_VERSION);
+      ObjectMetadata metadata = getMetafileMetadata(bucketName, last);
+      MetafileState checked = metadata == null ? last.checkedAt(now)
+          : new MetafileState(metadata.getETag(), metadata.getLastModified(),
+              metadata.getUserMetadata().get(METADATA_VERSION), now);
+      metafiles.put(bucketName, checked);
+      countVersionCheck(metadata == null ? "not-modified" : "fetched");
+      return Optional.ofNullable(checked.version);
     } catch (Exception e) {
       log.error("Couldn't get bucket version.(bucketName={})", bucketName);
+      countVersionCheck("error");
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Makes the next version check of a bucket go to S3, e.g. after a change notification.
+   *
+   * @param bucketName - bucketName.
+   */
+  public void expireBucketVersion(String bucketName) {
+    metafiles.computeIfPresent(bucketName, (name, state) -> state.checkedAt(0));
+  }
+
+  /**
+   * Heads the metafile, conditional on the last response.
+   *
+   * @return metadata, null if the metafile didn't change since the last response.
+   */
+  private ObjectMetadata getMetafileMetadata(String bucketName, MetafileState last) {
+    GetObjectMetadataRequest request = new GetObjectMetadataRequest(bucketName, metaFileName);
+    if (last != null && last.etag != null) {
+      request.putCustomRequestHeader(Headers.GET_OBJECT_IF_NONE_MATCH, "\"" + last.etag + "\"");
+    }
+    if (last != null && last.lastModified != null) {
+      request.putCustomRequestHeader(Headers.GET_OBJECT_IF_MODIFIED_SINCE,
+          DateUtils.formatRFC822Date(last.lastModified));
     }
-    return Optional.ofNullable(version);
+    return record("getObjectMetadata", () -> {
+      try {
+        return s3Client.getObjectMetadata(request);
+      } catch (AmazonS3Exception e) {
+        if (e.getStatusCode() == HttpStatus.NOT_MODIFIED.value() && last != null) {
+          return null;
+        }
+        throw e;
+      }
+    });
+  }
+
+  private void countVersionCheck(String outcome) {
+    meterRegistry.counter(ConfigConstants.METRIC_VERSION_CHECKS, "outcome", outcome).increment();
   }
 
   /**
@@ -98,8 +614,73 @@ public class S3Repository {
     log.info("Getting metadata for bucket from S3. (bucketName={})", bucketName);
     final GetObjectMetadataRequest getObjectMetadataRequest =
         new GetObjectMetadataRequest(bucketName, metaFileName);
-    ObjectMetadata objectMetadata = s3Client.getObjectMetadata(getObjectMetadataRequest);
+    ObjectMetadata objectMetadata = record("getObjectMetadata",
+        () -> s3Client.getObjectMetadata(getObjectMetadataRequest));
     return objectMetadata.getUserMetadata();
   }
 
+  /**
+   * Times an S3 call, tagged with the operation and its outcome.
+   *
+   * @param operation - S3 operation name.
+   * @param call - the call.
+   * @return result of the call.
+   * @throws E - exception thrown by the call.
+   */
+  private <T, E extends Exception> T record(String operation, S3Call<T, E> call) throws E {
+    Timer.Sample sample = Timer.start(meterRegistry);
+    String exception = "none";
+    try {
+      return call.call();
+    } catch (Exception e) {
+      exception = e.getClass().getSimpleName();
+      throw e;
+    } finally {
+      sample.stop(meterRegistry.timer(ConfigConstants.METRIC_S3_REQUESTS, "operation", operation,
+          "outcome", "none".equals(exception) ? "success" : "error", "exception", exception));
+    }
+  }
+
+  private void recordDownload(long objects, long bytes) {
+    meterRegistry.counter(ConfigConstants.METRIC_DOWNLOAD_OBJECTS).increment(objects);
+    meterRegistry.counter(ConfigConstants.METRIC_DOWNLOAD_BYTES).increment(bytes);
+  }
+
+  /**
+   * S3 call which may throw a checked exception.
+   */
+  @FunctionalInterface
+  private interface S3Call<T, E extends Exception> {
+
+    T call() throws E;
+  }
+
+
+  /**
+   * Metafile response a version check is conditional on.
+   */
+  private static final class MetafileState {
+
+    private final String etag;
+
+    private final Date lastModified;
+
+    private final String version;
+
+    /**
+     * Epoch millis of the check.
+     */
+    private final long checkTime;
+
+    private MetafileState(String etag, Date lastModified, String version, long checkTime) {
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.version = version;
+      this.checkTime = checkTime;
+    }
+
+    private MetafileState checkedAt(long time) {
+      return new MetafileState(etag, lastModified, version, time);
+    }
+  }
 }
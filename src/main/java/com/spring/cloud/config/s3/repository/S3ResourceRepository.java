@@ -0,0 +1,36 @@
+package com.spring.cloud.config.s3.repository;
+
+import org.springframework.cloud.config.server.resource.NoSuchResourceException;
+import org.springframework.cloud.config.server.resource.ResourceRepository;
+import org.springframework.core.io.Resource;
+import org.springframework.util.StringUtils;
+
+/**
+ * Resource repository of the resource endpoints ({name}/{profile}/{label}/{path}), resolving
+ * paths against the file index of the snapshot serving the request instead of probing the
+ * search locations on disk, see {@link S3EnvironmentRepository#findResource}.
+ * Files are read while the snapshot is leased, never through locations resolved without one.
+ *
+ * @author Nagesh Salunke
+ */
+public class S3ResourceRepository implements ResourceRepository {
+
+  private final MultiBucketEnvironmentRepository repository;
+
+  /**
+   * Constructor.
+   *
+   * @param repository - repository serving the configuration.
+   */
+  public S3ResourceRepository(MultiBucketEnvironmentRepository repository) {
+    this.repository = repository;
+  }
+
+  @Override
+  public Resource findOne(String application, String profile, String label, String path) {
+    if (!StringUtils.hasText(path)) {
+      throw new NoSuchResourceException("Not found: " + path);
+    }
+    return repository.findResource(application, profile, label, path);
+  }
+}
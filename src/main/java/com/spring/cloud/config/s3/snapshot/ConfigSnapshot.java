@@ -0,0 +1,290 @@
+package com.spring.cloud.config.s3.snapshot;
+
+import com.spring.cloud.config.s3.index.PropertySourceIndex;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.util.Assert;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Immutable view of the configuration currently served by the repository.
+ * Pairs the configuration version with the local directory holding that version, so that
+ * request threads can read both atomically without talking to S3.
+ * Readers lease the snapshot while they read its files; once a snapshot is retired its
+ * directory is reclaimed when the last lease is released.
+ *
+ * @author Nagesh Salunke
+ */
+@Log4j2
+public final class ConfigSnapshot {
+
+  /**
+   * Maximum number of content versions remembered per snapshot.
+   */
+  private static final int MAX_CONTENT_VERSIONS = 10000;
+
+  /**
+   * Configuration version (x-amz-meta-version of the metafile).
+   */
+  @Getter
+  private final String version;
+
+  /**
+   * Local directory holding the configuration files of this version.
+   */
+  @Getter
+  private final File directory;
+
+  /**
+   * Manifest of the objects in the snapshot.
+   */
+  @Getter
+  private final SnapshotManifest manifest;
+
+  /**
+   * Parsed property sources of the snapshot, set before it is published; null if the snapshot
+   * is resolved the native way.
+   */
+  @Getter
+  @Setter
+  private volatile PropertySourceIndex index;
+
+  /**
+   * Content versions by application, profile and label.
+   */
+  private final Map<List<String>, String> contentVersions = new ConcurrentHashMap<>();
+
+  /**
+   * Number of readers currently holding the snapshot.
+   */
+  private final AtomicInteger leases = new AtomicInteger();
+
+  /**
+   * Set once a newer snapshot has been published.
+   */
+  private volatile boolean retired;
+
+  /**
+   * Set once the directory has been deleted.
+   */
+  private final AtomicBoolean reclaimed = new AtomicBoolean();
+
+  /**
+   * Constructor.
+   *
+   * @param directory - local directory of the configuration.
+   * @param manifest - manifest with the version of the configuration.
+   */
+  public ConfigSnapshot(File directory, SnapshotManifest manifest) {
+    this.version = manifest.getVersion();
+    this.directory = directory;
+    this.manifest = manifest;
+  }
+
+  /**
+   * Returns true if the directory of this snapshot was deleted.
+   *
+   * @return reclaimed flag.
+   */
+  public boolean isReclaimed() {
+    return reclaimed.get();
+  }
+
+  /**
+   * Returns the content version of an environment - a hash over path and SHA-256 of the files
+   * its search locations provide for the application and profiles, so it only changes between
+   * snapshots if one of those files does.
+   * Falls back to the snapshot version without file hashes in the manifest, or for locations
+   * outside the snapshot directory.
+   *
+   * @param application - application name(s), comma separated.
+   * @param profile - profile(s), comma separated.
+   * @param label - label.
+   * @param locations - search locations (file URIs of directories) of the request, only
+   *     resolved the first time the environment is asked for.
+   * @return content version.
+   */
+  public String getContentVersion(String application, String profile, String label,
+      Supplier<String[]> locations) {
+    if (manifest.getFiles().isEmpty()) {
+      return version;
+    }
+    List<String> key = Arrays.asList(application, profile, label);
+    String contentVersion = contentVersions.get(key);
+    if (contentVersion == null) {
+      contentVersion = contentVersion(locations.get(), application, profile);
+      if (contentVersions.size() < MAX_CONTENT_VERSIONS) {
+        contentVersions.put(key, contentVersion);
+      }
+    }
+    return contentVersion;
+  }
+
+  /**
+   * Hashes the files named application or after one of the applications, optionally suffixed
+   * with one of the profiles, directly in one of the locations - the files
+   * NativeEnvironmentRepository may read.
+   */
+  private String contentVersion(String[] locations, String application, String profile) {
+    Set<String> names = new HashSet<>();
+    for (String name : StringUtils.commaDelimitedListToStringArray(
+        "application," + application)) {
+      names.add(name.trim());
+      for (String prof : StringUtils.commaDelimitedListToStringArray(profile)) {
+        names.add(name.trim() + "-" + prof.trim());
+      }
+    }
+    MessageDigest digest = SnapshotStore.sha256();
+    for (String location : locations) {
+      String prefix = prefix(location);
+      if (prefix == null) {
+        return version;
+      }
+      digest.update(prefix.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      for (Map.Entry<String, String> file : manifest.getFiles().entrySet()) {
+        String name = file.getKey();
+        if (name.startsWith(prefix) && name.indexOf('/', prefix.length()) < 0 && names.contains(
+            StringUtils.stripFilenameExtension(name.substring(prefix.length())))) {
+          digest.update(name.getBytes(StandardCharsets.UTF_8));
+          digest.update((byte) 0);
+          digest.update(file.getValue().getBytes(StandardCharsets.UTF_8));
+          digest.update((byte) 0);
+        }
+      }
+    }
+    return SnapshotStore.hex(digest).substring(0, 32);
+  }
+
+  /**
+   * Resolves a file path against the manifest files the way GenericResourceRepository resolves
+   * it against the search locations - the last location first, profile specific variants of the
+   * path before the path itself - without touching the file system. Paths are only looked up,
+   * never joined with the directory, so they can't escape the snapshot.
+   * Snapshots without file hashes in the manifest are searched on disk instead, skipping paths
+   * that escape the snapshot directory.
+   *
+   * @param locations - search locations (file URIs of directories) of the request.
+   * @param profile - profile(s), comma separated.
+   * @param path - path of the file relative to the locations.
+   * @return path of the file relative to the snapshot directory, see
+   *     {@link SnapshotManifest#getFiles()}; null if the locations provide no such file.
+   * @throws IllegalStateException if a location is outside the snapshot directory.
+   */
+  public String findFile(String[] locations, String profile, String path) {
+    String local = StringUtils.trimLeadingCharacter(path, '/');
+    for (int i = locations.length; i-- > 0; ) {
+      String prefix = prefix(locations[i]);
+      Assert.state(prefix != null, "Location outside of snapshot " + version);
+      for (String candidate : profilePaths(profile, local)) {
+        if (contains(prefix + candidate)) {
+          return prefix + candidate;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns true if the snapshot has a file, looked up in the manifest if it has file hashes.
+   */
+  private boolean contains(String file) {
+    if (!manifest.getFiles().isEmpty()) {
+      return manifest.getFiles().containsKey(file);
+    }
+    Path root = directory.getAbsoluteFile().toPath();
+    Path resolved = root.resolve(file).normalize();
+    return resolved.startsWith(root) && Files.isRegularFile(resolved);
+  }
+
+  /**
+   * Returns the variants of a path looked up for the profiles, as GenericResourceRepository does.
+   */
+  private static Set<String> profilePaths(String profile, String path) {
+    Set<String> paths = new LinkedHashSet<>();
+    String ext = StringUtils.getFilenameExtension(path);
+    String file = ext == null ? path : StringUtils.stripFilenameExtension(path);
+    for (String prof : StringUtils.commaDelimitedListToSet(profile)) {
+      paths.add(!StringUtils.hasText(prof) || "default".equals(prof) ? path
+          : file + "-" + prof + (ext == null ? "" : "." + ext));
+    }
+    paths.add(path);
+    return paths;
+  }
+
+  /**
+   * Returns the prefix of the manifest files within a location.
+   *
+   * @param location - file URI of a directory.
+   * @return prefix relative to the snapshot directory, "" or ending with '/'; null if the
+   *     location isn't a directory of this snapshot.
+   */
+  private String prefix(String location) {
+    Path path;
+    try {
+      path = Paths.get(URI.create(location));
+    } catch (IllegalArgumentException | FileSystemNotFoundException e) {
+      return null;
+    }
+    Path root = directory.getAbsoluteFile().toPath();
+    if (!path.startsWith(root)) {
+      return null;
+    }
+    String relative = root.relativize(path).toString().replace(File.separatorChar, '/');
+    return relative.isEmpty() ? "" : relative + "/";
+  }
+
+  void lease() {
+    leases.incrementAndGet();
+  }
+
+  void release() {
+    if (leases.decrementAndGet() == 0 && retired) {
+      reclaim();
+    }
+  }
+
+  void retire() {
+    retired = true;
+    if (leases.get() == 0) {
+      reclaim();
+    }
+  }
+
+  /**
+   * Deletes the snapshot directory, only once.
+   */
+  private void reclaim() {
+    if (!reclaimed.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      log.debug("Reclaiming snapshot directory. (version={}, dir={})", version,
+          directory.getAbsolutePath());
+      FileSystemUtils.deleteRecursively(directory.toPath());
+    } catch (IOException e) {
+      log.warn("Could not reclaim snapshot directory. (dir={})", directory.getAbsolutePath(), e);
+    }
+  }
+}
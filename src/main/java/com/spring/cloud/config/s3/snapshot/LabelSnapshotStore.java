@@ -0,0 +1,162 @@
+package com.spring.cloud.config.s3.snapshot;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Immutable snapshots of labels, each fetched once and shared by the requests of its label.
+ * Snapshots are kept least recently used up to a cap; an evicted snapshot is reclaimed once the
+ * requests leasing it are done, like a replaced {@link SnapshotStore} snapshot.
+ * Labels found missing are remembered for a while, so requests of unknown labels don't list
+ * S3 each time.
+ *
+ * @author Nagesh Salunke
+ */
+@Log4j2
+public class LabelSnapshotStore {
+
+  /**
+   * Maximum number of labels remembered as missing.
+   */
+  private static final int MAX_MISSING = 1000;
+
+  private final int maxSnapshots;
+
+  /**
+   * Milliseconds a missing label is remembered.
+   */
+  private final long missingTtl;
+
+  /**
+   * Expiry time of missing labels in insertion order, guarded by itself.
+   */
+  private final Map<String, Long> missing = new LinkedHashMap<>();
+
+  /**
+   * Snapshots by label in access order, guarded by itself.
+   */
+  private final Map<String, ConfigSnapshot> snapshots = new LinkedHashMap<>(16, 0.75f, true);
+
+  /**
+   * Locks of labels being fetched, requests of other labels don't wait for a fetch.
+   */
+  private final Map<String, Object> fetchLocks = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param maxSnapshots - label snapshots kept.
+   * @param missingTtl - ms a missing label is remembered, 0 fetches it on every request.
+   */
+  public LabelSnapshotStore(int maxSnapshots, long missingTtl) {
+    this.maxSnapshots = maxSnapshots;
+    this.missingTtl = missingTtl;
+  }
+
+  /**
+   * Leases the snapshot of a label, fetching it first unless it is kept already.
+   * Concurrent requests of a label share one fetch, a missing label isn't fetched again
+   * within missingTtl.
+   *
+   * @param label - label.
+   * @param fetcher - fetches the snapshot of a label, null if the label doesn't exist.
+   * @return leased {@link ConfigSnapshot}, to {@link #release}; null if the label doesn't exist.
+   */
+  public ConfigSnapshot acquire(String label, Function<String, ConfigSnapshot> fetcher) {
+    ConfigSnapshot snapshot = lease(label);
+    if (snapshot != null || isMissing(label)) {
+      return snapshot;
+    }
+    Object fetchLock = fetchLocks.computeIfAbsent(label, key -> new Object());
+    try {
+      synchronized (fetchLock) {
+        snapshot = lease(label);
+        if (snapshot != null || isMissing(label)) {
+          return snapshot;
+        }
+        snapshot = fetcher.apply(label);
+        if (snapshot == null) {
+          remember(label);
+          return null;
+        }
+        snapshot.lease();
+        List<ConfigSnapshot> evicted = new ArrayList<>();
+        synchronized (snapshots) {
+          snapshots.put(label, snapshot);
+          while (snapshots.size() > maxSnapshots) {
+            String eldest = snapshots.keySet().iterator().next();
+            evicted.add(snapshots.remove(eldest));
+          }
+        }
+        for (ConfigSnapshot retired : evicted) {
+          log.debug("Evicting label snapshot. (version={})", retired.getVersion());
+          retired.retire();
+        }
+        return snapshot;
+      }
+    } finally {
+      //Removed after the snapshot is kept, requests creating a new lock find it.
+      fetchLocks.remove(label, fetchLock);
+    }
+  }
+
+  /**
+   * Releases a snapshot leased with {@link #acquire}.
+   *
+   * @param snapshot - leased {@link ConfigSnapshot}
+   */
+  public void release(ConfigSnapshot snapshot) {
+    snapshot.release();
+  }
+
+  /**
+   * Returns the number of kept snapshots.
+   *
+   * @return size
+   */
+  public int size() {
+    synchronized (snapshots) {
+      return snapshots.size();
+    }
+  }
+
+  private boolean isMissing(String label) {
+    synchronized (missing) {
+      Long expiry = missing.get(label);
+      if (expiry != null && expiry <= System.currentTimeMillis()) {
+        missing.remove(label);
+        return false;
+      }
+      return expiry != null;
+    }
+  }
+
+  private void remember(String label) {
+    if (missingTtl <= 0) {
+      return;
+    }
+    synchronized (missing) {
+      missing.remove(label);
+      missing.put(label, System.currentTimeMillis() + missingTtl);
+      if (missing.size() > MAX_MISSING) {
+        missing.remove(missing.keySet().iterator().next());
+      }
+    }
+  }
+
+  private ConfigSnapshot lease(String label) {
+    synchronized (snapshots) {
+      ConfigSnapshot snapshot = snapshots.get(label);
+      if (snapshot != null) {
+        //Leased while kept, eviction can't reclaim it in between.
+        snapshot.lease();
+      }
+      return snapshot;
+    }
+  }
+}
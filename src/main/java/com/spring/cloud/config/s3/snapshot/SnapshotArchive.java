@@ -0,0 +1,80 @@
+package com.spring.cloud.config.s3.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Zip archive of a snapshot directory, the format snapshots are shipped in between replicas.
+ * Configuration files are text, deflating them keeps peer transfers small.
+ *
+ * @author Nagesh Salunke
+ */
+public final class SnapshotArchive {
+
+  private SnapshotArchive() {
+  }
+
+  /**
+   * Writes every file below the directory to the stream, which is left open.
+   *
+   * @param directory - snapshot directory.
+   * @param out - stream to write the archive to.
+   * @throws IOException - {@link IOException}
+   */
+  public static void write(Path directory, OutputStream out) throws IOException {
+    List<Path> files;
+    try (Stream<Path> paths = Files.walk(directory)) {
+      files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+    }
+    ZipOutputStream zip = new ZipOutputStream(out);
+    for (Path file : files) {
+      zip.putNextEntry(new ZipEntry(
+          directory.relativize(file).toString().replace(File.separatorChar, '/')));
+      Files.copy(file, zip);
+      zip.closeEntry();
+    }
+    zip.finish();
+    zip.flush();
+  }
+
+  /**
+   * Extracts an archive below the destination directory.
+   *
+   * @param in - archive stream.
+   * @param destDir - destination directory.
+   * @return number of files extracted.
+   * @throws IOException - {@link IOException}, also for entries outside of destDir.
+   */
+  public static int extract(InputStream in, Path destDir) throws IOException {
+    Path root = destDir.normalize();
+    int files = 0;
+    ZipInputStream zip = new ZipInputStream(in);
+    for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+      Path target = root.resolve(entry.getName()).normalize();
+      if (!target.startsWith(root) || target.equals(root)) {
+        throw new IOException("Archive entry outside of the destination: " + entry.getName());
+      }
+      Path parent = target.getParent();
+      if (entry.isDirectory()) {
+        Files.createDirectories(target);
+      } else {
+        if (parent != null) {
+          Files.createDirectories(parent);
+        }
+        Files.copy(zip, target);
+        files++;
+      }
+    }
+    return files;
+  }
+}
@@ -0,0 +1,93 @@
+package com.spring.cloud.config.s3.snapshot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Manifest of a snapshot - version, snapshot directory, ETag/size of every S3 object in it,
+ * the SHA-256 of every snapshot file and a checksum over all of them.
+ * Persisted next to the snapshot directories so that the next sync only downloads objects
+ * which changed since, and a restart can serve an intact snapshot without downloading it.
+ *
+ * @author Nagesh Salunke
+ */
+@Getter
+@Setter
+public class SnapshotManifest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  /**
+   * Configuration version.
+   */
+  private String version;
+
+  /**
+   * Name of the snapshot directory below the base directory.
+   */
+  private String snapshot;
+
+  /**
+   * SHA-256 over relative path and content of every file in the snapshot directory.
+   */
+  private String checksum;
+
+  /**
+   * Hex encoded SHA-256 of the content of every file by path relative to the snapshot
+   * directory, empty for manifests written before they were recorded.
+   */
+  private Map<String, String> files = new TreeMap<>();
+
+  /**
+   * S3 objects by key.
+   */
+  private Map<String, ObjectEntry> objects = new TreeMap<>();
+
+  /**
+   * Reads a manifest.
+   *
+   * @param file - manifest file.
+   * @return {@link SnapshotManifest}
+   * @throws IOException - {@link IOException}
+   */
+  public static SnapshotManifest read(File file) throws IOException {
+    return MAPPER.readValue(file, SnapshotManifest.class);
+  }
+
+  /**
+   * Writes the manifest, replacing the file atomically.
+   *
+   * @param file - manifest file.
+   * @throws IOException - {@link IOException}
+   */
+  public void write(File file) throws IOException {
+    Path target = file.toPath();
+    Path tmp = target.resolveSibling(file.getName() + ".tmp");
+    MAPPER.writeValue(tmp.toFile(), this);
+    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * S3 object details.
+   */
+  @Getter
+  @Setter
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class ObjectEntry {
+
+    private String etag;
+
+    private long size;
+  }
+}
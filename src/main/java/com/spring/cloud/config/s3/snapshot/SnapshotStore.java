@@ -0,0 +1,311 @@
+package com.spring.cloud.config.s3.snapshot;
+
+import com.spring.cloud.config.s3.constant.ConfigConstants;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Keeps versioned snapshot directories below the base directory.
+ * New configuration is downloaded into a staging directory, renamed into its own snapshot
+ * directory and then published by swapping the current reference, so readers never see a
+ * half written tree. The previously published snapshot is kept for readers that resolved
+ * locations without a lease (SearchPathLocator clients); older ones are reclaimed once released.
+ *
+ * @author Nagesh Salunke
+ */
+@Log4j2
+public class SnapshotStore {
+
+  /**
+   * Currently published snapshot.
+   */
+  private final AtomicReference<ConfigSnapshot> current = new AtomicReference<>();
+
+  /**
+   * Snapshot published before the current one, guarded by this.
+   */
+  private ConfigSnapshot previous;
+
+  /**
+   * Suffix making snapshot directory names unique, also when a version is fetched again.
+   */
+  private final AtomicLong generation = new AtomicLong();
+
+  /**
+   * Returns the published snapshot without leasing it.
+   *
+   * @return {@link ConfigSnapshot}, null when nothing is published.
+   */
+  public ConfigSnapshot current() {
+    return current.get();
+  }
+
+  /**
+   * Leases the published snapshot, its directory stays on disk until {@link #release}.
+   *
+   * @return leased {@link ConfigSnapshot}, null when nothing is published.
+   */
+  public ConfigSnapshot acquire() {
+    while (true) {
+      ConfigSnapshot snapshot = current.get();
+      if (snapshot == null) {
+        return null;
+      }
+      snapshot.lease();
+      if (snapshot == current.get()) {
+        return snapshot;
+      }
+      //Swapped in between - lease may be on a reclaimed snapshot, retry with the new one.
+      snapshot.release();
+    }
+  }
+
+  /**
+   * Releases a snapshot leased with {@link #acquire()}.
+   *
+   * @param snapshot - {@link ConfigSnapshot}
+   */
+  public void release(ConfigSnapshot snapshot) {
+    snapshot.release();
+  }
+
+  /**
+   * Creates a staging directory on the same file system as the snapshots.
+   *
+   * @param basedir - base directory.
+   * @return staging directory.
+   * @throws IOException - {@link IOException}
+   */
+  public Path createStagingDirectory(File basedir) throws IOException {
+    Files.createDirectories(basedir.toPath());
+    return Files.createTempDirectory(basedir.toPath(), ConfigConstants.TEMP_CONFIG_REPO_PREFIX);
+  }
+
+  /**
+   * Moves a completely fetched staging directory into its own snapshot directory.
+   *
+   * @param staging - staging directory.
+   * @param manifest - manifest of the fetched configuration.
+   * @return {@link ConfigSnapshot} ready to publish.
+   * @throws IOException - {@link IOException}
+   */
+  public ConfigSnapshot promote(Path staging, SnapshotManifest manifest) throws IOException {
+    String name = manifest.getVersion().replaceAll("[^A-Za-z0-9._-]", "_");
+    Path target;
+    do {
+      target = staging.resolveSibling(name + "-" + generation.incrementAndGet());
+    } while (Files.exists(target));
+    Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE);
+    manifest.setSnapshot(target.toFile().getName());
+    Map<String, String> files = new TreeMap<>();
+    manifest.setChecksum(checksum(target, files));
+    manifest.setFiles(files);
+    return new ConfigSnapshot(target.toFile(), manifest);
+  }
+
+  /**
+   * Publishes a snapshot, retiring the one published before the current.
+   *
+   * @param snapshot - {@link ConfigSnapshot} to serve.
+   */
+  public synchronized void publish(ConfigSnapshot snapshot) {
+    ConfigSnapshot replaced = current.getAndSet(snapshot);
+    if (previous != null) {
+      previous.retire();
+    }
+    previous = replaced;
+  }
+
+  /**
+   * Persists the manifest of a published snapshot in the base directory.
+   *
+   * @param snapshot - published {@link ConfigSnapshot}
+   */
+  public void saveManifest(ConfigSnapshot snapshot) {
+    File file = new File(snapshot.getDirectory().getParentFile(),
+        ConfigConstants.SNAPSHOT_MANIFEST_FILE);
+    try {
+      snapshot.getManifest().write(file);
+    } catch (IOException e) {
+      log.warn("Could not write snapshot manifest. (file={})", file.getAbsolutePath(), e);
+    }
+  }
+
+  /**
+   * Loads the persisted manifest of the last published snapshot.
+   *
+   * @param basedir - base directory.
+   * @return {@link SnapshotManifest}, null if there is none or its snapshot directory is gone.
+   */
+  public SnapshotManifest loadManifest(File basedir) {
+    File file = new File(basedir, ConfigConstants.SNAPSHOT_MANIFEST_FILE);
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      SnapshotManifest manifest = SnapshotManifest.read(file);
+      if (manifest.getSnapshot() != null
+          && new File(basedir, manifest.getSnapshot()).isDirectory()) {
+        return manifest;
+      }
+    } catch (IOException e) {
+      log.warn("Ignoring unreadable snapshot manifest. (file={})", file.getAbsolutePath(), e);
+    }
+    return null;
+  }
+
+  /**
+   * Returns the snapshot described by a persisted manifest if its files are intact.
+   *
+   * @param basedir - base directory.
+   * @param manifest - manifest loaded with {@link #loadManifest(File)}.
+   * @return {@link ConfigSnapshot} ready to publish, null if the files don't match the checksum.
+   */
+  public ConfigSnapshot restore(File basedir, SnapshotManifest manifest) {
+    return restore(basedir, manifest, true);
+  }
+
+  /**
+   * Returns the snapshot described by a persisted manifest.
+   *
+   * @param basedir - base directory.
+   * @param manifest - manifest loaded with {@link #loadManifest(File)}.
+   * @param verify - false trusts the files verified when they were downloaded without reading
+   *     them again.
+   * @return {@link ConfigSnapshot} ready to publish, null if the files don't match the checksum.
+   */
+  public ConfigSnapshot restore(File basedir, SnapshotManifest manifest, boolean verify) {
+    File directory = new File(basedir, manifest.getSnapshot());
+    if (!verify && directory.isDirectory()) {
+      return new ConfigSnapshot(directory, manifest);
+    }
+    String checksum;
+    Map<String, String> files = new TreeMap<>();
+    try {
+      checksum = checksum(directory.toPath(), files);
+    } catch (IOException e) {
+      log.warn("Could not verify snapshot. (dir={})", directory.getAbsolutePath(), e);
+      return null;
+    }
+    if (!checksum.equals(manifest.getChecksum())) {
+      log.warn("Snapshot doesn't match its manifest checksum. (dir={}, expected={}, actual={})",
+          directory.getAbsolutePath(), manifest.getChecksum(), checksum);
+      return null;
+    }
+    manifest.setFiles(files);
+    return new ConfigSnapshot(directory, manifest);
+  }
+
+  /**
+   * Computes SHA-256 over relative path and content of every file below the directory.
+   *
+   * @param directory - snapshot directory.
+   * @return hex encoded checksum.
+   * @throws IOException - {@link IOException}
+   */
+  public static String checksum(Path directory) throws IOException {
+    return checksum(directory, new TreeMap<>());
+  }
+
+  /**
+   * Computes SHA-256 over relative path and content of every file below the directory, and the
+   * SHA-256 of every file's content in the same pass.
+   *
+   * @param directory - snapshot directory.
+   * @param files - receives the hex encoded SHA-256 of every file by relative path.
+   * @return hex encoded checksum.
+   * @throws IOException - {@link IOException}
+   */
+  public static String checksum(Path directory, Map<String, String> files) throws IOException {
+    MessageDigest digest = sha256();
+    List<Path> paths;
+    try (Stream<Path> walk = Files.walk(directory)) {
+      paths = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+    }
+    byte[] buffer = new byte[8192];
+    for (Path file : paths) {
+      String relativePath = directory.relativize(file).toString().replace(File.separatorChar, '/');
+      digest.update(relativePath.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      MessageDigest fileDigest = sha256();
+      try (InputStream in = Files.newInputStream(file)) {
+        for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+          digest.update(buffer, 0, read);
+          fileDigest.update(buffer, 0, read);
+        }
+      }
+      files.put(relativePath, hex(fileDigest));
+    }
+    return hex(digest);
+  }
+
+  /**
+   * Returns a new SHA-256 digest.
+   *
+   * @return {@link MessageDigest}
+   */
+  static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not supported", e);
+    }
+  }
+
+  /**
+   * Returns the hex encoded value of a digest.
+   *
+   * @param digest - {@link MessageDigest}
+   * @return hex encoded digest.
+   */
+  static String hex(MessageDigest digest) {
+    return String.format("%064x", new BigInteger(1, digest.digest()));
+  }
+
+  /**
+   * Deletes everything next to the given snapshot, e.g. leftovers of a previous run.
+   *
+   * @param keep - {@link ConfigSnapshot} to keep.
+   */
+  public void purgeExcept(ConfigSnapshot keep) {
+    File[] siblings = keep.getDirectory().getParentFile().listFiles();
+    if (siblings == null) {
+      return;
+    }
+    for (File sibling : siblings) {
+      if (!sibling.equals(keep.getDirectory())) {
+        discard(sibling.toPath());
+      }
+    }
+  }
+
+  /**
+   * Deletes a staging directory that won't be promoted.
+   *
+   * @param staging - staging directory.
+   */
+  public void discard(Path staging) {
+    try {
+      FileSystemUtils.deleteRecursively(staging);
+    } catch (IOException e) {
+      log.warn("Could not delete staging directory. (dir={})", staging.toAbsolutePath(), e);
+    }
+  }
+}
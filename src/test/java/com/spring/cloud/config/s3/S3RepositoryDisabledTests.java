@@ -0,0 +1,41 @@
+package com.spring.cloud.config.s3;
+
+import com.spring.cloud.config.s3.cluster.SnapshotController;
+import com.spring.cloud.config.s3.notification.WatchController;
+import com.spring.cloud.config.s3.notification.WebhookChangeNotificationController;
+import com.spring.cloud.config.s3.repository.S3EnvironmentRepository;
+import javax.annotation.Resource;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * Tests that the application starts without the S3 repository, with the endpoints depending on
+ * it enabled.
+ *
+ * @author Nagesh Salunke
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+    "spring.cloud.config.server.s3.enabled=false",
+    "spring.cloud.config.server.s3.notifications.webhook-enabled=true",
+    "spring.cloud.config.server.s3.cluster.serve-snapshots=true"})
+@TestPropertySource(locations = "classpath:bootstrap-test.properties")
+public class S3RepositoryDisabledTests {
+
+  @Resource
+  private ApplicationContext context;
+
+  @Test
+  public void context_s3RepositoryDisabled_startsWithoutS3Endpoints() {
+    Assert.assertTrue(context.getBeansOfType(S3EnvironmentRepository.class).isEmpty());
+    Assert.assertTrue(context.getBeansOfType(WatchController.class).isEmpty());
+    Assert.assertTrue(
+        context.getBeansOfType(WebhookChangeNotificationController.class).isEmpty());
+    Assert.assertTrue(context.getBeansOfType(SnapshotController.class).isEmpty());
+  }
+}
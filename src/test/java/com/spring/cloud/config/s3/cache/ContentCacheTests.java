@@ -0,0 +1,44 @@
+package com.spring.cloud.config.s3.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ContentCache}
+ *
+ * @author Nagesh Salunke
+ */
+public class ContentCacheTests {
+
+  @Test
+  public void put_beyondMaxBytes_leastRecentlyUsedEvicted() {
+    ContentCache cache = new ContentCache(10);
+    cache.put("a", new byte[4]);
+    cache.put("b", new byte[4]);
+    Assert.assertNotNull(cache.get("a"));
+    cache.put("c", new byte[4]);
+    Assert.assertNotNull(cache.get("a"));
+    Assert.assertNull(cache.get("b"));
+    Assert.assertNotNull(cache.get("c"));
+    Assert.assertEquals(8, cache.getBytes());
+    Assert.assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void put_sameContentTwice_countedOnce() {
+    ContentCache cache = new ContentCache(10);
+    cache.put("a", new byte[4]);
+    cache.put("a", new byte[4]);
+    Assert.assertEquals(4, cache.getBytes());
+  }
+
+  @Test
+  public void put_contentLargerThanCacheOrDisabled_notCached() {
+    ContentCache cache = new ContentCache(10);
+    cache.put("a", new byte[11]);
+    Assert.assertNull(cache.get("a"));
+    ContentCache disabled = new ContentCache(0);
+    disabled.put("a", new byte[1]);
+    Assert.assertEquals(0, disabled.size());
+  }
+}
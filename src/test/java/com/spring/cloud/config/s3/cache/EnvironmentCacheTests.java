@@ -0,0 +1,164 @@
+package com.spring.cloud.config.s3.cache;
+
+import com.spring.cloud.config.s3.cache.EnvironmentCache.Key;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.cloud.config.environment.Environment;
+
+/**
+ * Tests for {@link EnvironmentCache}
+ *
+ * @author Nagesh Salunke
+ */
+public class EnvironmentCacheTests {
+
+  @Test
+  public void get_cachedEntryOfCurrentVersion_hit() {
+    EnvironmentCache cache = new EnvironmentCache(10);
+    cache.invalidate("v1");
+    Key key = new Key("bar", "staging", "master", "v1");
+    Environment environment = new Environment("bar", "staging");
+    cache.put(key, environment);
+    Assert.assertSame(environment, cache.get(key));
+    Assert.assertNull(cache.get(new Key("foo", "staging", "master", "v1")));
+    Assert.assertEquals(1, cache.getHits());
+    Assert.assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  public void put_entryOfOtherVersion_ignored() {
+    EnvironmentCache cache = new EnvironmentCache(10);
+    cache.invalidate("v2");
+    Key key = new Key("bar", "staging", "master", "v1");
+    cache.put(key, new Environment("bar", "staging"));
+    Assert.assertNull(cache.get(key));
+    Assert.assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void invalidate_newVersion_dropsEntries() {
+    EnvironmentCache cache = new EnvironmentCache(10);
+    cache.invalidate("v1");
+    cache.put(new Key("bar", "staging", "master", "v1"), new Environment("bar", "staging"));
+    Assert.assertEquals(1, cache.size());
+    cache.invalidate("v2");
+    Assert.assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void hottest_requestedEntries_mostRequestedFirst() {
+    EnvironmentCache cache = new EnvironmentCache(10);
+    cache.invalidate("v1");
+    Key bar = new Key("bar", "staging", "master", "v1");
+    Key foo = new Key("foo", "staging", "master", "v1");
+    cache.put(bar, new Environment("bar", "staging"));
+    cache.put(foo, new Environment("foo", "staging"));
+    cache.put(new Key("baz", "staging", "master", "v1"), new Environment("baz", "staging"));
+    cache.get(foo);
+    cache.get(foo);
+    cache.get(bar);
+    Map<Key, Long> hottest = cache.hottest(2);
+    Assert.assertEquals(Arrays.asList(foo, bar), new ArrayList<>(hottest.keySet()));
+    Assert.assertEquals(3, hottest.get(foo).longValue());
+    Assert.assertEquals(6, cache.requests());
+  }
+
+  @Test
+  public void invalidate_prewarmedEnvironments_cachedForNewVersion() {
+    EnvironmentCache cache = new EnvironmentCache(10);
+    cache.invalidate("v1");
+    cache.put(new Key("bar", "staging", "master", "v1"), new Environment("bar", "staging"));
+    Key prewarmed = new Key("bar", "staging", "master", "v2");
+    Environment environment = new Environment("bar", "staging");
+    cache.invalidate("v2", Collections.singletonMap(prewarmed, environment));
+    Assert.assertEquals(1, cache.size());
+    Assert.assertSame(environment, cache.get(prewarmed));
+    Assert.assertEquals(1, cache.requests());
+  }
+
+  @Test
+  public void invalidate_retainedKeys_movedToNewVersion() {
+    EnvironmentCache cache = new EnvironmentCache(10);
+    cache.invalidate("v1");
+    Key bar = new Key("bar", "staging", "master", "v1");
+    Environment environment = new Environment("bar", "staging");
+    environment.setVersion("v1");
+    cache.put(bar, environment);
+    cache.put(new Key("foo", "staging", "master", "v1"), new Environment("foo", "staging"));
+    Assert.assertEquals(2, cache.keys().size());
+    cache.invalidate("v2", Collections.emptyMap(), Collections.singleton(bar));
+    Assert.assertEquals(1, cache.size());
+    Environment moved = cache.get(new Key("bar", "staging", "master", "v2"));
+    Assert.assertEquals("v2", moved.getVersion());
+    Assert.assertEquals("v1", environment.getVersion());
+  }
+
+  @Test
+  public void put_overMaxSize_evictsLeastRecentlyUsed() {
+    EnvironmentCache cache = new EnvironmentCache(2);
+    cache.invalidate("v1");
+    Key first = new Key("a", "staging", "master", "v1");
+    Key second = new Key("b", "staging", "master", "v1");
+    Key third = new Key("c", "staging", "master", "v1");
+    cache.put(first, new Environment("a", "staging"));
+    cache.put(second, new Environment("b", "staging"));
+    cache.get(first);
+    cache.put(third, new Environment("c", "staging"));
+    Assert.assertEquals(2, cache.size());
+    Assert.assertEquals(1, cache.getEvictions());
+    Assert.assertNotNull(cache.get(first));
+    Assert.assertNull(cache.get(second));
+  }
+
+  @Test
+  public void put_cacheDisabled_nothingCached() {
+    EnvironmentCache cache = new EnvironmentCache(0);
+    cache.invalidate("v1");
+    Key key = new Key("bar", "staging", "master", "v1");
+    cache.put(key, new Environment("bar", "staging"));
+    Assert.assertNull(cache.get(key));
+  }
+
+  @Test
+  public void bindTo_registry_publishesCacheMeters() {
+    EnvironmentCache cache = new EnvironmentCache(1);
+    MeterRegistry registry = new SimpleMeterRegistry();
+    cache.bindTo(registry);
+    cache.invalidate("v1");
+    Key key = new Key("bar", "staging", "master", "v1");
+    Assert.assertEquals(0, registry.get("s3.config.cache.hit.ratio").gauge().value(), 0);
+    cache.get(key);
+    cache.put(key, new Environment("bar", "staging"));
+    cache.get(key);
+    cache.put(new Key("foo", "staging", "master", "v1"), new Environment("foo", "staging"));
+    Assert.assertEquals(1, registry.get("s3.config.cache.hits").functionCounter().count(), 0);
+    Assert.assertEquals(1, registry.get("s3.config.cache.misses").functionCounter().count(), 0);
+    Assert.assertEquals(1,
+        registry.get("s3.config.cache.evictions").functionCounter().count(), 0);
+    Assert.assertEquals(1, registry.get("s3.config.cache.size").gauge().value(), 0);
+    Assert.assertEquals(0.5, registry.get("s3.config.cache.hit.ratio").gauge().value(), 0);
+  }
+
+  @Test
+  public void key_nullOrDifferentField_notEqual() {
+    Key key = new Key("bar", "staging", "master", "v1");
+    Assert.assertEquals(key, new Key("bar", "staging", "master", "v1"));
+    Assert.assertEquals(key.hashCode(), new Key("bar", "staging", "master", "v1").hashCode());
+    Assert.assertEquals(new Key(null, null, null, null), new Key(null, null, null, null));
+    Assert.assertEquals(new Key(null, null, null, null).hashCode(),
+        new Key(null, null, null, null).hashCode());
+    Assert.assertNotEquals(key, "bar");
+    for (Key other : new Key[] {new Key(null, "staging", "master", "v1"),
+        new Key("bar", null, "master", "v1"), new Key("bar", "staging", null, "v1"),
+        new Key("bar", "staging", "master", null)}) {
+      Assert.assertNotEquals(key, other);
+      Assert.assertNotEquals(other, key);
+    }
+  }
+}
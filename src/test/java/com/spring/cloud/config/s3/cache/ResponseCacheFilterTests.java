@@ -0,0 +1,260 @@
+package com.spring.cloud.config.s3.cache;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.spring.cloud.config.s3.repository.MultiBucketEnvironmentRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
+import org.springframework.cloud.config.server.environment.EnvironmentController;
+import org.springframework.cloud.config.server.environment.NoSuchLabelException;
+import org.springframework.cloud.config.server.resource.ResourceController;
+import org.springframework.cloud.config.server.resource.ResourceRepository;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Tests for {@link ResponseCacheFilter}
+ *
+ * @author Nagesh Salunke
+ */
+public class ResponseCacheFilterTests {
+
+  private MultiBucketEnvironmentRepository repository;
+
+  private MeterRegistry meterRegistry;
+
+  @Before
+  public void setUp() {
+    repository = Mockito.mock(MultiBucketEnvironmentRepository.class);
+    meterRegistry = new SimpleMeterRegistry();
+    Environment environment = new Environment("bar", "staging");
+    environment.add(new PropertySource("bar-staging.yml",
+        Collections.singletonMap("foo", "bar")));
+    when(repository.findOne(anyString(), anyString(), any())).thenReturn(environment);
+    when(repository.getServingVersion(anyString(), any())).thenReturn("v1");
+    when(repository.getContentVersion(anyString(), any(), any())).thenReturn("c1");
+  }
+
+  @Test
+  public void yml_repeatedRequest_renderedOnce() throws Exception {
+    ResponseCacheFilter filter = new ResponseCacheFilter(repository, 10, meterRegistry);
+    MockMvc mockMvc = mockMvc(filter);
+    for (int i = 0; i < 2; i++) {
+      mockMvc.perform(get("/bar-staging.yml"))
+          .andExpect(status().isOk())
+          .andExpect(header().string(HttpHeaders.ETAG, "W/\"c1\""))
+          .andExpect(content().string("foo: bar\n"));
+    }
+    verify(repository, times(1)).findOne("bar", "staging", null);
+    Assert.assertEquals(1, filter.size());
+    Assert.assertEquals(1, meterRegistry.counter("s3.config.responses", "cache", "hit").count(),
+        0);
+  }
+
+  @Test
+  public void environment_matchingIfNoneMatch_notModified() throws Exception {
+    MockMvc mockMvc = mockMvc(new ResponseCacheFilter(repository, 10, meterRegistry));
+    mockMvc.perform(get("/bar/staging").header(HttpHeaders.IF_NONE_MATCH, "W/\"c1\""))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string(HttpHeaders.ETAG, "W/\"c1\""));
+    mockMvc.perform(get("/bar/staging").header(HttpHeaders.IF_NONE_MATCH, "\"c0\", \"c1\""))
+        .andExpect(status().isNotModified());
+    mockMvc.perform(get("/bar/staging").header(HttpHeaders.IF_NONE_MATCH, "W/\"c0\""))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.ETAG, "W/\"c1\""));
+    verify(repository, times(1)).findOne("bar", "staging", null);
+  }
+
+  @Test
+  public void properties_newVersion_renderedAgain() throws Exception {
+    MockMvc mockMvc = mockMvc(new ResponseCacheFilter(repository, 10, meterRegistry));
+    mockMvc.perform(get("/master/bar-staging.properties"))
+        .andExpect(header().string(HttpHeaders.ETAG, "W/\"c1\""));
+    when(repository.getServingVersion(anyString(), any())).thenReturn("v2");
+    when(repository.getContentVersion(anyString(), any(), any())).thenReturn("c2");
+    mockMvc.perform(get("/master/bar-staging.properties"))
+        .andExpect(header().string(HttpHeaders.ETAG, "W/\"c2\""))
+        .andExpect(content().string("foo: bar"));
+    verify(repository, times(2)).findOne("bar", "staging", "master");
+  }
+
+  @Test
+  public void environment_newVersionSameContent_notModified() throws Exception {
+    MockMvc mockMvc = mockMvc(new ResponseCacheFilter(repository, 10, meterRegistry));
+    when(repository.getServingVersion(anyString(), any())).thenReturn("v2");
+    mockMvc.perform(get("/bar/staging").header(HttpHeaders.IF_NONE_MATCH, "W/\"c1\""))
+        .andExpect(status().isNotModified());
+    verify(repository, never()).findOne(anyString(), anyString(), any());
+  }
+
+  @Test
+  public void environment_labelWithSlash_versionOfLabel() throws Exception {
+    MockMvc mockMvc = mockMvc(new ResponseCacheFilter(repository, 10, meterRegistry));
+    mockMvc.perform(get("/bar/staging/feature(_)x"))
+        .andExpect(status().isOk());
+    verify(repository).getServingVersion("bar", "feature/x");
+    verify(repository).getContentVersion("bar", "staging", "feature/x");
+  }
+
+  @Test
+  public void yml_cacheDisabled_taggedButRenderedEachTime() throws Exception {
+    ResponseCacheFilter filter = new ResponseCacheFilter(repository, 0, meterRegistry);
+    MockMvc mockMvc = mockMvc(filter);
+    for (int i = 0; i < 2; i++) {
+      mockMvc.perform(get("/bar-staging.yml"))
+          .andExpect(header().string(HttpHeaders.ETAG, "W/\"c1\""));
+    }
+    verify(repository, times(2)).findOne("bar", "staging", null);
+    Assert.assertEquals(0, filter.size());
+  }
+
+  @Test
+  public void environment_noSuchLabel_notCached() throws Exception {
+    when(repository.findOne("bar", "staging", "missing"))
+        .thenThrow(new NoSuchLabelException("No such label: missing"));
+    ResponseCacheFilter filter = new ResponseCacheFilter(repository, 10, meterRegistry);
+    mockMvc(filter).perform(get("/bar/staging/missing"))
+        .andExpect(status().isNotFound())
+        .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+    Assert.assertEquals(0, filter.size());
+  }
+
+  @Test
+  public void environment_nothingPublished_notCached() throws Exception {
+    when(repository.getContentVersion(anyString(), any(), any())).thenReturn(null);
+    ResponseCacheFilter filter = new ResponseCacheFilter(repository, 10, meterRegistry);
+    mockMvc(filter).perform(get("/bar/staging"))
+        .andExpect(status().isOk())
+        .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+    Assert.assertEquals(0, filter.size());
+  }
+
+  @Test
+  public void resource_matchingIfNoneMatch_notModifiedWithoutReading() throws Exception {
+    ResourceRepository resources = Mockito.mock(ResourceRepository.class);
+    when(resources.findOne("bar", "staging", "master", "bar.yml"))
+        .thenReturn(new ByteArrayResource("foo: bar".getBytes(StandardCharsets.UTF_8)));
+    MockMvc mockMvc = resourceMockMvc(new ResponseCacheFilter(repository, 10, meterRegistry),
+        resources);
+    mockMvc.perform(get("/bar/staging/master/bar.yml").accept(MediaType.TEXT_PLAIN))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.ETAG, "W/\"v1\""))
+        .andExpect(content().string("foo: bar"));
+    mockMvc.perform(get("/bar/staging/master/bar.yml").accept(MediaType.TEXT_PLAIN)
+        .header(HttpHeaders.IF_NONE_MATCH, "W/\"v1\""))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string(HttpHeaders.ETAG, "W/\"v1\""));
+    verify(resources, times(1)).findOne("bar", "staging", "master", "bar.yml");
+    verify(repository, never()).getContentVersion(anyString(), any(), any());
+    Assert.assertEquals(1,
+        meterRegistry.counter("s3.config.resources", "cache", "not-modified").count(), 0);
+  }
+
+  @Test
+  public void resource_nothingPublished_notTagged() throws Exception {
+    when(repository.getServingVersion(anyString(), any())).thenReturn(null);
+    ResourceRepository resources = Mockito.mock(ResourceRepository.class);
+    when(resources.findOne("bar", "staging", "master", "bar.yml"))
+        .thenReturn(new ByteArrayResource("foo: bar".getBytes(StandardCharsets.UTF_8)));
+    resourceMockMvc(new ResponseCacheFilter(repository, 10, meterRegistry), resources)
+        .perform(get("/bar/staging/master/bar.yml").accept(MediaType.TEXT_PLAIN))
+        .andExpect(status().isOk())
+        .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+  }
+
+  @Test
+  public void filter_bytesWrittenSingly_passedThroughAndCached() throws Exception {
+    ResponseCacheFilter filter = new ResponseCacheFilter(repository, 10, meterRegistry);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    HandlerMethod handler = environmentHandler();
+    filter.doFilter(environmentRequest("GET"), response, (request, chained) -> {
+      filter.preHandle((HttpServletRequest) request, (HttpServletResponse) chained, handler);
+      ServletOutputStream out = chained.getOutputStream();
+      Assert.assertTrue(out.isReady());
+      out.write('a');
+      out.flush();
+    });
+    Assert.assertEquals("a", response.getContentAsString());
+    Assert.assertEquals("W/\"c1\"", response.getHeader(HttpHeaders.ETAG));
+    Assert.assertEquals(1, filter.size());
+  }
+
+  @Test
+  public void filter_bodyWrittenAsCharacters_notCached() throws Exception {
+    ResponseCacheFilter filter = new ResponseCacheFilter(repository, 10, meterRegistry);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    HandlerMethod handler = environmentHandler();
+    filter.doFilter(environmentRequest("GET"), response, (request, chained) -> {
+      filter.preHandle((HttpServletRequest) request, (HttpServletResponse) chained, handler);
+      chained.getWriter().write("a");
+    });
+    Assert.assertEquals("a", response.getContentAsString());
+    Assert.assertEquals(0, filter.size());
+  }
+
+  @Test
+  public void filter_otherRequests_passedThrough() throws Exception {
+    ResponseCacheFilter filter = new ResponseCacheFilter(repository, 10, meterRegistry);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    HandlerMethod handler = environmentHandler();
+    filter.doFilter(environmentRequest("POST"), response, (request, chained) -> {
+      Assert.assertSame(response, chained);
+      Assert.assertTrue(filter.preHandle((HttpServletRequest) request, response, handler));
+    });
+    Assert.assertTrue(filter.preHandle(environmentRequest("GET"), response, new Object()));
+    verify(repository, never()).getServingVersion(anyString(), any());
+  }
+
+  private static MockHttpServletRequest environmentRequest(String method) {
+    MockHttpServletRequest request = new MockHttpServletRequest(method, "/bar/staging");
+    request.setAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE,
+        Collections.singletonMap("name", "bar"));
+    return request;
+  }
+
+  private HandlerMethod environmentHandler() throws NoSuchMethodException {
+    return new HandlerMethod(new EnvironmentController(repository), "defaultLabel",
+        String.class, String.class);
+  }
+
+  private MockMvc resourceMockMvc(ResponseCacheFilter filter, ResourceRepository resources) {
+    return MockMvcBuilders.standaloneSetup(new ResourceController(resources, repository))
+        .addInterceptors(filter)
+        .addFilters(filter)
+        .build();
+  }
+
+  private MockMvc mockMvc(ResponseCacheFilter filter) {
+    return MockMvcBuilders.standaloneSetup(new EnvironmentController(repository))
+        .addInterceptors(filter)
+        .addFilters(filter)
+        .build();
+  }
+}
@@ -0,0 +1,212 @@
+package com.spring.cloud.config.s3.cluster;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.spring.cloud.config.s3.ConfigServerTestUtils;
+import com.spring.cloud.config.s3.config.S3EnvironmentRepositoryProperties;
+import com.spring.cloud.config.s3.exceptions.SystemException;
+import com.spring.cloud.config.s3.repository.S3EnvironmentRepository;
+import com.spring.cloud.config.s3.repository.S3Repository;
+import com.spring.cloud.config.s3.snapshot.ConfigSnapshot;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import javax.annotation.Resource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Tests for {@link SnapshotController} and {@link PeerSnapshotClient} - the application under
+ * test is the leader, peers are repositories in the same JVM fetching from it over HTTP.
+ *
+ * @author Nagesh Salunke
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+    "spring.cloud.config.server.s3.cluster.serve-snapshots=true",
+    "spring.cloud.config.server.s3.cluster.token=secret"})
+@TestPropertySource(locations = "classpath:bootstrap-test.properties")
+public class PeerSnapshotDistributionTests {
+
+  @LocalServerPort
+  private int port;
+
+  @Resource
+  private StandardEnvironment standardEnvironment;
+
+  @Resource
+  private S3EnvironmentRepositoryProperties properties;
+
+  @Resource
+  private S3EnvironmentRepository leader;
+
+  @Resource
+  private ThreadPoolTaskExecutor snapshotArchiveExecutor;
+
+  @MockBean
+  private S3Repository s3Repository;
+
+  private MeterRegistry meterRegistry;
+
+  private final List<S3EnvironmentRepository> peers = new ArrayList<>();
+
+  @Before
+  public void setUp() throws SystemException {
+    meterRegistry = new SimpleMeterRegistry();
+    mockDownload(s3Repository);
+  }
+
+  @After
+  public void tearDown() {
+    peers.forEach(S3EnvironmentRepository::destroy);
+  }
+
+  @Test
+  public void refresh_peers_fetchVersionFromLeaderOnce() throws SystemException {
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+    S3Repository peerS3 = peerS3("v1");
+    for (String name : new String[] {"peer-a", "peer-b"}) {
+      S3EnvironmentRepository peer = peer(name, peerS3, "secret");
+      Environment environment = peer.findOne("bar", "staging", "master");
+      Assert.assertEquals("v1", environment.getVersion());
+      Assert.assertEquals(3, environment.getPropertySources().size());
+    }
+    verify(s3Repository, times(1)).downloadBucket(anyString(), any());
+    verify(peerS3, never()).downloadBucket(anyString(), any());
+    Assert.assertEquals(2, meterRegistry.counter("s3.config.peer.fetch", "outcome", "fetched")
+        .count(), 0);
+  }
+
+  @Test
+  public void refresh_leaderWithoutVersion_fallsBackToS3() throws SystemException {
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v2"));
+    S3Repository peerS3 = peerS3("v3");
+    S3EnvironmentRepository peer = peer("peer-c", peerS3, "secret");
+    Assert.assertEquals("v3", peer.refresh());
+    verify(peerS3, times(1)).downloadBucket(anyString(), any());
+    Assert.assertEquals(1, meterRegistry.counter("s3.config.peer.fetch", "outcome", "miss")
+        .count(), 0);
+  }
+
+  @Test
+  public void acquireSnapshot_versionNotInS3_nullWithoutRefresh() throws SystemException {
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v7"));
+    Assert.assertNull(leader.acquireSnapshot("made-up"));
+    verify(s3Repository, never()).downloadBucket(anyString(), any());
+    verify(s3Repository, never()).expireBucketVersion(anyString());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void snapshotController_noToken_refusesToStart() {
+    new SnapshotController(leader, new S3EnvironmentRepositoryProperties());
+  }
+
+  @Test
+  public void snapshotArchiveExecutor_bounded() {
+    Assert.assertEquals(properties.getCluster().getArchiveThreads(),
+        snapshotArchiveExecutor.getMaxPoolSize());
+    Assert.assertEquals(0, snapshotArchiveExecutor.getThreadPoolExecutor().getQueue().size());
+    Assert.assertEquals(properties.getCluster().getArchiveQueueCapacity(),
+        snapshotArchiveExecutor.getThreadPoolExecutor().getQueue().remainingCapacity());
+  }
+
+  @Test
+  public void refresh_wrongToken_fallsBackToS3() throws SystemException {
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v4"));
+    S3Repository peerS3 = peerS3("v4");
+    S3EnvironmentRepository peer = peer("peer-d", peerS3, "guess");
+    Assert.assertEquals("v4", peer.refresh());
+    verify(peerS3, times(1)).downloadBucket(anyString(), any());
+    verify(s3Repository, never()).downloadBucket(anyString(), any());
+  }
+
+  @Test
+  public void refresh_leaderUnavailable_fallsBackToS3() throws SystemException {
+    S3Repository peerS3 = peerS3("v5");
+    S3EnvironmentRepository peer = new S3EnvironmentRepository(standardEnvironment, properties,
+        peerS3);
+    peers.add(peer);
+    peer.setUri("s3://config-bucket");
+    peer.setBasedir(basedir("peer-e"));
+    peer.setPeerSnapshotClient(new PeerSnapshotClient("http://localhost:1", null, 1000,
+        meterRegistry));
+    Assert.assertEquals("v5", peer.refresh());
+    verify(peerS3, times(1)).downloadBucket(anyString(), any());
+    Assert.assertEquals(1, meterRegistry.counter("s3.config.peer.fetch", "outcome", "error")
+        .count(), 0);
+  }
+
+  @Test
+  public void refresh_snapshotNotMatchingChecksum_fallsBackToS3()
+      throws SystemException, IOException {
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v6"));
+    ConfigSnapshot published = leader.acquireSnapshot("v6");
+    try {
+      Files.write(new File(published.getDirectory(), "application.yml").toPath(),
+          "tampered: true".getBytes("UTF-8"));
+    } finally {
+      leader.releaseSnapshot(published);
+    }
+    S3Repository peerS3 = peerS3("v6");
+    S3EnvironmentRepository peer = peer("peer-f", peerS3, "secret");
+    Assert.assertEquals("v6", peer.refresh());
+    verify(peerS3, times(1)).downloadBucket(anyString(), any());
+    Assert.assertEquals(1, meterRegistry.counter("s3.config.peer.fetch", "outcome", "corrupt")
+        .count(), 0);
+  }
+
+  private S3EnvironmentRepository peer(String name, S3Repository peerS3, String token) {
+    S3EnvironmentRepository peer = new S3EnvironmentRepository(standardEnvironment, properties,
+        peerS3);
+    peers.add(peer);
+    peer.setUri("s3://config-bucket");
+    peer.setBasedir(basedir(name));
+    peer.setPeerSnapshotClient(new PeerSnapshotClient("http://localhost:" + port + "/", token,
+        5000, meterRegistry));
+    return peer;
+  }
+
+  private static File basedir(String name) {
+    File basedir = new File("target/repos/peers/" + name);
+    FileSystemUtils.deleteRecursively(basedir);
+    return basedir;
+  }
+
+  private static S3Repository peerS3(String version) throws SystemException {
+    S3Repository peerS3 = Mockito.mock(S3Repository.class);
+    when(peerS3.getBucketVersion(anyString())).thenReturn(Optional.of(version));
+    mockDownload(peerS3);
+    return peerS3;
+  }
+
+  private static void mockDownload(S3Repository s3) throws SystemException {
+    Mockito.doAnswer(k -> {
+      ConfigServerTestUtils.prepareLocalRepo(k.getArgument(1), "config-repo");
+      return null;
+    }).when(s3).downloadBucket(anyString(), any());
+  }
+}
@@ -1,18 +1,33 @@
 package com.spring.cloud.config.s3.component;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.spring.cloud.config.s3.AbstractTest;
+import com.spring.cloud.config.s3.ConfigServerTestUtils;
 import com.spring.cloud.config.s3.component.aspect.ConfigServiceHealthIndicator;
+import com.spring.cloud.config.s3.config.S3EnvironmentRepositoryProperties;
+import com.spring.cloud.config.s3.repository.RefreshStatus;
+import com.spring.cloud.config.s3.repository.S3EnvironmentRepository;
 import com.spring.cloud.config.s3.repository.S3Repository;
+import java.io.File;
 import java.util.Optional;
 import javax.annotation.Resource;
+import org.junit.After;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.boot.actuate.health.Status;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
 
 /**
  * Unit tests for {@link ConfigServiceHealthIndicator}.
@@ -34,24 +49,104 @@ public class ConfigServiceHealthIndicatorTests extends AbstractTest {
   private ConfigServiceHealthIndicator configServiceHealthIndicator;
 
   /**
-   * Test when valid version was returned from S3.
+   * Repository whose state is reported.
+   */
+  @Resource
+  private S3EnvironmentRepository s3EnvironmentRepository;
+
+  @Resource
+  private S3EnvironmentRepositoryProperties properties;
+
+  private File basedir = new File("target/repos/health-repo");
+
+  @Before
+  @Override
+  public void setUp() throws Exception {
+    if (basedir.exists()) {
+      FileSystemUtils.deleteRecursively(basedir);
+    }
+    s3EnvironmentRepository.setBasedir(basedir);
+    Mockito.doAnswer(k -> {
+      ConfigServerTestUtils.prepareLocalRepo((File) k.getArguments()[1], "config-repo");
+      return null;
+    }).when(s3Repository).downloadBucket(anyString(), any());
+  }
+
+  @After
+  @Override
+  public void tearDown() {
+    properties.setHealthMaxStaleness(0);
+    properties.setHealthProbeTtl(0);
+  }
+
+  /**
+   * Test when a version was refreshed from S3.
    */
   @Test
   public void health_validVersion_successServiceUp() {
     when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("-1"));
+    s3EnvironmentRepository.refresh();
+    Mockito.clearInvocations(s3Repository);
+
     Health health = configServiceHealthIndicator.health();
     Assert.assertEquals(Status.UP, health.getStatus());
+    Assert.assertEquals("-1", health.getDetails().get("config-version"));
+    Assert.assertEquals(true, health.getDetails().get("s3-reachable"));
+    Assert.assertNotNull(health.getDetails().get("last-refresh"));
+    verify(s3Repository, never()).getBucketVersion(anyString());
+  }
+
+  /**
+   * Test that a service without configuration yet is reported out of service, not down.
+   */
+  @Test
+  public void health_nothingPublished_outOfService() {
+    S3EnvironmentRepository repository = Mockito.mock(S3EnvironmentRepository.class);
+    when(repository.getRefreshStatus()).thenReturn(new RefreshStatus(null, 0, 0, false));
+    @SuppressWarnings("unchecked")
+    ObjectProvider<S3EnvironmentRepository> provider = Mockito.mock(ObjectProvider.class);
+    when(provider.getIfAvailable()).thenReturn(repository);
+    ConfigServiceHealthIndicator indicator = new ConfigServiceHealthIndicator();
+    ReflectionTestUtils.setField(indicator, "environmentRepository", provider);
+    ReflectionTestUtils.setField(indicator, "properties", properties);
+
+    Health health = indicator.health();
+    Assert.assertEquals(Status.OUT_OF_SERVICE, health.getStatus());
+    Assert.assertEquals("No configuration published yet", health.getDetails().get("reason"));
+    indicator.destroy();
   }
 
   /**
-   * Test to validate status when there is exceptions due to
-   * issue with getting config version from S3.
+   * Test to validate status when the last version check in S3 failed.
    */
   @Test
   public void health_NoVersion_serviceDown() {
-    when(s3Repository.getBucketVersion(anyString()))
-        .thenThrow(new RuntimeException("Some exceptions"));
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("-1"));
+    s3EnvironmentRepository.refresh();
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.empty());
+    s3EnvironmentRepository.probeS3();
+
     Health health = configServiceHealthIndicator.health();
     Assert.assertEquals(Status.DOWN, health.getStatus());
+    Assert.assertEquals(false, health.getDetails().get("s3-reachable"));
+
+    properties.setHealthMaxStaleness(60000);
+    Assert.assertEquals(Status.UP, configServiceHealthIndicator.health().getStatus());
+  }
+
+  /**
+   * Test that an outdated S3 check is renewed in the background.
+   */
+  @Test
+  public void health_expiredProbe_probesS3InBackground() {
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("-1"));
+    s3EnvironmentRepository.refresh();
+    Mockito.clearInvocations(s3Repository);
+    properties.setHealthProbeTtl(1);
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.empty());
+
+    configServiceHealthIndicator.health();
+    verify(s3Repository, timeout(5000)).getBucketVersion(anyString());
+    Mockito.verifyNoMoreInteractions(s3Repository);
   }
 }
@@ -0,0 +1,100 @@
+package com.spring.cloud.config.s3.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.environment.PropertySource;
+import org.springframework.cloud.config.server.environment.NativeEnvironmentProperties;
+import org.springframework.cloud.config.server.environment.NativeEnvironmentRepository;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.util.StringUtils;
+
+/**
+ * Tests for {@link PropertySourceIndex}, environments must match NativeEnvironmentRepository.
+ *
+ * @author Nagesh Salunke
+ */
+public class PropertySourceIndexTests {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final File repo = new File("src/test/resources/testdata/indexed-repo")
+      .getAbsoluteFile();
+
+  @Test
+  public void find_profilesAndDocuments_sameAsNative() {
+    PropertySourceIndex index = PropertySourceIndex.build(repo);
+    Assert.assertNotNull(index);
+    String[][] requests = {{"bar", "staging"}, {"bar", "staging,eu"}, {"bar", "eu"},
+        {"bar", "default"}, {"foo", "eu,staging"}, {"application", "us"},
+        {"bar,foo", "staging"}};
+    for (String[] request : requests) {
+      String[] locations = locations(request[0], request[1]);
+      Environment expected = nativeEnvironment(locations, request[0], request[1]);
+      Environment actual = index.find(locations, request[0], request[1], "");
+      Assert.assertEquals(String.join("/", request), names(expected), names(actual));
+      for (int i = 0; i < expected.getPropertySources().size(); i++) {
+        Assert.assertEquals(expected.getPropertySources().get(i).getSource(),
+            actual.getPropertySources().get(i).getSource());
+      }
+    }
+  }
+
+  @Test
+  public void build_profileActivatedInFile_notIndexed() throws IOException {
+    Files.write(folder.newFile("application.yml").toPath(),
+        "spring:\n  profiles:\n    active: eu\n".getBytes("UTF-8"));
+    Assert.assertNull(PropertySourceIndex.build(folder.getRoot()));
+  }
+
+  @Test
+  public void build_unparseableFile_notIndexed() throws IOException {
+    Files.write(folder.newFile("application.yml").toPath(), "a: [b\n".getBytes("UTF-8"));
+    Assert.assertNull(PropertySourceIndex.build(folder.getRoot()));
+  }
+
+  @Test
+  public void build_missingDirectory_notIndexed() {
+    Assert.assertNull(PropertySourceIndex.build(new File(folder.getRoot(), "missing")));
+  }
+
+  /**
+   * Search locations {profile}/{application}, {profile} and the root, as configured in tests.
+   */
+  private String[] locations(String application, String profile) {
+    Set<String> locations = new LinkedHashSet<>();
+    locations.add(repo.toURI().toString());
+    for (String prof : StringUtils.commaDelimitedListToStringArray(profile)) {
+      locations.add(new File(repo, prof).toURI().toString());
+      for (String app : StringUtils.commaDelimitedListToStringArray(application)) {
+        locations.add(new File(repo, prof + "/" + app).toURI().toString());
+      }
+    }
+    return locations.stream().filter(location -> location.endsWith("/"))
+        .toArray(String[]::new);
+  }
+
+  private static Environment nativeEnvironment(String[] locations, String application,
+      String profile) {
+    NativeEnvironmentRepository delegate = new NativeEnvironmentRepository(
+        new StandardEnvironment(), new NativeEnvironmentProperties());
+    delegate.setSearchLocations(locations.clone());
+    return delegate.findOne(application, profile, "");
+  }
+
+  private static List<String> names(Environment environment) {
+    return new ArrayList<>(environment.getPropertySources().stream().map(PropertySource::getName)
+        .collect(Collectors.toList()));
+  }
+}
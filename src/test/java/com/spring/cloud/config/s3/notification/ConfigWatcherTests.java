@@ -0,0 +1,258 @@
+package com.spring.cloud.config.s3.notification;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.spring.cloud.config.s3.repository.MultiBucketEnvironmentRepository;
+import com.spring.cloud.config.s3.repository.MultiBucketEnvironmentRepository.Tenant;
+import com.spring.cloud.config.s3.repository.S3EnvironmentRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.request.async.DeferredResult;
+
+/**
+ * Tests for {@link ConfigWatcher} and {@link WatchController}
+ *
+ * @author Nagesh Salunke
+ */
+public class ConfigWatcherTests {
+
+  private MultiBucketEnvironmentRepository repository;
+
+  private S3EnvironmentRepository defaultRepository;
+
+  private S3EnvironmentRepository tenantRepository;
+
+  private Consumer<String> defaultPublished;
+
+  private Consumer<String> tenantPublished;
+
+  private MeterRegistry meterRegistry;
+
+  private ConfigWatcher watcher;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    repository = Mockito.mock(MultiBucketEnvironmentRepository.class);
+    defaultRepository = Mockito.mock(S3EnvironmentRepository.class);
+    tenantRepository = Mockito.mock(S3EnvironmentRepository.class);
+    when(repository.getDefaultRepository()).thenReturn(defaultRepository);
+    when(repository.getTenants()).thenReturn(Collections.singletonList(
+        new Tenant("team", Collections.singletonList("team-*"), Collections.emptyList(),
+            tenantRepository, 1000, 10, 100)));
+    when(repository.getContentVersion(anyString(), anyString(), any())).thenReturn("v1");
+    when(repository.findOne(anyString(), anyString(), any()))
+        .thenAnswer(invocation -> new Environment(invocation.getArgument(0),
+            (String) invocation.getArgument(1)));
+    meterRegistry = new SimpleMeterRegistry();
+    watcher = new ConfigWatcher(repository, 60000, 3, meterRegistry);
+    ArgumentCaptor<Consumer<String>> listener = ArgumentCaptor.forClass(Consumer.class);
+    verify(defaultRepository).addPublishListener(listener.capture());
+    defaultPublished = listener.getValue();
+    verify(tenantRepository).addPublishListener(listener.capture());
+    tenantPublished = listener.getValue();
+  }
+
+  @After
+  public void tearDown() {
+    watcher.destroy();
+  }
+
+  @Test
+  public void watch_otherVersionServed_answeredImmediately() {
+    DeferredResult<ResponseEntity<Environment>> result = watcher.watch("bar", "staging", null,
+        "v0");
+    ResponseEntity<?> response = (ResponseEntity<?>) result.getResult();
+    Assert.assertEquals(HttpStatus.OK, response.getStatusCode());
+    Assert.assertEquals("W/\"v1\"", response.getHeaders().getETag());
+    Assert.assertEquals("bar", ((Environment) response.getBody()).getName());
+    Assert.assertEquals(0, watcher.size());
+  }
+
+  @Test
+  public void watch_publish_heldWatchesAnsweredResolvingOnce() throws Exception {
+    CountDownLatch answered = new CountDownLatch(3);
+    DeferredResult<ResponseEntity<Environment>> first = watcher.watch("bar", "staging", null,
+        "v1");
+    DeferredResult<ResponseEntity<Environment>> second = watcher.watch("bar", "staging", null,
+        "v1");
+    DeferredResult<ResponseEntity<Environment>> other = watcher.watch("foo", "staging", null,
+        null);
+    other.setResultHandler(result -> answered.countDown());
+    Assert.assertFalse(first.hasResult());
+    Assert.assertEquals(2, watcher.size());
+    Assert.assertEquals(2, meterRegistry.get("s3.config.watches").gauge().value(), 0);
+    first.setResultHandler(result -> answered.countDown());
+    second.setResultHandler(result -> answered.countDown());
+
+    when(repository.getContentVersion(anyString(), anyString(), any())).thenReturn("v2");
+    defaultPublished.accept("v2");
+    Assert.assertTrue(answered.await(5, TimeUnit.SECONDS));
+    Assert.assertEquals("W/\"v2\"", ((ResponseEntity<?>) first.getResult()).getHeaders()
+        .getETag());
+    Assert.assertEquals(0, watcher.size());
+    verify(repository, times(1)).findOne("bar", "staging", null);
+  }
+
+  @Test
+  public void watch_publishNotChangingEnvironment_stillHeld() throws Exception {
+    when(repository.getContentVersion("foo", "staging", null)).thenReturn("f1");
+    DeferredResult<ResponseEntity<Environment>> bar = watcher.watch("bar", "staging", null,
+        "v1");
+    DeferredResult<ResponseEntity<Environment>> foo = watcher.watch("foo", "staging", null,
+        "f1");
+    CountDownLatch answered = new CountDownLatch(1);
+    foo.setResultHandler(result -> answered.countDown());
+
+    when(repository.getContentVersion("foo", "staging", null)).thenReturn("f2");
+    defaultPublished.accept("v2");
+    Assert.assertTrue(answered.await(5, TimeUnit.SECONDS));
+    Assert.assertFalse(bar.hasResult());
+    Assert.assertEquals(1, watcher.size());
+  }
+
+  @Test
+  public void watch_noContentVersionOnPublish_stillHeld() throws Exception {
+    DeferredResult<ResponseEntity<Environment>> bar = watcher.watch("bar", "staging", null,
+        "v1");
+    when(repository.getContentVersion("bar", "staging", null)).thenReturn(null);
+    defaultPublished.accept("v2");
+
+    //Notified after the first publish was handled, the notifier is single threaded.
+    DeferredResult<ResponseEntity<Environment>> foo = watcher.watch("foo", "staging", null,
+        "v1");
+    CountDownLatch answered = new CountDownLatch(1);
+    foo.setResultHandler(result -> answered.countDown());
+    when(repository.getContentVersion("foo", "staging", null)).thenReturn("v3");
+    defaultPublished.accept("v3");
+    Assert.assertTrue(answered.await(5, TimeUnit.SECONDS));
+    Assert.assertFalse(bar.hasResult());
+    Assert.assertEquals(1, watcher.size());
+  }
+
+  @Test
+  public void watch_tenantPublishes_onlyItsWatchesAnswered() throws Exception {
+    Tenant tenant = repository.getTenants().get(0);
+    when(repository.route("team-a", null)).thenReturn(tenant);
+    DeferredResult<ResponseEntity<Environment>> team = watcher.watch("team-a", "staging", null,
+        "v1");
+    DeferredResult<ResponseEntity<Environment>> bar = watcher.watch("bar", "staging", null,
+        "v1");
+    CountDownLatch answered = new CountDownLatch(1);
+    team.setResultHandler(result -> answered.countDown());
+
+    when(repository.getContentVersion(anyString(), anyString(), any())).thenReturn("v2");
+    tenantPublished.accept("v2");
+    Assert.assertTrue(answered.await(5, TimeUnit.SECONDS));
+    Assert.assertFalse(bar.hasResult());
+    Assert.assertEquals(1, watcher.size());
+  }
+
+  @Test
+  public void watch_resolutionFails_errorResult() throws Exception {
+    when(repository.findOne("bar", "staging", "missing"))
+        .thenThrow(new IllegalStateException("failed"));
+    DeferredResult<ResponseEntity<Environment>> result = watcher.watch("bar", "staging",
+        "missing", "v1");
+    CountDownLatch answered = new CountDownLatch(1);
+    result.setResultHandler(value -> answered.countDown());
+
+    when(repository.getContentVersion(anyString(), anyString(), any())).thenReturn("v2");
+    defaultPublished.accept("v2");
+    Assert.assertTrue(answered.await(5, TimeUnit.SECONDS));
+    Assert.assertTrue(result.getResult() instanceof IllegalStateException);
+  }
+
+  @Test
+  public void watch_publishedWhileRegistering_answered() {
+    when(repository.getContentVersion("bar", "staging", null)).thenReturn("v1", "v2");
+    DeferredResult<ResponseEntity<Environment>> result = watcher.watch("bar", "staging", null,
+        "v1");
+    Assert.assertEquals("W/\"v2\"", ((ResponseEntity<?>) result.getResult()).getHeaders()
+        .getETag());
+    Assert.assertEquals(0, watcher.size());
+  }
+
+  @Test
+  public void watch_tooManyWatches_rejected() {
+    for (int i = 0; i < 3; i++) {
+      watcher.watch("bar", "staging", null, "v1");
+    }
+    DeferredResult<ResponseEntity<Environment>> result = watcher.watch("bar", "staging", null,
+        "v1");
+    Assert.assertEquals(HttpStatus.TOO_MANY_REQUESTS,
+        ((ResponseEntity<?>) result.getResult()).getStatusCode());
+    Assert.assertEquals(3, watcher.size());
+  }
+
+  @Test
+  public void watch_versionLabel_heldUntilTimeout() {
+    when(repository.getContentVersion("bar", "staging", "v1")).thenReturn("v1");
+    when(defaultRepository.isVersionLabel("v1")).thenReturn(true);
+    DeferredResult<ResponseEntity<Environment>> result = watcher.watch("bar", "staging", "v1",
+        "v1");
+    Assert.assertFalse(result.hasResult());
+    Assert.assertEquals(0, watcher.size());
+  }
+
+  @Test
+  public void controller_publish_environmentDispatched() throws Exception {
+    MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new WatchController(watcher)).build();
+    MvcResult held = mockMvc.perform(get("/watch/bar/staging/feature(_)x")
+        .param(WatchController.VERSION_PARAM, "v1"))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    verify(repository, times(2)).getContentVersion("bar", "staging", "feature/x");
+    verify(repository, never()).findOne(anyString(), anyString(), any());
+
+    when(repository.getContentVersion(anyString(), anyString(), any())).thenReturn("v2");
+    defaultPublished.accept("v2");
+    held.getAsyncResult(5000);
+    mockMvc.perform(asyncDispatch(held))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.ETAG, "W/\"v2\""))
+        .andExpect(jsonPath("$.name").value("bar"));
+    Assert.assertEquals(0, watcher.size());
+  }
+
+  @Test
+  public void controller_defaultLabelWithoutVersion_environment() throws Exception {
+    MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new WatchController(watcher))
+        .addPlaceholderValue("spring.cloud.config.server.prefix", "/config").build();
+    mockMvc.perform(get("/watch/bar/staging")).andExpect(status().isNotFound());
+    MvcResult result = mockMvc.perform(get("/config/watch/bar/staging"))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    mockMvc.perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.ETAG, "W/\"v1\""));
+  }
+}
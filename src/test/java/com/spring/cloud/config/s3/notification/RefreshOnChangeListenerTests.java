@@ -0,0 +1,80 @@
+package com.spring.cloud.config.s3.notification;
+
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.spring.cloud.config.s3.repository.S3EnvironmentRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Tests for {@link RefreshOnChangeListener}
+ *
+ * @author Nagesh Salunke
+ */
+public class RefreshOnChangeListenerTests {
+
+  private S3EnvironmentRepository repository;
+
+  private MeterRegistry meterRegistry;
+
+  private RefreshOnChangeListener listener;
+
+  @Before
+  public void setUp() {
+    repository = Mockito.mock(S3EnvironmentRepository.class);
+    when(repository.getUri()).thenReturn("s3://config-bucket");
+    meterRegistry = new SimpleMeterRegistry();
+    listener = new RefreshOnChangeListener(repository, meterRegistry);
+  }
+
+  @Test
+  public void onChange_changeInBucket_refreshes() {
+    CompletableFuture<String> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new IllegalStateException("Unable to refresh local config."));
+    when(repository.refreshAfterChange()).thenReturn(CompletableFuture.completedFuture("v2"))
+        .thenReturn(failed);
+    listener.onChange("sqs", Arrays.asList(
+        new ChangeNotification("other-bucket", "application.yml", "ObjectCreated:Put"),
+        new ChangeNotification("config-bucket", "application.yml", "ObjectCreated:Put"),
+        new ChangeNotification("config-bucket", "config.metadata", "ObjectCreated:Put")));
+    listener.onChange("sqs", Collections.singletonList(
+        new ChangeNotification("config-bucket", "application.yml", "ObjectRemoved:Delete")));
+    verify(repository, times(2)).refreshAfterChange();
+    Assert.assertEquals(2, meterRegistry.counter("s3.config.notifications", "source", "sqs",
+        "relevant", "true").count(), 0);
+  }
+
+  @Test
+  public void onChange_otherBucket_ignored() {
+    listener.onChange("webhook", Collections.singletonList(
+        new ChangeNotification("other-bucket", "application.yml", "ObjectCreated:Put")));
+    listener.onChange("webhook", Collections.emptyList());
+    verify(repository, never()).refreshAfterChange();
+    Assert.assertEquals(2, meterRegistry.counter("s3.config.notifications", "source", "webhook",
+        "relevant", "false").count(), 0);
+  }
+
+  @Test
+  public void onChange_severalBuckets_refreshesChangedOnly() {
+    S3EnvironmentRepository tenant = Mockito.mock(S3EnvironmentRepository.class);
+    when(tenant.getUri()).thenReturn("s3://tenant-bucket");
+    when(tenant.refreshAfterChange()).thenReturn(CompletableFuture.completedFuture("v2"));
+    listener = new RefreshOnChangeListener(Arrays.asList(repository, tenant), meterRegistry);
+    listener.onChange("sqs", Collections.singletonList(
+        new ChangeNotification("tenant-bucket", "application.yml", "ObjectCreated:Put")));
+    verify(tenant, times(1)).refreshAfterChange();
+    verify(repository, never()).refreshAfterChange();
+    Assert.assertEquals(1, meterRegistry.counter("s3.config.notifications", "source", "sqs",
+        "relevant", "true").count(), 0);
+  }
+}
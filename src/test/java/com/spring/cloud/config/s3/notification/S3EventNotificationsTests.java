@@ -0,0 +1,47 @@
+package com.spring.cloud.config.s3.notification;
+
+import java.io.IOException;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link S3EventNotifications}
+ *
+ * @author Nagesh Salunke
+ */
+public class S3EventNotificationsTests {
+
+  static final String EVENT = "{\"Records\":[{\"eventName\":\"ObjectCreated:Put\","
+      + "\"s3\":{\"bucket\":{\"name\":\"config-bucket\"},"
+      + "\"object\":{\"key\":\"staging/bar/bar+staging%2Bv2.yml\",\"eTag\":\"e1\"}}}]}";
+
+  @Test
+  public void parse_s3Event_changeNotifications() throws IOException {
+    List<ChangeNotification> notifications = S3EventNotifications.parse(EVENT);
+    Assert.assertEquals(1, notifications.size());
+    Assert.assertEquals("config-bucket", notifications.get(0).getBucket());
+    Assert.assertEquals("staging/bar/bar staging+v2.yml", notifications.get(0).getKey());
+    Assert.assertEquals("ObjectCreated:Put", notifications.get(0).getEventName());
+  }
+
+  @Test
+  public void parse_snsEnvelope_unwrapsMessage() throws IOException {
+    String sns = "{\"Type\":\"Notification\",\"Message\":\"" + EVENT.replace("\"", "\\\"") + "\"}";
+    List<ChangeNotification> notifications = S3EventNotifications.parse(sns);
+    Assert.assertEquals(1, notifications.size());
+    Assert.assertEquals("config-bucket", notifications.get(0).getBucket());
+  }
+
+  @Test
+  public void parse_testEvent_noNotifications() throws IOException {
+    Assert.assertTrue(S3EventNotifications.parse("{\"Service\":\"Amazon S3\","
+        + "\"Event\":\"s3:TestEvent\",\"Bucket\":\"config-bucket\"}").isEmpty());
+    Assert.assertTrue(S3EventNotifications.parse("").isEmpty());
+  }
+
+  @Test(expected = IOException.class)
+  public void parse_invalidJson_exception() throws IOException {
+    S3EventNotifications.parse("{not json");
+  }
+}
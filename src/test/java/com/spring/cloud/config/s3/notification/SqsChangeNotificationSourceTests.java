@@ -0,0 +1,85 @@
+package com.spring.cloud.config.s3.notification;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+/**
+ * Tests for {@link SqsChangeNotificationSource}, against a stub queue.
+ *
+ * @author Nagesh Salunke
+ */
+public class SqsChangeNotificationSourceTests {
+
+  private static final String QUEUE_URL = "https://sqs.local/queue";
+
+  private AmazonSQS sqs;
+
+  private ChangeNotificationListener listener;
+
+  private SqsChangeNotificationSource source;
+
+  @Before
+  public void setUp() {
+    sqs = Mockito.mock(AmazonSQS.class);
+    listener = Mockito.mock(ChangeNotificationListener.class);
+    source = new SqsChangeNotificationSource(sqs, QUEUE_URL, 1, listener);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void poll_messages_handedToListenerAndDeleted() {
+    when(sqs.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(
+        new ReceiveMessageResult().withMessages(
+            message("m1", S3EventNotificationsTests.EVENT), message("m2", "{not json")));
+    source.poll();
+
+    ArgumentCaptor<List<ChangeNotification>> notifications = ArgumentCaptor.forClass(List.class);
+    verify(listener).onChange(eq("sqs"), notifications.capture());
+    Assert.assertEquals("config-bucket", notifications.getValue().get(0).getBucket());
+    verify(sqs).deleteMessage(QUEUE_URL, "receipt-m1");
+    verify(sqs).deleteMessage(QUEUE_URL, "receipt-m2");
+    ArgumentCaptor<ReceiveMessageRequest> request =
+        ArgumentCaptor.forClass(ReceiveMessageRequest.class);
+    verify(sqs).receiveMessage(request.capture());
+    Assert.assertEquals(Integer.valueOf(1), request.getValue().getWaitTimeSeconds());
+  }
+
+  @Test
+  public void start_queueWithMessage_listensUntilStopped() {
+    when(sqs.receiveMessage(any(ReceiveMessageRequest.class)))
+        .thenThrow(new IllegalStateException("queue unavailable"))
+        .thenReturn(new ReceiveMessageResult().withMessages(
+            message("m1", S3EventNotificationsTests.EVENT)))
+        .thenReturn(new ReceiveMessageResult());
+    Assert.assertTrue(source.isAutoStartup());
+    source.start();
+    source.start();
+    Assert.assertTrue(source.isRunning());
+    verify(listener, timeout(10000)).onChange(anyString(), anyList());
+    Runnable callback = Mockito.mock(Runnable.class);
+    source.stop(callback);
+    verify(callback).run();
+    Assert.assertFalse(source.isRunning());
+    Assert.assertEquals(Integer.MAX_VALUE, source.getPhase());
+  }
+
+  private static Message message(String id, String body) {
+    return new Message().withMessageId(id).withReceiptHandle("receipt-" + id).withBody(body);
+  }
+}
@@ -0,0 +1,91 @@
+package com.spring.cloud.config.s3.notification;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.spring.cloud.config.s3.config.S3EnvironmentRepositoryProperties;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+/**
+ * Tests for {@link WebhookChangeNotificationController}
+ *
+ * @author Nagesh Salunke
+ */
+public class WebhookChangeNotificationControllerTests {
+
+  private ChangeNotificationListener listener;
+
+  private MockMvc mockMvc;
+
+  @Before
+  public void setUp() {
+    listener = Mockito.mock(ChangeNotificationListener.class);
+    mockMvc = MockMvcBuilders.standaloneSetup(
+        new WebhookChangeNotificationController(listener, properties("secret"))).build();
+  }
+
+  @Test
+  public void notify_s3Event_accepted() throws Exception {
+    mockMvc.perform(post(WebhookChangeNotificationController.PATH)
+        .header(WebhookChangeNotificationController.TOKEN_HEADER, "secret")
+        .contentType(MediaType.APPLICATION_JSON).content(S3EventNotificationsTests.EVENT))
+        .andExpect(status().isAccepted());
+    verify(listener).onChange(eq("webhook"), anyList());
+  }
+
+  @Test
+  public void notify_wrongToken_unauthorized() throws Exception {
+    mockMvc.perform(post(WebhookChangeNotificationController.PATH)
+        .header(WebhookChangeNotificationController.TOKEN_HEADER, "guess")
+        .content(S3EventNotificationsTests.EVENT))
+        .andExpect(status().isUnauthorized());
+    mockMvc.perform(post(WebhookChangeNotificationController.PATH)
+        .content(S3EventNotificationsTests.EVENT))
+        .andExpect(status().isUnauthorized());
+    verify(listener, never()).onChange(anyString(), anyList());
+  }
+
+  @Test
+  public void notify_invalidBody_badRequest() throws Exception {
+    mockMvc.perform(post(WebhookChangeNotificationController.PATH)
+        .header(WebhookChangeNotificationController.TOKEN_HEADER, "secret")
+        .content("{not json"))
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  public void notify_snsSubscriptionConfirmation_acceptedWithoutRefresh() throws Exception {
+    mockMvc.perform(post(WebhookChangeNotificationController.PATH)
+        .header(WebhookChangeNotificationController.TOKEN_HEADER, "secret")
+        .header("x-amz-sns-message-type", "SubscriptionConfirmation")
+        .content("{\"Type\":\"SubscriptionConfirmation\"}"))
+        .andExpect(status().isAccepted());
+    verify(listener, never()).onChange(anyString(), anyList());
+  }
+
+  @Test
+  public void notify_withoutConfiguredToken_accepted() throws Exception {
+    MockMvcBuilders.standaloneSetup(new WebhookChangeNotificationController(listener,
+        properties(null)))
+        .build()
+        .perform(post(WebhookChangeNotificationController.PATH)
+            .content(S3EventNotificationsTests.EVENT))
+        .andExpect(status().isAccepted());
+  }
+
+  private static S3EnvironmentRepositoryProperties properties(String token) {
+    S3EnvironmentRepositoryProperties properties = new S3EnvironmentRepositoryProperties();
+    properties.getNotifications().setWebhookToken(token);
+    return properties;
+  }
+}
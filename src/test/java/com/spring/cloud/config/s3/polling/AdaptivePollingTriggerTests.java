@@ -0,0 +1,113 @@
+package com.spring.cloud.config.s3.polling;
+
+import java.util.Date;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+
+/**
+ * Tests for {@link AdaptivePollingTrigger}
+ *
+ * @author Nagesh Salunke
+ */
+public class AdaptivePollingTriggerTests {
+
+  private FixedRandom random;
+
+  private AdaptivePollingTrigger trigger;
+
+  @Before
+  public void setUp() {
+    random = new FixedRandom();
+    trigger = new AdaptivePollingTrigger(1000, 250, 4000, 8000, 0.1, random);
+  }
+
+  @Test
+  public void nextExecutionTime_firstPoll_rightAway() {
+    random.value = 1;
+    long before = System.currentTimeMillis();
+    long next = trigger.nextExecutionTime(new SimpleTriggerContext()).getTime();
+    Assert.assertTrue(next >= before);
+    Assert.assertTrue(next <= System.currentTimeMillis());
+  }
+
+  @Test
+  public void nextExecutionTime_jitter_spreadsInterval() {
+    random.value = 0;
+    Assert.assertEquals(900, delay());
+    random.value = 1;
+    Assert.assertEquals(1100, delay());
+    Assert.assertEquals(1100, trigger.getEffectiveInterval());
+  }
+
+  @Test
+  public void onChange_shortensUntilStable() {
+    trigger.onChange();
+    Assert.assertEquals(250, delay());
+    trigger.onNoChange();
+    Assert.assertEquals(375, trigger.getInterval());
+    for (int i = 0; i < 10; i++) {
+      trigger.onNoChange();
+    }
+    Assert.assertEquals(4000, delay());
+  }
+
+  @Test
+  public void onFailure_backsOffExponentially() {
+    trigger.onFailure();
+    Assert.assertEquals(2000, trigger.getInterval());
+    trigger.onFailure();
+    Assert.assertEquals(4000, trigger.getInterval());
+    for (int i = 0; i < 40; i++) {
+      trigger.onFailure();
+    }
+    Assert.assertEquals(8000, delay());
+    trigger.onNoChange();
+    Assert.assertEquals(1000, trigger.getInterval());
+  }
+
+  @Test
+  public void constructor_boundsAroundBaseInterval() {
+    AdaptivePollingTrigger bounded = new AdaptivePollingTrigger(1000, 5000, 10, 10, 0, random);
+    bounded.onChange();
+    Assert.assertEquals(1000, bounded.getInterval());
+    bounded.onFailure();
+    Assert.assertEquals(1000, bounded.getInterval());
+  }
+
+  @Test
+  public void onNoChange_maxIntervalOfBaseInterval_keepsPollingAtBaseInterval() {
+    AdaptivePollingTrigger fixed = new AdaptivePollingTrigger(1000, 250, 1000, 4000, 0, random);
+    for (int i = 0; i < 10; i++) {
+      fixed.onNoChange();
+    }
+    Assert.assertEquals(1000, fixed.getInterval());
+    fixed.onFailure();
+    fixed.onFailure();
+    Assert.assertEquals(4000, fixed.getInterval());
+  }
+
+  private long delay() {
+    SimpleTriggerContext context = new SimpleTriggerContext();
+    Date now = new Date(100000);
+    context.update(now, now, now);
+    return trigger.nextExecutionTime(context).getTime() - now.getTime();
+  }
+
+  /**
+   * {@link Random} returning a fixed value.
+   */
+  private static class FixedRandom extends Random {
+
+    private static final long serialVersionUID = 1L;
+
+    private double value = 0.5;
+
+    @Override
+    public double nextDouble() {
+      return value;
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package com.spring.cloud.config.s3.polling;
+
+import static org.mockito.Mockito.when;
+
+import com.spring.cloud.config.s3.repository.S3EnvironmentRepository;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Tests for {@link RepositoryPoller}
+ *
+ * @author Nagesh Salunke
+ */
+public class RepositoryPollerTests {
+
+  private S3EnvironmentRepository repository;
+
+  private AdaptivePollingTrigger trigger;
+
+  private RepositoryPoller poller;
+
+  @Before
+  public void setUp() {
+    repository = Mockito.mock(S3EnvironmentRepository.class);
+    trigger = new AdaptivePollingTrigger(1000, 250, 4000, 4000, 0, new Random());
+    poller = new RepositoryPoller(repository, trigger);
+  }
+
+  @Test
+  public void run_versionChanged_pollsFaster() {
+    when(repository.getConfigVersion()).thenReturn("v1");
+    when(repository.refresh()).thenReturn("v2");
+    poller.run();
+    Assert.assertEquals(250, trigger.getInterval());
+  }
+
+  @Test
+  public void run_versionUnchanged_pollsSlower() {
+    when(repository.getConfigVersion()).thenReturn("v1");
+    when(repository.refresh()).thenReturn("v1");
+    poller.run();
+    Assert.assertEquals(1500, trigger.getInterval());
+  }
+
+  @Test
+  public void run_refreshFails_backsOff() {
+    when(repository.refresh()).thenThrow(new IllegalStateException("Unable to refresh."));
+    poller.run();
+    Assert.assertEquals(2000, trigger.getInterval());
+  }
+}
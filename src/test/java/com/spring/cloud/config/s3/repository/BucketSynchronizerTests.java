@@ -0,0 +1,138 @@
+package com.spring.cloud.config.s3.repository;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.spring.cloud.config.s3.exceptions.SystemException;
+import com.spring.cloud.config.s3.snapshot.SnapshotManifest;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+/**
+ * Tests for {@link BucketSynchronizer}
+ *
+ * @author Nagesh Salunke
+ */
+public class BucketSynchronizerTests {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private S3Repository s3Repository;
+
+  private BucketSynchronizer bucketSynchronizer;
+
+  @Before
+  public void setUp() throws SystemException {
+    s3Repository = Mockito.mock(S3Repository.class);
+    bucketSynchronizer = new BucketSynchronizer(s3Repository);
+    Mockito.doAnswer(k -> {
+      File destination = k.getArgument(2);
+      destination.getParentFile().mkdirs();
+      Files.write(destination.toPath(), ("content of " + k.getArgument(1)).getBytes("UTF-8"));
+      return null;
+    }).when(s3Repository).downloadObject(anyString(), anyString(), any());
+    Mockito.doAnswer(k -> {
+      Path destDir = k.getArgument(2);
+      for (S3ObjectSummary summary : k.<Collection<S3ObjectSummary>>getArgument(1)) {
+        s3Repository.downloadObject(k.getArgument(0), summary.getKey(),
+            destDir.resolve(summary.getKey()).toFile());
+      }
+      return null;
+    }).when(s3Repository).downloadObjects(anyString(), any(), any());
+  }
+
+  @Test
+  public void sync_noBaseline_downloadsEveryObject() throws SystemException, IOException {
+    when(s3Repository.listObjects("bucket")).thenReturn(Arrays.asList(
+        summary("application.yml", "e1"), summary("staging/", "d"),
+        summary("staging/bar/bar-staging.yml", "e2")));
+    Path dest = folder.newFolder("v1").toPath();
+    SnapshotManifest manifest = bucketSynchronizer.sync("bucket", null, null, dest);
+    Assert.assertEquals(2, manifest.getObjects().size());
+    Assert.assertEquals("e2", manifest.getObjects().get("staging/bar/bar-staging.yml").getEtag());
+    Assert.assertTrue(Files.exists(dest.resolve("staging/bar/bar-staging.yml")));
+    verify(s3Repository, times(2)).downloadObject(anyString(), anyString(), any());
+  }
+
+  @Test
+  public void sync_withBaseline_downloadsOnlyChangedObjects()
+      throws SystemException, IOException {
+    when(s3Repository.listObjects("bucket")).thenReturn(Arrays.asList(
+        summary("application.yml", "e1"), summary("staging/bar/bar-staging.yml", "e2"),
+        summary("removed.yml", "e3")));
+    Path v1 = folder.newFolder("v1").toPath();
+    SnapshotManifest baseline = bucketSynchronizer.sync("bucket", null, null, v1);
+
+    when(s3Repository.listObjects("bucket")).thenReturn(Arrays.asList(
+        summary("application.yml", "e1"), summary("staging/bar/bar-staging.yml", "changed"),
+        summary("new.yml", "e4")));
+    Path v2 = folder.newFolder("v2").toPath();
+    SnapshotManifest manifest = bucketSynchronizer.sync("bucket", baseline, v1.toFile(), v2);
+
+    Assert.assertEquals(3, manifest.getObjects().size());
+    Assert.assertTrue(Files.exists(v2.resolve("application.yml")));
+    Assert.assertFalse(Files.exists(v2.resolve("removed.yml")));
+    verify(s3Repository, times(1)).downloadObject(eq("bucket"), eq("application.yml"), any());
+    verify(s3Repository, times(2))
+        .downloadObject(eq("bucket"), eq("staging/bar/bar-staging.yml"), any());
+    verify(s3Repository, times(1)).downloadObject(eq("bucket"), eq("new.yml"), any());
+  }
+
+  @Test
+  public void sync_baselineFileMissing_downloadsAgain() throws SystemException, IOException {
+    when(s3Repository.listObjects("bucket")).thenReturn(Arrays.asList(
+        summary("application.yml", "e1")));
+    Path v1 = folder.newFolder("v1").toPath();
+    SnapshotManifest baseline = bucketSynchronizer.sync("bucket", null, null, v1);
+    Files.delete(v1.resolve("application.yml"));
+    Path v2 = folder.newFolder("v2").toPath();
+    bucketSynchronizer.sync("bucket", baseline, v1.toFile(), v2);
+    Assert.assertTrue(Files.exists(v2.resolve("application.yml")));
+    verify(s3Repository, times(2)).downloadObject(eq("bucket"), eq("application.yml"), any());
+  }
+
+  @Test
+  public void sync_keyOutsideDestination_skipped() throws SystemException, IOException {
+    when(s3Repository.listObjects("bucket")).thenReturn(Arrays.asList(
+        summary("../escape.yml", "e1")));
+    SnapshotManifest manifest = bucketSynchronizer.sync("bucket", null, null,
+        folder.newFolder("v1").toPath());
+    Assert.assertTrue(manifest.getObjects().isEmpty());
+    verify(s3Repository, never()).downloadObject(anyString(), anyString(), any());
+  }
+
+  @Test(expected = SystemException.class)
+  public void sync_downloadFails_systemException() throws SystemException, IOException {
+    when(s3Repository.listObjects("bucket")).thenReturn(Arrays.asList(
+        summary("application.yml", "e1")));
+    Mockito.doThrow(new AmazonS3Exception("Something went wrong"))
+        .when(s3Repository).downloadObject(anyString(), anyString(), any());
+    bucketSynchronizer.sync("bucket", null, null, folder.newFolder("v1").toPath());
+  }
+
+  private static S3ObjectSummary summary(String key, String etag) {
+    S3ObjectSummary summary = new S3ObjectSummary();
+    summary.setKey(key);
+    summary.setETag(etag);
+    summary.setSize(("content of " + key).length());
+    return summary;
+  }
+}
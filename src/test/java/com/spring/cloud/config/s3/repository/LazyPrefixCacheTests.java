@@ -0,0 +1,172 @@
+package com.spring.cloud.config.s3.repository;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.spring.cloud.config.s3.exceptions.SystemException;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+/**
+ * Tests for {@link LazyPrefixCache}
+ *
+ * @author Nagesh Salunke
+ */
+public class LazyPrefixCacheTests {
+
+  private static final List<String> KEYS = Arrays.asList("application.yml",
+      "staging/application-staging.yml", "staging/bar/bar-staging.yml",
+      "staging/foo/foo-staging.yml", "prod/application-prod.yml");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private S3Repository s3Repository;
+
+  private File directory;
+
+  @Before
+  public void setUp() throws Exception {
+    s3Repository = Mockito.mock(S3Repository.class);
+    directory = folder.newFolder("v1");
+    Mockito.when(s3Repository.listObjects(anyString(), any(), any())).thenAnswer(k -> {
+      String prefix = k.getArgument(1) == null ? "" : k.getArgument(1);
+      boolean recursive = k.getArgument(2) == null;
+      List<S3ObjectSummary> listed = new ArrayList<>();
+      for (String key : KEYS) {
+        if (key.startsWith(prefix) && (recursive || key.indexOf('/', prefix.length()) < 0)) {
+          S3ObjectSummary summary = new S3ObjectSummary();
+          summary.setKey(key);
+          summary.setSize(10);
+          listed.add(summary);
+        }
+      }
+      return listed;
+    });
+    Mockito.doAnswer(k -> {
+      Path destDir = k.getArgument(2);
+      for (S3ObjectSummary summary : k.<Collection<S3ObjectSummary>>getArgument(1)) {
+        Path destination = destDir.resolve(summary.getKey());
+        Files.createDirectories(destination.getParent());
+        Files.write(destination, new byte[10]);
+      }
+      return null;
+    }).when(s3Repository).downloadObjects(anyString(), any(), any());
+    Mockito.when(s3Repository.getBucketVersion("bucket")).thenReturn(Optional.of("v1"));
+  }
+
+  @Test
+  public void read_missingPrefixes_fetchesOnlyThoseOnce() {
+    LazyPrefixCache cache = cache(1000);
+    String result = cache.read(Arrays.asList("", "staging/bar/"), () -> "read");
+    cache.read(Collections.singletonList("staging/bar/"), () -> "read");
+
+    Assert.assertEquals("read", result);
+    Assert.assertEquals(20, cache.size());
+    Assert.assertTrue(new File(directory, "application.yml").isFile());
+    Assert.assertTrue(new File(directory, "staging/bar/bar-staging.yml").isFile());
+    Assert.assertFalse(new File(directory, "staging/application-staging.yml").exists());
+    verify(s3Repository, times(1)).listObjects("bucket", "staging/bar/", "/");
+    verify(s3Repository, times(1)).listObjects("bucket", null, "/");
+  }
+
+  @Test
+  public void read_overCap_evictsLeastRecentlyUsedPrefix() {
+    LazyPrefixCache cache = cache(20);
+    cache.read(Arrays.asList("", "staging/bar/"), () -> null);
+    cache.read(Collections.singletonList(""), () -> null);
+    cache.read(Collections.singletonList("prod/"), () -> null);
+
+    Assert.assertTrue(cache.contains(""));
+    Assert.assertTrue(cache.contains("prod/"));
+    Assert.assertFalse(cache.contains("staging/bar/"));
+    Assert.assertFalse(new File(directory, "staging/bar/bar-staging.yml").exists());
+    Assert.assertEquals(20, cache.size());
+  }
+
+  @Test
+  public void read_evictedRecursivePrefix_forgetsOverlappingPrefixes() {
+    LazyPrefixCache cache = cache(40);
+    cache.read(Collections.singletonList("staging/*"), () -> null);
+    cache.read(Collections.singletonList("staging/foo/"), () -> null);
+    Assert.assertEquals(40, cache.size());
+    cache.read(Collections.singletonList("prod/"), () -> null);
+
+    Assert.assertFalse(cache.contains("staging/*"));
+    Assert.assertFalse(cache.contains("staging/foo/"));
+    Assert.assertFalse(new File(directory, "staging/foo/foo-staging.yml").exists());
+    verify(s3Repository, times(1)).listObjects("bucket", "staging/", null);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void read_fetchFails_illegalState() throws SystemException {
+    Mockito.doThrow(new SystemException("failed")).when(s3Repository)
+        .downloadObjects(eq("bucket"), any(), any());
+    cache(1000)
+        .read(Collections.singletonList(""), () -> null);
+  }
+
+  @Test
+  public void read_unknownPrefix_listedOnce() {
+    LazyPrefixCache cache = cache(1000);
+    cache.read(Collections.singletonList("staging/unknown/"), () -> null);
+    cache.read(Collections.singletonList("staging/unknown/"), () -> null);
+
+    Assert.assertTrue(cache.contains("staging/unknown/"));
+    verify(s3Repository, times(1)).listObjects("bucket", "staging/unknown/", "/");
+  }
+
+  @Test
+  public void read_moreThanMaxPrefixes_forgetsLeastRecentlyUsed() {
+    LazyPrefixCache cache = cache(1000);
+    for (int i = 0; i <= LazyPrefixCache.MAX_PREFIXES; i++) {
+      cache.read(Collections.singletonList("unknown-" + i + "/"), () -> null);
+    }
+
+    Assert.assertFalse(cache.contains("unknown-0/"));
+    Assert.assertTrue(cache.contains("unknown-" + LazyPrefixCache.MAX_PREFIXES + "/"));
+  }
+
+  @Test
+  public void read_versionChangedWhileFetching_refreshesAndStopsFetching() {
+    AtomicInteger refreshes = new AtomicInteger();
+    LazyPrefixCache cache = new LazyPrefixCache(s3Repository, "bucket", "v1", directory, 1000,
+        refreshes::incrementAndGet);
+    Mockito.when(s3Repository.getBucketVersion("bucket")).thenReturn(Optional.of("v2"));
+    for (String prefix : new String[] {"staging/bar/", "prod/"}) {
+      try {
+        cache.read(Collections.singletonList(prefix), () -> null);
+        Assert.fail("Fetched " + prefix + " for v1");
+      } catch (IllegalStateException e) {
+        Assert.assertFalse(cache.contains(prefix));
+      }
+    }
+
+    Assert.assertEquals(1, refreshes.get());
+    verify(s3Repository, times(1)).expireBucketVersion("bucket");
+    verify(s3Repository, never()).listObjects("bucket", "prod/", "/");
+  }
+
+  private LazyPrefixCache cache(long maxBytes) {
+    return new LazyPrefixCache(s3Repository, "bucket", "v1", directory, maxBytes, () -> { });
+  }
+}
@@ -0,0 +1,135 @@
+package com.spring.cloud.config.s3.repository;
+
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.spring.cloud.config.s3.repository.MultiBucketEnvironmentRepository.Tenant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.server.environment.SearchPathLocator.Locations;
+
+/**
+ * Tests for {@link MultiBucketEnvironmentRepository}
+ *
+ * @author Nagesh Salunke
+ */
+public class MultiBucketEnvironmentRepositoryTests {
+
+  private S3EnvironmentRepository defaultRepository;
+
+  private S3EnvironmentRepository paymentsRepository;
+
+  private S3EnvironmentRepository releasesRepository;
+
+  private MultiBucketEnvironmentRepository repository;
+
+  private ExecutorService executor = Executors.newSingleThreadExecutor();
+
+  @Before
+  public void setUp() {
+    defaultRepository = mockRepository("default");
+    paymentsRepository = mockRepository("payments");
+    releasesRepository = mockRepository("releases");
+    repository = new MultiBucketEnvironmentRepository(defaultRepository, Arrays.asList(
+        new Tenant("payments", Arrays.asList("payments-*", "billing"), Collections.emptyList(),
+            paymentsRepository, 0, 1, 50),
+        new Tenant("releases", Collections.emptyList(), Collections.singletonList("release-*"),
+            releasesRepository, 0, 1, 50)));
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void findOne_matchingApplication_servedFromTenantBucket() {
+    Environment environment = repository.findOne("payments-api,billing", "prod", "master");
+    Assert.assertEquals("payments", environment.getVersion());
+    Assert.assertArrayEquals(new String[] {"payments"},
+        repository.getLocations("billing", "prod", "master").getLocations());
+    Assert.assertEquals("releases", repository.findOne("orders", "prod", "release-7").getVersion());
+    verify(defaultRepository, never()).findOne("payments-api,billing", "prod", "master");
+  }
+
+  @Test
+  public void findOne_noTenantMatches_servedFromDefaultBucket() {
+    Assert.assertEquals("default", repository.findOne("orders", "prod", "master").getVersion());
+    Assert.assertEquals("default", repository.findOne("orders,billing", "prod", null)
+        .getVersion());
+    Assert.assertArrayEquals(new String[] {"default"},
+        repository.getLocations("orders", "prod", "master").getLocations());
+    Assert.assertEquals("payments", repository.route("payments-api", "release-1").getName());
+  }
+
+  @Test
+  public void findOne_tenantAtConcurrencyLimit_rejectedWithoutBlockingOthers() throws Exception {
+    CountDownLatch serving = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    when(paymentsRepository.findOne("billing", "prod", "master")).thenAnswer(k -> {
+      serving.countDown();
+      release.await(5, TimeUnit.SECONDS);
+      return new Environment("billing", "prod");
+    });
+    executor.submit(() -> repository.findOne("billing", "prod", "master"));
+    Assert.assertTrue(serving.await(5, TimeUnit.SECONDS));
+    try {
+      repository.findOne("billing", "prod", "master");
+      Assert.fail("Expected the request to be rejected");
+    } catch (IllegalStateException e) {
+      Assert.assertTrue(e.getMessage().contains("payments"));
+    }
+    Assert.assertEquals("default", repository.findOne("orders", "prod", "master").getVersion());
+    release.countDown();
+  }
+
+  @Test
+  public void getServingVersion_routedLikeRequests() {
+    Assert.assertEquals("payments", repository.getServingVersion("billing", "master"));
+    Assert.assertEquals("default", repository.getServingVersion("orders", null));
+  }
+
+  @Test
+  public void getContentVersion_routedLikeRequests() {
+    Assert.assertEquals("payments",
+        repository.getContentVersion("billing", "staging", "master"));
+    Assert.assertEquals("default", repository.getContentVersion("orders", "staging", null));
+  }
+
+  @Test
+  public void destroy_tenantRepositoriesDestroyed() {
+    repository.destroy();
+    verify(paymentsRepository, times(1)).destroy();
+    verify(releasesRepository, times(1)).destroy();
+    verify(defaultRepository, never()).destroy();
+  }
+
+  private static S3EnvironmentRepository mockRepository(String version) {
+    S3EnvironmentRepository repository = Mockito.mock(S3EnvironmentRepository.class);
+    when(repository.findOne(Mockito.anyString(), Mockito.anyString(), Mockito.any()))
+        .thenAnswer(k -> {
+          Environment environment = new Environment(k.getArgument(0), k.<String>getArgument(1));
+          environment.setVersion(version);
+          return environment;
+        });
+    when(repository.getServingVersion(Mockito.any())).thenReturn(version);
+    when(repository.getContentVersion(Mockito.anyString(), Mockito.anyString(), Mockito.any()))
+        .thenReturn(version);
+    when(repository.getLocations(Mockito.anyString(), Mockito.anyString(), Mockito.any()))
+        .thenAnswer(k -> new Locations(k.getArgument(0), k.getArgument(1), k.getArgument(2),
+            version, new String[] {version}));
+    return repository;
+  }
+}
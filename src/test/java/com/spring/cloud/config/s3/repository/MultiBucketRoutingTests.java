@@ -0,0 +1,65 @@
+package com.spring.cloud.config.s3.repository;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.spring.cloud.config.s3.ConfigServerTestUtils;
+import com.spring.cloud.config.s3.exceptions.SystemException;
+import java.io.File;
+import java.util.Optional;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.server.environment.EnvironmentRepository;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * Tests for tenant buckets configured in the application, see
+ * {@link MultiBucketEnvironmentRepository}.
+ *
+ * @author Nagesh Salunke
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+    "spring.cloud.config.server.s3.uri=s3://default-bucket",
+    "spring.cloud.config.server.s3.tenants.payments.uri=s3://payments-bucket",
+    "spring.cloud.config.server.s3.tenants.payments.applications=payments-*,billing"})
+@TestPropertySource(locations = "classpath:bootstrap-test.properties")
+public class MultiBucketRoutingTests {
+
+  @Autowired
+  private EnvironmentRepository environmentRepository;
+
+  @MockBean
+  private S3Repository s3Repository;
+
+  @Test
+  public void findOne_tenantApplication_servedFromTenantBucket() throws SystemException {
+    Mockito.doAnswer(k -> {
+      ConfigServerTestUtils.prepareLocalRepo(k.<File>getArgument(1), "config-repo");
+      return null;
+    }).when(s3Repository).downloadBucket(anyString(), any());
+    when(s3Repository.getBucketVersion("payments-bucket")).thenReturn(Optional.of("p1"));
+    when(s3Repository.getBucketVersion("default-bucket")).thenReturn(Optional.of("d1"));
+
+    Assert.assertTrue(environmentRepository instanceof MultiBucketEnvironmentRepository);
+    Environment environment = environmentRepository.findOne("payments-api", "staging", "master");
+    Assert.assertEquals("p1", environment.getVersion());
+    Assert.assertEquals(2, environment.getPropertySources().size());
+    verify(s3Repository, times(1)).downloadBucket(eq("payments-bucket"), any());
+    verify(s3Repository, never()).downloadBucket(eq("default-bucket"), any());
+    Assert.assertEquals("d1", environmentRepository.findOne("bar", "staging", "master")
+        .getVersion());
+  }
+}
@@ -2,6 +2,9 @@ package com.spring.cloud.config.s3.repository;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import com.spring.cloud.config.s3.AbstractTest;
 import com.spring.cloud.config.s3.ConfigServerTestUtils;
@@ -10,12 +13,17 @@ import com.spring.cloud.config.s3.exceptions.SystemException;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Resource;
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -56,6 +64,11 @@ public class S3EnvironmentRepositoryConcurrencyTests extends AbstractTest {
     }
   }
 
+  @After
+  public void tearDown() {
+    this.s3EnvironmentRepository.destroy();
+  }
+
   @Test
   public void getConfigConcurrentAccess_withValidRepo_getsHierarchicalConfig()
       throws ExecutionException, InterruptedException, SystemException {
@@ -117,6 +130,127 @@ public class S3EnvironmentRepositoryConcurrencyTests extends AbstractTest {
     Assert.assertEquals(0, errorCount.get());
   }
 
+  @Test
+  public void getConfigDuringSlowRefresh_withRefreshOnRequest_servesCurrentSnapshot()
+      throws Exception {
+    CountDownLatch downloading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    mockSlowPrepareLocalRepo(downloading, release);
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+    s3EnvironmentRepository.refresh();
+
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v2"));
+    s3EnvironmentRepository.setRefreshWaitTimeout(50);
+    CompletableFuture<String> refresh = s3EnvironmentRepository.refreshAsync();
+    Assert.assertTrue(downloading.await(5, TimeUnit.SECONDS));
+
+    Environment environment = s3EnvironmentRepository.findOne("bar", "staging", "master");
+    Assert.assertEquals("v1", environment.getVersion());
+    Assert.assertEquals(3, environment.getPropertySources().size());
+    Assert.assertFalse(refresh.isDone());
+
+    release.countDown();
+    Assert.assertEquals("v2", refresh.get(5, TimeUnit.SECONDS));
+    Assert.assertEquals("v2", s3EnvironmentRepository.getConfigVersion());
+  }
+
+  @Test
+  public void getConfigDuringSlowRefresh_withoutRefreshOnRequest_doesNotWait()
+      throws Exception {
+    CountDownLatch downloading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    mockSlowPrepareLocalRepo(downloading, release);
+    s3EnvironmentRepository.setRefreshOnRequest(false);
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+    s3EnvironmentRepository.refresh();
+
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v2"));
+    CompletableFuture<String> refresh = s3EnvironmentRepository.refreshAsync();
+    Assert.assertTrue(downloading.await(5, TimeUnit.SECONDS));
+
+    Environment environment = s3EnvironmentRepository.findOne("bar", "staging", "master");
+    Assert.assertEquals("v1", environment.getVersion());
+    Assert.assertEquals("v1", s3EnvironmentRepository.getLocations("bar", "staging", "master")
+        .getVersion());
+
+    release.countDown();
+    refresh.get(5, TimeUnit.SECONDS);
+    Assert.assertEquals("v2", s3EnvironmentRepository.getConfigVersion());
+  }
+
+  @Test
+  public void concurrentRefreshTriggers_duringRefresh_shareOneDownload() throws Exception {
+    CountDownLatch downloading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    mockSlowPrepareLocalRepo(downloading, release);
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+    s3EnvironmentRepository.refresh();
+
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v2"));
+    CompletableFuture<String> first = s3EnvironmentRepository.refreshAsync();
+    Assert.assertTrue(downloading.await(5, TimeUnit.SECONDS));
+    List<CompletableFuture<String>> triggers = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      triggers.add(s3EnvironmentRepository.refreshAsync());
+    }
+    release.countDown();
+
+    for (CompletableFuture<String> trigger : triggers) {
+      Assert.assertSame(first, trigger);
+      Assert.assertEquals("v2", trigger.get(5, TimeUnit.SECONDS));
+    }
+    verify(s3Repository, times(2)).downloadBucket(anyString(), any());
+  }
+
+  @Test
+  public void refreshAfterChange_duringRefresh_queuesOneFollowUp() throws Exception {
+    CountDownLatch downloading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    mockSlowPrepareLocalRepo(downloading, release);
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+    Assert.assertEquals("v1", s3EnvironmentRepository.refreshAfterChange().get(5,
+        TimeUnit.SECONDS));
+
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v2"));
+    CompletableFuture<String> running = s3EnvironmentRepository.refreshAsync();
+    Assert.assertTrue(downloading.await(5, TimeUnit.SECONDS));
+    //Change uploaded after the running refresh checked the version.
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v3"));
+    CompletableFuture<String> followUp = s3EnvironmentRepository.refreshAfterChange();
+    Assert.assertNotSame(running, followUp);
+    Assert.assertSame(followUp, s3EnvironmentRepository.refreshAfterChange());
+    release.countDown();
+
+    //The running refresh stamps the version it read before downloading.
+    Assert.assertEquals("v2", running.get(5, TimeUnit.SECONDS));
+    Assert.assertEquals("v3", followUp.get(5, TimeUnit.SECONDS));
+    //The follow-up downloads the change the running refresh may have missed.
+    verify(s3Repository, times(3)).downloadBucket(anyString(), any());
+    Assert.assertEquals("v3", s3EnvironmentRepository.getConfigVersion());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void refresh_withFailingDownload_rethrowsFromCaller() throws SystemException {
+    Mockito.doAnswer(k -> {
+      throw new SystemException("Exception when downloading s3 bucket.");
+    }).when(s3Repository).downloadBucket(anyString(), any());
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+    s3EnvironmentRepository.refresh();
+  }
+
+  private void mockSlowPrepareLocalRepo(CountDownLatch downloading, CountDownLatch release)
+      throws SystemException {
+    AtomicInteger downloads = new AtomicInteger();
+    Mockito.doAnswer(k -> {
+      if (downloads.incrementAndGet() > 1) {
+        downloading.countDown();
+        release.await(5, TimeUnit.SECONDS);
+      }
+      ConfigServerTestUtils.prepareLocalRepo((File) k.getArguments()[1], "config-repo");
+      return null;
+    }).when(s3Repository).downloadBucket(anyString(), any());
+  }
+
   private void mockPrepareLocalRepo() throws SystemException {
     Mockito.doAnswer(k -> {
       Object[] args = k.getArguments();
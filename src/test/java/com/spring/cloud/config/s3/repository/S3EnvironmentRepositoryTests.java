@@ -2,14 +2,28 @@ package com.spring.cloud.config.s3.repository;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.spring.cloud.config.s3.AbstractTest;
 import com.spring.cloud.config.s3.ConfigServerTestUtils;
 import com.spring.cloud.config.s3.exceptions.SystemException;
 import com.spring.cloud.config.s3.config.S3EnvironmentRepositoryProperties;
+import com.spring.cloud.config.s3.config.S3EnvironmentRepositoryProperties.SyncMode;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import javax.annotation.Resource;
 import org.junit.Assert;
@@ -18,6 +32,7 @@ import org.junit.Test;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.cloud.config.environment.Environment;
+import org.springframework.cloud.config.server.environment.NoSuchLabelException;
 import org.springframework.cloud.config.server.environment.SearchPathLocator.Locations;
 import org.springframework.core.env.StandardEnvironment;
 import org.springframework.util.FileSystemUtils;
@@ -126,6 +141,424 @@ public class S3EnvironmentRepositoryTests extends AbstractTest {
     Assert.assertEquals(3, locations.getLocations().length);
   }
 
+  @Test
+  public void getConfigLocations_refreshOnRequestDisabled_servesSnapshotWithoutS3()
+      throws SystemException {
+    mockPrepareLocalRepo();
+    s3EnvironmentRepository.setRefreshOnRequest(false);
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+    //First request bootstraps the snapshot.
+    Locations locations = s3EnvironmentRepository.getLocations("bar", "staging", "master");
+    Assert.assertEquals("v1", locations.getVersion());
+
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v2"));
+    for (int i = 0; i < 5; i++) {
+      locations = s3EnvironmentRepository.getLocations("bar", "staging", "master");
+      Assert.assertEquals("v1", locations.getVersion());
+      Assert.assertEquals(3, locations.getLocations().length);
+    }
+    verify(s3Repository, times(1)).getBucketVersion(anyString());
+    verify(s3Repository, times(1)).downloadBucket(anyString(), any());
+
+    //Poller publishes the new version.
+    s3EnvironmentRepository.refresh();
+    locations = s3EnvironmentRepository.getLocations("bar", "staging", "master");
+    Assert.assertEquals("v2", locations.getVersion());
+  }
+
+  @Test
+  public void getConfigRepeated_withValidRepo_servedFromCacheUntilNewVersion()
+      throws SystemException {
+    mockPrepareLocalRepo();
+    s3EnvironmentRepository.setRefreshOnRequest(false);
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+    Environment first = s3EnvironmentRepository.findOne("bar", "staging", "master");
+    Environment second = s3EnvironmentRepository.findOne("bar", "staging", "master");
+    Assert.assertNotSame(first, second);
+    Assert.assertEquals(first.getPropertySources(), second.getPropertySources());
+    Assert.assertEquals(1, s3EnvironmentRepository.getEnvironmentCache().getHits());
+    Assert.assertEquals(1, s3EnvironmentRepository.getEnvironmentCache().getMisses());
+    Assert.assertEquals("v1", second.getVersion());
+
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v2"));
+    s3EnvironmentRepository.refresh();
+    //The requested environment is resolved against v2 before it is published.
+    Assert.assertEquals(1, s3EnvironmentRepository.getEnvironmentCache().size());
+    Environment third = s3EnvironmentRepository.findOne("bar", "staging", "master");
+    Assert.assertEquals("v2", third.getVersion());
+    Assert.assertEquals(3, third.getPropertySources().size());
+    Assert.assertEquals(2, s3EnvironmentRepository.getEnvironmentCache().getHits());
+  }
+
+  @Test
+  public void refresh_prewarmDisabled_newVersionPublishedCold() throws SystemException {
+    properties.setPrewarmSize(0);
+    try {
+      s3EnvironmentRepository = new S3EnvironmentRepository(standardEnvironment, properties,
+          s3Repository);
+      s3EnvironmentRepository.setUri("s3://anything");
+      s3EnvironmentRepository.setBasedir(basedir);
+      mockPrepareLocalRepo();
+      s3EnvironmentRepository.setRefreshOnRequest(false);
+      when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+      s3EnvironmentRepository.findOne("bar", "staging", "master");
+      mockChangedLocalRepo("staging/bar/bar-staging.yml");
+      when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v2"));
+      s3EnvironmentRepository.refresh();
+      Assert.assertEquals(0, s3EnvironmentRepository.getEnvironmentCache().size());
+    } finally {
+      properties.setPrewarmSize(100);
+    }
+  }
+
+  @Test
+  public void refresh_otherApplicationChanged_unchangedEnvironmentsKept()
+      throws SystemException {
+    properties.setPrewarmSize(0);
+    try {
+      s3EnvironmentRepository = new S3EnvironmentRepository(standardEnvironment, properties,
+          s3Repository);
+      s3EnvironmentRepository.setUri("s3://anything");
+      s3EnvironmentRepository.setBasedir(basedir);
+      mockPrepareLocalRepo();
+      s3EnvironmentRepository.setRefreshOnRequest(false);
+      when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+      s3EnvironmentRepository.findOne("bar", "staging", "master");
+      s3EnvironmentRepository.findOne("foo", "staging", "master");
+      String bar = s3EnvironmentRepository.getContentVersion("bar", "staging", "master");
+      String foo = s3EnvironmentRepository.getContentVersion("foo", "staging", "master");
+      Assert.assertNotEquals(bar, foo);
+
+      mockChangedLocalRepo("staging/bar/bar-staging.yml");
+      when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v2"));
+      s3EnvironmentRepository.refresh();
+      Assert.assertEquals(1, s3EnvironmentRepository.getEnvironmentCache().size());
+      Assert.assertNotEquals(bar,
+          s3EnvironmentRepository.getContentVersion("bar", "staging", "master"));
+      Assert.assertEquals(foo,
+          s3EnvironmentRepository.getContentVersion("foo", "staging", "master"));
+      Environment kept = s3EnvironmentRepository.findOne("foo", "staging", "master");
+      Assert.assertEquals("v2", kept.getVersion());
+      Assert.assertEquals(1, s3EnvironmentRepository.getEnvironmentCache().getHits());
+
+      //Files of every application change all content versions.
+      mockChangedLocalRepo("application.yml");
+      when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v3"));
+      s3EnvironmentRepository.refresh();
+      Assert.assertEquals(0, s3EnvironmentRepository.getEnvironmentCache().size());
+      Assert.assertNotEquals(foo,
+          s3EnvironmentRepository.getContentVersion("foo", "staging", "master"));
+    } finally {
+      properties.setPrewarmSize(100);
+    }
+  }
+
+  @Test
+  public void getContentVersion_versionLabel_label() {
+    s3EnvironmentRepository.setLabelsEnabled(true);
+    Assert.assertEquals("1.2.0", s3EnvironmentRepository.getContentVersion("bar", "staging",
+        "1.2.0"));
+  }
+
+  @Test
+  public void refresh_newVersions_servedFromOwnSnapshotDirs() throws SystemException {
+    mockPrepareLocalRepo();
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+    Locations v1 = s3EnvironmentRepository.getLocations("bar", "staging", "master");
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v2"));
+    Locations v2 = s3EnvironmentRepository.getLocations("bar", "staging", "master");
+    Assert.assertNotEquals(v1.getLocations()[0], v2.getLocations()[0]);
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v3"));
+    s3EnvironmentRepository.refresh();
+    //Current and previous snapshots are kept, older ones are reclaimed.
+    Assert.assertEquals(2, basedir.listFiles(File::isDirectory).length);
+  }
+
+  @Test
+  public void refresh_downloadFails_stagingDirDiscarded() throws SystemException {
+    mockPrepareLocalRepo();
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+    s3EnvironmentRepository.refresh();
+    Mockito.doAnswer(k -> {
+      throw new SystemException("Exception when downloading s3 bucket.");
+    }).when(s3Repository).downloadBucket(anyString(), any());
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v2"));
+    try {
+      s3EnvironmentRepository.refresh();
+      Assert.fail("Refresh should fail");
+    } catch (IllegalStateException e) {
+      Assert.assertEquals("v1", s3EnvironmentRepository.getConfigVersion());
+    }
+    Assert.assertEquals(1, basedir.listFiles(File::isDirectory).length);
+  }
+
+  @Test
+  public void refresh_incrementalSync_downloadsOnlyChangedObjects() throws SystemException {
+    mockBucketObjects("e1");
+    s3EnvironmentRepository.setSyncMode(SyncMode.INCREMENTAL);
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+    Environment environment = s3EnvironmentRepository.findOne("bar", "staging", "master");
+    Assert.assertEquals(3, environment.getPropertySources().size());
+    verify(s3Repository, times(3)).downloadObject(anyString(), anyString(), any());
+
+    //Only bar-staging.yml changed.
+    mockBucketObjects("e2");
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v2"));
+    environment = s3EnvironmentRepository.findOne("bar", "staging", "master");
+    Assert.assertEquals("v2", environment.getVersion());
+    Assert.assertEquals(3, environment.getPropertySources().size());
+    verify(s3Repository, times(4)).downloadObject(anyString(), anyString(), any());
+
+    //Restart diffs against the persisted manifest.
+    S3EnvironmentRepository restarted = new S3EnvironmentRepository(standardEnvironment,
+        properties, s3Repository);
+    restarted.setUri("s3://anything");
+    restarted.setBasedir(basedir);
+    restarted.setSyncMode(SyncMode.INCREMENTAL);
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v3"));
+    environment = restarted.findOne("bar", "staging", "master");
+    Assert.assertEquals("v3", environment.getVersion());
+    Assert.assertEquals(3, environment.getPropertySources().size());
+    verify(s3Repository, times(4)).downloadObject(anyString(), anyString(), any());
+    Assert.assertEquals(1, basedir.listFiles(File::isDirectory).length);
+  }
+
+  @Test
+  public void afterPropertiesSet_intactPersistedSnapshot_servedWithoutDownload()
+      throws SystemException, IOException {
+    mockPrepareLocalRepo();
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+    s3EnvironmentRepository.refresh();
+
+    S3EnvironmentRepository restarted = restartedRepository();
+    Assert.assertEquals("v1", restarted.getConfigVersion());
+    Environment environment = restarted.findOne("bar", "staging", "master");
+    Assert.assertEquals("v1", environment.getVersion());
+    Assert.assertEquals(3, environment.getPropertySources().size());
+    verify(s3Repository, times(1)).downloadBucket(anyString(), any());
+  }
+
+  @Test
+  public void afterPropertiesSet_outdatedPersistedSnapshot_downloadsOnFirstRequest()
+      throws SystemException, IOException {
+    mockPrepareLocalRepo();
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+    s3EnvironmentRepository.refresh();
+
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v2"));
+    S3EnvironmentRepository restarted = restartedRepository();
+    Assert.assertNull(restarted.getConfigVersion());
+    Assert.assertEquals("v2", restarted.refresh());
+    verify(s3Repository, times(2)).downloadBucket(anyString(), any());
+  }
+
+  @Test
+  public void afterPropertiesSet_tamperedPersistedSnapshot_downloadsOnFirstRequest()
+      throws SystemException, IOException {
+    mockPrepareLocalRepo();
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+    s3EnvironmentRepository.refresh();
+    File snapshotDir = basedir.listFiles(File::isDirectory)[0];
+    Files.delete(new File(snapshotDir, "application.yml").toPath());
+
+    S3EnvironmentRepository restarted = restartedRepository();
+    Assert.assertNull(restarted.getConfigVersion());
+    Environment environment = restarted.findOne("bar", "staging", "master");
+    Assert.assertEquals(3, environment.getPropertySources().size());
+    verify(s3Repository, times(2)).downloadBucket(anyString(), any());
+  }
+
+  @Test
+  public void afterPropertiesSet_defaultVersionPersisted_notRestored() throws SystemException {
+    mockPrepareLocalRepo();
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.empty());
+    s3EnvironmentRepository.refresh();
+    Assert.assertNull(restartedRepository().getConfigVersion());
+  }
+
+  @Test
+  public void getConfigVersion_nothingPublished_nullVersion() {
+    Assert.assertNull(s3EnvironmentRepository.getConfigVersion());
+  }
+
+  private S3EnvironmentRepository restartedRepository() {
+    S3EnvironmentRepository restarted = new S3EnvironmentRepository(standardEnvironment,
+        properties, s3Repository);
+    restarted.setUri("s3://anything");
+    restarted.setBasedir(basedir);
+    restarted.afterPropertiesSet();
+    return restarted;
+  }
+
+  @Test
+  public void findOne_indexedAndNative_sameEnvironment() throws SystemException {
+    s3EnvironmentRepository.setIndexPropertySources(true);
+    mockPrepareLocalRepo();
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+    Environment indexed = s3EnvironmentRepository.findOne("bar", "staging", "master");
+    s3EnvironmentRepository.setIndexPropertySources(false);
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v2"));
+    Environment resolved = s3EnvironmentRepository.findOne("bar", "staging", "master");
+    Assert.assertEquals(3, indexed.getPropertySources().size());
+    for (int i = 0; i < indexed.getPropertySources().size(); i++) {
+      Assert.assertEquals(indexed.getPropertySources().get(i).getName(),
+          resolved.getPropertySources().get(i).getName());
+      Assert.assertEquals(indexed.getPropertySources().get(i).getSource(),
+          resolved.getPropertySources().get(i).getSource());
+    }
+  }
+
+  @Test
+  public void refresh_packedMode_fetchesVersionArchive() throws SystemException {
+    s3EnvironmentRepository.setSyncMode(SyncMode.PACKED);
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+    Mockito.doAnswer(k -> {
+      ConfigServerTestUtils.prepareLocalRepo(k.<Path>getArgument(2).toFile(), "config-repo");
+      return true;
+    }).when(s3Repository).downloadPack(anyString(), Mockito.eq("snapshots/v1.zip"), any());
+    Environment environment = s3EnvironmentRepository.findOne("bar", "staging", "master");
+    Assert.assertEquals("v1", environment.getVersion());
+    Assert.assertEquals(3, environment.getPropertySources().size());
+    verify(s3Repository, times(0)).downloadBucket(anyString(), any());
+  }
+
+  @Test
+  public void refresh_packedModeWithoutArchive_downloadsObjects() throws SystemException {
+    s3EnvironmentRepository.setSyncMode(SyncMode.PACKED);
+    mockPrepareLocalRepo();
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+    Assert.assertEquals("v1", s3EnvironmentRepository.refresh());
+    verify(s3Repository, times(1)).downloadPack(anyString(), anyString(), any());
+    verify(s3Repository, times(1)).downloadBucket(anyString(), any());
+  }
+
+  @Test
+  public void findOne_lazyMode_fetchesOnlySearchPathPrefixes() throws SystemException {
+    s3EnvironmentRepository.setSyncMode(SyncMode.LAZY);
+    mockBucketObjects("e1");
+    List<S3ObjectSummary> summaries = s3Repository.listObjects("anything");
+    when(s3Repository.listObjects(anyString(), any(), any())).thenAnswer(k -> {
+      String prefix = k.getArgument(1) == null ? "" : k.getArgument(1);
+      List<S3ObjectSummary> listed = new ArrayList<>();
+      for (S3ObjectSummary summary : summaries) {
+        if (summary.getKey().startsWith(prefix)
+            && summary.getKey().indexOf('/', prefix.length()) < 0) {
+          listed.add(summary);
+        }
+      }
+      return listed;
+    });
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+
+    Environment environment = s3EnvironmentRepository.findOne("bar", "staging", "master");
+    Assert.assertEquals("v1", environment.getVersion());
+    Assert.assertEquals(3, environment.getPropertySources().size());
+    s3EnvironmentRepository.findOne("foo", "staging", "master");
+    Assert.assertEquals(3,
+        s3EnvironmentRepository.getLocations("bar", "staging", "master").getLocations().length);
+
+    verify(s3Repository, times(0)).downloadBucket(anyString(), any());
+    verify(s3Repository, times(1)).listObjects("anything", null, "/");
+    verify(s3Repository, times(1)).listObjects("anything", "staging/", "/");
+    verify(s3Repository, times(1)).listObjects("anything", "staging/bar/", "/");
+    verify(s3Repository, times(1)).listObjects("anything", "staging/foo/", "/");
+    //Files are fetched on demand, environments are versioned by the snapshot.
+    Assert.assertEquals("v1",
+        s3EnvironmentRepository.getContentVersion("bar", "staging", "master"));
+  }
+
+  @Test
+  public void findOne_lazyModeNameLeavingDirectory_rejected() throws SystemException {
+    s3EnvironmentRepository.setSyncMode(SyncMode.LAZY);
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+    for (String name : new String[] {"..", "../bar", "staging/bar", "bar\\x"}) {
+      try {
+        s3EnvironmentRepository.findOne(name, "staging", "master");
+        Assert.fail("Accepted " + name);
+      } catch (IllegalArgumentException e) {
+        Assert.assertEquals("Invalid name: " + name, e.getMessage());
+      }
+    }
+    verify(s3Repository, never()).listObjects(anyString(), any(), any());
+  }
+
+  @Test
+  public void findOne_versionLabel_servedFromLabelSnapshot() throws SystemException {
+    s3EnvironmentRepository.setLabelsEnabled(true);
+    mockPrepareLocalRepo();
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v2"));
+    Mockito.doAnswer(k -> {
+      ConfigServerTestUtils.prepareLocalRepo(k.<Path>getArgument(2).toFile(), "config-repo");
+      return 3;
+    }).when(s3Repository).downloadPrefix(anyString(), Mockito.eq("versions/v1/"), any());
+
+    Environment pinned = s3EnvironmentRepository.findOne("bar", "staging", "v1");
+    Assert.assertEquals("v1", pinned.getVersion());
+    Assert.assertEquals("v1", pinned.getLabel());
+    Assert.assertEquals(3, pinned.getPropertySources().size());
+    Assert.assertEquals("v1",
+        s3EnvironmentRepository.getLocations("bar", "staging", "v1").getVersion());
+    Assert.assertEquals("v2",
+        s3EnvironmentRepository.findOne("bar", "staging", "master").getVersion());
+    Assert.assertEquals("v2", s3EnvironmentRepository.findOne("bar", "staging", null)
+        .getVersion());
+    verify(s3Repository, times(1)).downloadPrefix(anyString(), anyString(), any());
+    Assert.assertEquals("v1", s3EnvironmentRepository.getServingVersion("v1"));
+    Assert.assertEquals("v2", s3EnvironmentRepository.getServingVersion("master"));
+  }
+
+  @Test(expected = NoSuchLabelException.class)
+  public void findOne_unknownVersionLabel_noSuchLabel() throws SystemException {
+    s3EnvironmentRepository.setLabelsEnabled(true);
+    s3EnvironmentRepository.findOne("bar", "staging", "unknown");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void findOne_versionLabelDownloadFails_illegalState() throws SystemException {
+    s3EnvironmentRepository.setLabelsEnabled(true);
+    when(s3Repository.downloadPrefix(anyString(), anyString(), any()))
+        .thenThrow(new SystemException("failed"));
+    s3EnvironmentRepository.findOne("bar", "staging", "v1");
+  }
+
+  private void mockBucketObjects(String barStagingEtag) throws SystemException {
+    File repo = new File("src/test/resources/testdata/config-repo");
+    List<S3ObjectSummary> summaries = new ArrayList<>();
+    for (String key : new String[] {"application.yml", "staging/application-staging.yml",
+        "staging/bar/bar-staging.yml"}) {
+      S3ObjectSummary summary = new S3ObjectSummary();
+      summary.setKey(key);
+      summary.setETag(key.startsWith("staging/bar") ? barStagingEtag : "e1");
+      summary.setSize(new File(repo, key).length());
+      summaries.add(summary);
+    }
+    when(s3Repository.listObjects(anyString())).thenReturn(summaries);
+    Mockito.doAnswer(k -> {
+      File destination = k.getArgument(2);
+      destination.getParentFile().mkdirs();
+      Files.copy(new File(repo, (String) k.getArgument(1)).toPath(), destination.toPath());
+      return null;
+    }).when(s3Repository).downloadObject(anyString(), anyString(), any());
+    Mockito.doAnswer(k -> {
+      Path destDir = k.getArgument(2);
+      for (S3ObjectSummary summary : k.<Collection<S3ObjectSummary>>getArgument(1)) {
+        s3Repository.downloadObject(k.getArgument(0), summary.getKey(),
+            destDir.resolve(summary.getKey()).toFile());
+      }
+      return null;
+    }).when(s3Repository).downloadObjects(anyString(), any(), any());
+  }
+
+  private void mockChangedLocalRepo(String changedFile) throws SystemException {
+    Mockito.doAnswer(k -> {
+      File destDir = k.getArgument(1);
+      ConfigServerTestUtils.prepareLocalRepo(destDir, "config-repo");
+      Files.write(new File(destDir, changedFile).toPath(),
+          "\nchanged: true\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+      return null;
+    }).when(s3Repository).downloadBucket(anyString(), any());
+  }
+
   private void mockPrepareLocalRepo() throws SystemException {
     Mockito.doAnswer(k -> {
       Object[] args = k.getArguments();
@@ -134,4 +567,43 @@ public class S3EnvironmentRepositoryTests extends AbstractTest {
       return null;
     }).when(s3Repository).downloadBucket(anyString(), any());
   }
+
+  @Test
+  public void refreshAndFindOne_withMeterRegistry_metricsRecorded() throws SystemException {
+    MeterRegistry registry = new SimpleMeterRegistry();
+    s3EnvironmentRepository = new S3EnvironmentRepository(standardEnvironment, properties,
+        s3Repository, registry);
+    s3EnvironmentRepository.setUri("s3://anything");
+    s3EnvironmentRepository.setBasedir(basedir);
+    mockPrepareLocalRepo();
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+    s3EnvironmentRepository.findOne("bar", "staging", "master");
+    s3EnvironmentRepository.findOne("bar", "staging", "master");
+
+    Assert.assertEquals(1, registry.get("s3.config.refresh").tag("outcome", "updated").timer()
+        .count());
+    Assert.assertEquals(1, registry.get("s3.config.refresh").tag("outcome", "unchanged").timer()
+        .count());
+    for (String phase : new String[] {"check", "download", "publish"}) {
+      Assert.assertTrue(registry.get("s3.config.refresh.phase").tag("phase", phase).timer()
+          .count() > 0);
+    }
+    Assert.assertEquals(1, registry.get("s3.config.find").tag("application", "bar")
+        .tag("cache", "miss").timer().count());
+    Assert.assertEquals(1, registry.get("s3.config.find").tag("application", "bar")
+        .tag("cache", "hit").timer().count());
+    Assert.assertEquals(0.5, registry.get("s3.config.cache.hit.ratio").gauge().value(), 0);
+    //Names without files of their own share one tag value.
+    s3EnvironmentRepository.findOne("random-name", "staging", "master");
+    s3EnvironmentRepository.findOne("baz", "staging", "master");
+    Assert.assertEquals(2, registry.get("s3.config.find").tag("application", "unknown")
+        .tag("cache", "miss").timer().count());
+    Assert.assertTrue(registry.find("s3.config.find").tag("application", "baz").timers()
+        .isEmpty());
+
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v2"));
+    s3EnvironmentRepository.refresh();
+    Assert.assertEquals(1, registry.get("s3.config.prewarm").timer().count());
+    Assert.assertEquals(1, registry.get("s3.config.prewarm.coverage").gauge().value(), 0);
+  }
 }
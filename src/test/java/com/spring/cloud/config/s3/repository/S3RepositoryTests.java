@@ -5,13 +5,32 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.when;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.Headers;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.ObjectMetadata;
-import com.amazonaws.services.s3.transfer.MultipleFileDownload;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.transfer.Download;
 import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.util.BinaryUtils;
 import com.spring.cloud.config.s3.AbstractTest;
+import com.spring.cloud.config.s3.config.S3EnvironmentRepositoryProperties;
 import com.spring.cloud.config.s3.exceptions.SystemException;
+import com.spring.cloud.config.s3.snapshot.SnapshotArchive;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.TreeMap;
@@ -19,8 +38,10 @@ import javax.annotation.Resource;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.util.FileSystemUtils;
 
 /**
  * Tests for {@link S3Repository}
@@ -47,6 +68,18 @@ public class S3RepositoryTests extends AbstractTest {
   @Resource
   private S3Repository s3Repository;
 
+  /**
+   * Repository properties.
+   */
+  @Resource
+  private S3EnvironmentRepositoryProperties properties;
+
+  /**
+   * Registry metrics are published to.
+   */
+  @Resource
+  private MeterRegistry meterRegistry;
+
   @Before
   @Override
   public void setUp() throws Exception {
@@ -55,23 +88,173 @@ public class S3RepositoryTests extends AbstractTest {
   @Test
   public void downloadBucket_validBucketDetails_noException()
       throws InterruptedException, SystemException {
-    MultipleFileDownload download = Mockito.mock(MultipleFileDownload.class);
-    Mockito.doNothing().when(download).waitForCompletion();
-    when(transferManager.downloadDirectory(anyString(), any(), any())).thenReturn(download);
-    s3Repository.downloadBucket("testBucket", new File("target/repos/config-repo"));
+    mockListing(summary("application.yml", 10), summary("staging/", 0),
+        summary("staging/bar/bar-staging.yml", 10), summary("../outside.yml", 10));
+    mockObjects();
+    File destination = new File("target/repos/config-repo");
+    s3Repository.downloadBucket("testBucket", destination);
+    ArgumentCaptor<GetObjectRequest> requests = ArgumentCaptor.forClass(GetObjectRequest.class);
+    Mockito.verify(s3Client, Mockito.times(2)).getObject(requests.capture());
+    Assert.assertTrue(requests.getAllValues().stream()
+        .anyMatch(request -> "staging/bar/bar-staging.yml".equals(request.getKey())));
   }
 
   @Test(expected = SystemException.class)
   public void downloadBucket_validBucketDetails_downloadException()
       throws InterruptedException, SystemException {
-    MultipleFileDownload download = Mockito.mock(MultipleFileDownload.class);
-    Mockito.doAnswer(k -> {
-      throw new InterruptedException("Exception while downloading bucket.");
-    }).when(download).waitForCompletion();
-    when(transferManager.downloadDirectory(anyString(), any(), any())).thenReturn(download);
+    mockListing(summary("application.yml", 10), summary("bar.yml", 10));
+    when(s3Client.getObject(any(GetObjectRequest.class)))
+        .thenThrow(new AmazonS3Exception("Exception while downloading object."));
     s3Repository.downloadBucket("testBucket", new File("target/repos/config-repo"));
   }
 
+  @Test
+  public void downloadBucket_largeObject_downloadedByTransferManager()
+      throws InterruptedException, SystemException {
+    mockListing(summary("large.bin", 3));
+    Download download = mockTransfer(new byte[] {1, 2, 3});
+    properties.getDownload().setLargeObjectThreshold(3);
+    try {
+      s3Repository.downloadBucket("testBucket", new File("target/repos/config-repo"));
+    } finally {
+      properties.getDownload().setLargeObjectThreshold(16L * 1024 * 1024);
+    }
+    Mockito.verify(download).waitForCompletion();
+    Mockito.verify(s3Client, Mockito.never()).getObject(any(GetObjectRequest.class));
+  }
+
+  @Test
+  public void downloadBucket_largeObject_timeoutScaledWithSize() throws SystemException {
+    mockListing(summary("large.bin", 7));
+    mockTransfer(new byte[7]);
+    properties.getDownload().setLargeObjectThreshold(3);
+    try {
+      s3Repository.downloadBucket("testBucket", new File("target/repos/config-repo"));
+    } finally {
+      properties.getDownload().setLargeObjectThreshold(16L * 1024 * 1024);
+    }
+    ArgumentCaptor<GetObjectRequest> request = ArgumentCaptor.forClass(GetObjectRequest.class);
+    Mockito.verify(transferManager).download(request.capture(), any(File.class));
+    Assert.assertEquals(Integer.valueOf(3 * properties.getDownload().getObjectTimeout()),
+        request.getValue().getSdkClientExecutionTimeout());
+  }
+
+  @Test(expected = SystemException.class)
+  public void downloadBucket_truncatedLargeObject_systemException()
+      throws InterruptedException, SystemException {
+    mockListing(summary("large.bin", 4));
+    mockTransfer(new byte[] {1, 2, 3});
+    properties.getDownload().setLargeObjectThreshold(3);
+    try {
+      s3Repository.downloadBucket("testBucket", new File("target/repos/config-repo"));
+    } finally {
+      properties.getDownload().setLargeObjectThreshold(16L * 1024 * 1024);
+    }
+  }
+
+  @Test
+  public void downloadBucket_checksumsFile_objectsVerifiedAgainstSha256() throws Exception {
+    mockListing(summary("application.yml", 1), summary("large.bin", 3));
+    mockObjects("checksums.sha256", (sha256("application.yml") + "  application.yml\n"
+        + sha256(new byte[] {1, 2, 3}) + " *large.bin\n").getBytes("UTF-8"));
+    mockTransfer(new byte[] {1, 2, 3});
+    properties.getDownload().setChecksumsKey("checksums.sha256");
+    properties.getDownload().setLargeObjectThreshold(3);
+    try {
+      s3Repository.downloadBucket("testBucket", new File("target/repos/config-repo"));
+    } finally {
+      properties.getDownload().setChecksumsKey("");
+      properties.getDownload().setLargeObjectThreshold(16L * 1024 * 1024);
+    }
+    Assert.assertEquals("application.yml", new String(Files.readAllBytes(
+        new File("target/repos/config-repo/application.yml").toPath()), "UTF-8"));
+  }
+
+  @Test
+  public void downloadBucket_checksumMismatch_snapshotRejected() throws Exception {
+    mockListing(summary("application.yml", 3));
+    mockObjects("checksums.sha256", (sha256("tampered") + "  application.yml\n")
+        .getBytes("UTF-8"));
+    double corrupt = meterRegistry.counter("s3.config.download.corrupt").count();
+    properties.getDownload().setChecksumsKey("checksums.sha256");
+    try {
+      s3Repository.downloadBucket("testBucket", new File("target/repos/config-repo"));
+      Assert.fail("Object not matching its SHA-256 was accepted.");
+    } catch (SystemException e) {
+      Assert.assertEquals(corrupt + 1, meterRegistry.counter("s3.config.download.corrupt")
+          .count(), 0);
+    } finally {
+      properties.getDownload().setChecksumsKey("");
+    }
+  }
+
+  @Test
+  public void getChecksums_missingFile_empty() throws SystemException {
+    AmazonS3Exception notFound = new AmazonS3Exception("Not Found");
+    notFound.setStatusCode(404);
+    when(s3Client.getObject(any(GetObjectRequest.class))).thenThrow(notFound);
+    properties.getDownload().setChecksumsKey("checksums.sha256");
+    try {
+      Assert.assertTrue(s3Repository.getChecksums("testBucket").isEmpty());
+    } finally {
+      properties.getDownload().setChecksumsKey("");
+    }
+  }
+
+  @Test(expected = SystemException.class)
+  public void downloadObject_md5MismatchingEtag_systemException() throws Exception {
+    S3Object object = object("abc".getBytes("UTF-8"));
+    object.getObjectMetadata().setHeader(Headers.ETAG, md5("abd"));
+    when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(object);
+    s3Repository.downloadObject("testBucket", "application.yml",
+        new File("target/repos/object/application.yml"));
+  }
+
+  @Test(expected = SystemException.class)
+  public void downloadObject_truncatedStream_systemException() throws Exception {
+    S3Object object = object("abc".getBytes("UTF-8"));
+    object.getObjectMetadata().setContentLength(10);
+    when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(object);
+    s3Repository.downloadObject("testBucket", "application.yml",
+        new File("target/repos/object/application.yml"));
+  }
+
+  @Test
+  public void resolveObjectPath_keys_onlyObjectsBelowDestination() {
+    Path destDir = new File("target/repos/config-repo").toPath();
+    Assert.assertEquals(destDir.resolve("a/b.yml"), S3Repository.resolveObjectPath(destDir,
+        "a/b.yml"));
+    Assert.assertNull(S3Repository.resolveObjectPath(destDir, "a/"));
+    Assert.assertNull(S3Repository.resolveObjectPath(destDir, "../b.yml"));
+    Assert.assertNull(S3Repository.resolveObjectPath(destDir, ""));
+    Assert.assertNull(S3Repository.resolveObjectPath(destDir, "."));
+  }
+
+  @Test
+  public void listObjects_truncatedListing_allPagesListed() {
+    ListObjectsV2Result first = new ListObjectsV2Result();
+    first.getObjectSummaries().add(new S3ObjectSummary());
+    first.setTruncated(true);
+    first.setNextContinuationToken("next");
+    ListObjectsV2Result second = new ListObjectsV2Result();
+    second.getObjectSummaries().add(new S3ObjectSummary());
+    when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(first, second);
+    List<S3ObjectSummary> summaries = s3Repository.listObjects("testBucket");
+    Assert.assertEquals(2, summaries.size());
+  }
+
+  @Test
+  public void downloadObject_validDetails_objectRequested() throws Exception {
+    mockObjects();
+    File destination = new File("target/repos/object/application.yml");
+    s3Repository.downloadObject("testBucket", "application.yml", destination);
+    ArgumentCaptor<GetObjectRequest> request = ArgumentCaptor.forClass(GetObjectRequest.class);
+    Mockito.verify(s3Client).getObject(request.capture());
+    Assert.assertEquals("application.yml", new String(Files.readAllBytes(destination.toPath()),
+        "UTF-8"));
+    Assert.assertEquals("application.yml", request.getValue().getKey());
+  }
+
   @Test
   public void getBucketMetadata_withValidDetails_validMetadata() {
     Map<String, String> testMetadata = new TreeMap<String, String>();
@@ -116,4 +299,257 @@ public class S3RepositoryTests extends AbstractTest {
     Optional<String> actualVersion = s3Repository.getBucketVersion("testBucket");
     Assert.assertFalse(actualVersion.isPresent());
   }
+
+  @Test
+  public void getBucketVersion_withinVersionCacheTtl_checkedOnce() {
+    when(s3Client.getObjectMetadata(any())).thenReturn(metafile("v1", "e1"));
+    properties.setVersionCacheTtl(60000);
+    try {
+      Assert.assertEquals("v1", s3Repository.getBucketVersion("ttlBucket").get());
+      Assert.assertEquals("v1", s3Repository.getBucketVersion("ttlBucket").get());
+      Mockito.verify(s3Client, Mockito.times(1)).getObjectMetadata(any());
+      s3Repository.expireBucketVersion("ttlBucket");
+      when(s3Client.getObjectMetadata(any())).thenReturn(metafile("v2", "e2"));
+      Assert.assertEquals("v2", s3Repository.getBucketVersion("ttlBucket").get());
+      Mockito.verify(s3Client, Mockito.times(2)).getObjectMetadata(any());
+    } finally {
+      properties.setVersionCacheTtl(0);
+    }
+  }
+
+  @Test
+  public void getBucketVersion_unchangedMetafile_conditionalNotModified() {
+    AmazonS3Exception notModified = new AmazonS3Exception("Not Modified");
+    notModified.setStatusCode(304);
+    when(s3Client.getObjectMetadata(any())).thenReturn(metafile("v1", "e1"))
+        .thenThrow(notModified);
+    double notModifiedChecks = meterRegistry.counter("s3.config.version.checks", "outcome",
+        "not-modified").count();
+    Assert.assertEquals("v1", s3Repository.getBucketVersion("conditionalBucket").get());
+    Assert.assertEquals("v1", s3Repository.getBucketVersion("conditionalBucket").get());
+
+    ArgumentCaptor<GetObjectMetadataRequest> requests =
+        ArgumentCaptor.forClass(GetObjectMetadataRequest.class);
+    Mockito.verify(s3Client, Mockito.times(2)).getObjectMetadata(requests.capture());
+    Assert.assertNull(requests.getAllValues().get(0).getCustomRequestHeaders());
+    Assert.assertEquals("\"e1\"", requests.getAllValues().get(1).getCustomRequestHeaders()
+        .get("If-None-Match"));
+    Assert.assertNotNull(requests.getAllValues().get(1).getCustomRequestHeaders()
+        .get("If-Modified-Since"));
+    Assert.assertEquals(notModifiedChecks + 1, meterRegistry.counter("s3.config.version.checks",
+        "outcome", "not-modified").count(), 0);
+  }
+
+  @Test
+  public void downloadObject_validDetails_downloadMetricsRecorded() throws Exception {
+    File destination = new File("target/repos/object/metrics.yml");
+    when(s3Client.getObject(any(GetObjectRequest.class)))
+        .thenReturn(object(new byte[] {1, 2, 3}));
+    double objects = meterRegistry.counter("s3.config.download.objects").count();
+    double bytes = meterRegistry.counter("s3.config.download.bytes").count();
+    s3Repository.downloadObject("testBucket", "metrics.yml", destination);
+    Assert.assertEquals(objects + 1,
+        meterRegistry.counter("s3.config.download.objects").count(), 0);
+    Assert.assertEquals(bytes + 3, meterRegistry.counter("s3.config.download.bytes").count(), 0);
+    Assert.assertTrue(meterRegistry.get("s3.config.s3.requests").tag("operation", "getObject")
+        .tag("outcome", "success").timer().count() > 0);
+  }
+
+  @Test
+  public void getBucketVersion_withExceptionFromS3_errorRecorded() {
+    when(s3Client.getObjectMetadata(any()))
+        .thenThrow(new AmazonS3Exception("Something went wrong"));
+    s3Repository.getBucketVersion("testBucket");
+    Assert.assertTrue(meterRegistry.get("s3.config.s3.requests")
+        .tag("operation", "getObjectMetadata").tag("outcome", "error")
+        .tag("exception", "AmazonS3Exception").timer().count() > 0);
+  }
+
+  @Test
+  public void downloadPack_archive_extractedInOneRequest() throws Exception {
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    SnapshotArchive.write(new File("src/test/resources/testdata/config-repo").toPath(), archive);
+    S3Object object = new S3Object();
+    object.setObjectContent(new ByteArrayInputStream(archive.toByteArray()));
+    object.getObjectMetadata().setContentLength(archive.size());
+    when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(object);
+    File destination = new File("target/repos/pack");
+    FileSystemUtils.deleteRecursively(destination);
+    Assert.assertTrue(s3Repository.downloadPack("testBucket", "snapshots/v1.zip",
+        destination.toPath()));
+    Assert.assertTrue(new File(destination, "staging/bar/bar-staging.yml").isFile());
+    Mockito.verify(s3Client, Mockito.never()).listObjectsV2(any(ListObjectsV2Request.class));
+  }
+
+  @Test
+  public void downloadPack_checksumsFile_archiveVerifiedAgainstSha256() throws Exception {
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    SnapshotArchive.write(new File("src/test/resources/testdata/config-repo").toPath(), archive);
+    File destination = new File("target/repos/pack-verified");
+    for (String sha256 : new String[] {sha256(archive.toByteArray()), sha256("tampered")}) {
+      FileSystemUtils.deleteRecursively(destination);
+      when(s3Client.getObject(any(GetObjectRequest.class))).then(k ->
+          "checksums.sha256".equals(k.<GetObjectRequest>getArgument(0).getKey())
+              ? object((sha256 + "  snapshots/v1.zip\n").getBytes("UTF-8"))
+              : object(archive.toByteArray()));
+      properties.getDownload().setChecksumsKey("checksums.sha256");
+      try {
+        Assert.assertTrue(s3Repository.downloadPack("testBucket", "snapshots/v1.zip",
+            destination.toPath()));
+        Assert.assertEquals(sha256(archive.toByteArray()), sha256);
+      } catch (SystemException e) {
+        Assert.assertEquals(sha256("tampered"), sha256);
+      } finally {
+        properties.getDownload().setChecksumsKey("");
+      }
+    }
+  }
+
+  @Test
+  public void downloadPack_noArchive_false() throws SystemException {
+    AmazonS3Exception notFound = new AmazonS3Exception("The specified key does not exist.");
+    notFound.setStatusCode(404);
+    when(s3Client.getObject(any(GetObjectRequest.class))).thenThrow(notFound);
+    Assert.assertFalse(s3Repository.downloadPack("testBucket", "snapshots/v1.zip",
+        new File("target/repos/pack").toPath()));
+  }
+
+  @Test(expected = SystemException.class)
+  public void downloadPack_accessDenied_systemException() throws SystemException {
+    AmazonS3Exception denied = new AmazonS3Exception("Access Denied");
+    denied.setStatusCode(403);
+    when(s3Client.getObject(any(GetObjectRequest.class))).thenThrow(denied);
+    s3Repository.downloadPack("testBucket", "snapshots/v1.zip",
+        new File("target/repos/pack").toPath());
+  }
+
+  @Test(expected = SystemException.class)
+  public void downloadPack_truncatedArchive_systemException() throws Exception {
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    SnapshotArchive.write(new File("src/test/resources/testdata/config-repo").toPath(), archive);
+    S3Object object = new S3Object();
+    object.setObjectContent(new ByteArrayInputStream(archive.toByteArray(), 0,
+        archive.size() / 2));
+    when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(object);
+    File destination = new File("target/repos/pack-truncated");
+    FileSystemUtils.deleteRecursively(destination);
+    s3Repository.downloadPack("testBucket", "snapshots/v1.zip", destination.toPath());
+  }
+
+  @Test
+  public void downloadPrefix_labelVersion_objectsStoredBelowDestination() throws Exception {
+    mockListing(summary("versions/v1/application.yml", 10), summary("versions/v1/staging/", 0),
+        summary("versions/v1/staging/bar/bar-staging.yml", 10));
+    mockObjects();
+    Path destination = new File("target/repos/label-v1").toPath();
+    FileSystemUtils.deleteRecursively(destination.toFile());
+    Assert.assertEquals(2, s3Repository.downloadPrefix("testBucket", "versions/v1/",
+        destination));
+    ArgumentCaptor<GetObjectRequest> requests = ArgumentCaptor.forClass(GetObjectRequest.class);
+    Mockito.verify(s3Client, Mockito.times(2)).getObject(requests.capture());
+    Assert.assertTrue(requests.getAllValues().stream()
+        .anyMatch(request -> "versions/v1/application.yml".equals(request.getKey())));
+    Assert.assertTrue(Files.isRegularFile(destination.resolve("staging/bar/bar-staging.yml")));
+  }
+
+  @Test
+  public void downloadPrefix_prefixMarkerObject_skipped() throws Exception {
+    mockListing(summary("versions/v1/", 0), summary("versions/v1/application.yml", 10));
+    mockObjects();
+    Path destination = new File("target/repos/label-marker").toPath();
+    FileSystemUtils.deleteRecursively(destination.toFile());
+    Assert.assertEquals(1, s3Repository.downloadPrefix("testBucket", "versions/v1/",
+        destination));
+    Mockito.verify(s3Client, Mockito.times(1)).getObject(any(GetObjectRequest.class));
+    Assert.assertTrue(Files.isRegularFile(destination.resolve("application.yml")));
+  }
+
+  @Test
+  public void listObjects_labelsEnabled_labelVersionsLeftOut() {
+    mockListing(summary("application.yml", 10), summary("versions/v1/application.yml", 10));
+    properties.getLabels().setEnabled(true);
+    try {
+      List<S3ObjectSummary> summaries = s3Repository.listObjects("testBucket");
+      Assert.assertEquals(1, summaries.size());
+      Assert.assertEquals("application.yml", summaries.get(0).getKey());
+    } finally {
+      properties.getLabels().setEnabled(false);
+    }
+  }
+
+  private static ObjectMetadata metafile(String version, String etag) {
+    ObjectMetadata metadata = new ObjectMetadata();
+    metadata.addUserMetadata(S3Repository.METADATA_VERSION, version);
+    metadata.setHeader(Headers.ETAG, etag);
+    metadata.setLastModified(new Date());
+    return metadata;
+  }
+
+  /**
+   * Answers GETs with the key as content and its MD5 as ETag, the checksums file with the
+   * given content.
+   */
+  private void mockObjects(String checksumsKey, byte[] checksums) {
+    when(s3Client.getObject(any(GetObjectRequest.class))).then(k -> {
+      String key = k.<GetObjectRequest>getArgument(0).getKey();
+      if (key.equals(checksumsKey)) {
+        return object(checksums);
+      }
+      byte[] content = key.getBytes("UTF-8");
+      S3Object object = object(content);
+      object.getObjectMetadata().setHeader(Headers.ETAG, md5(content));
+      return object;
+    });
+  }
+
+  private void mockObjects() {
+    mockObjects(null, null);
+  }
+
+  private Download mockTransfer(byte[] content) {
+    Download download = Mockito.mock(Download.class);
+    when(transferManager.download(any(GetObjectRequest.class), any(File.class))).then(k -> {
+      File target = k.getArgument(1);
+      target.getParentFile().mkdirs();
+      Files.write(target.toPath(), content);
+      return download;
+    });
+    return download;
+  }
+
+  private static S3Object object(byte[] content) {
+    S3Object object = new S3Object();
+    object.setObjectContent(new ByteArrayInputStream(content));
+    object.getObjectMetadata().setContentLength(content.length);
+    return object;
+  }
+
+  private static String md5(byte[] content) throws Exception {
+    return BinaryUtils.toHex(MessageDigest.getInstance("MD5").digest(content));
+  }
+
+  private static String md5(String content) throws Exception {
+    return md5(content.getBytes("UTF-8"));
+  }
+
+  private static String sha256(byte[] content) throws Exception {
+    return BinaryUtils.toHex(MessageDigest.getInstance("SHA-256").digest(content));
+  }
+
+  private static String sha256(String content) throws Exception {
+    return sha256(content.getBytes("UTF-8"));
+  }
+
+  private void mockListing(S3ObjectSummary... summaries) {
+    ListObjectsV2Result listing = new ListObjectsV2Result();
+    listing.getObjectSummaries().addAll(Arrays.asList(summaries));
+    when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(listing);
+  }
+
+  private static S3ObjectSummary summary(String key, long size) {
+    S3ObjectSummary summary = new S3ObjectSummary();
+    summary.setKey(key);
+    summary.setSize(size);
+    return summary;
+  }
 }
@@ -0,0 +1,197 @@
+package com.spring.cloud.config.s3.repository;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.spring.cloud.config.s3.AbstractTest;
+import com.spring.cloud.config.s3.ConfigServerTestUtils;
+import com.spring.cloud.config.s3.config.S3EnvironmentRepositoryProperties;
+import com.spring.cloud.config.s3.config.S3EnvironmentRepositoryProperties.SyncMode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Resource;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cloud.config.server.resource.NoSuchResourceException;
+import org.springframework.cloud.config.server.resource.ResourceController;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Tests for {@link S3ResourceRepository}
+ *
+ * @author Nagesh Salunke
+ */
+public class S3ResourceRepositoryTests extends AbstractTest {
+
+  private static final File CONFIG_REPO = new File("src/test/resources/testdata/config-repo");
+
+  @Resource
+  private StandardEnvironment standardEnvironment;
+
+  @Resource
+  private S3EnvironmentRepositoryProperties properties;
+
+  @MockBean
+  private S3Repository s3Repository;
+
+  private S3EnvironmentRepository s3EnvironmentRepository;
+
+  private MultiBucketEnvironmentRepository multiBucketRepository;
+
+  private S3ResourceRepository resourceRepository;
+
+  private MeterRegistry meterRegistry;
+
+  private File basedir = new File("target/repos/resource-repo");
+
+  @Before
+  @Override
+  public void setUp() throws Exception {
+    meterRegistry = new SimpleMeterRegistry();
+    s3EnvironmentRepository = new S3EnvironmentRepository(standardEnvironment, properties,
+        s3Repository, meterRegistry);
+    s3EnvironmentRepository.setUri("s3://anything");
+    s3EnvironmentRepository.setBasedir(basedir);
+    if (basedir.exists()) {
+      FileSystemUtils.deleteRecursively(basedir);
+    }
+    multiBucketRepository = new MultiBucketEnvironmentRepository(s3EnvironmentRepository,
+        Collections.emptyList());
+    resourceRepository = new S3ResourceRepository(multiBucketRepository);
+    Mockito.doAnswer(k -> {
+      ConfigServerTestUtils.prepareLocalRepo(k.getArgument(1), "config-repo");
+      return null;
+    }).when(s3Repository).downloadBucket(anyString(), any());
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v1"));
+  }
+
+  @Test
+  public void findOne_profileSpecificFile_servedFromIndex() throws Exception {
+    org.springframework.core.io.Resource resource = resourceRepository.findOne("bar",
+        "staging", "master", "bar.yml");
+    Assert.assertArrayEquals(Files.readAllBytes(
+        new File(CONFIG_REPO, "staging/bar/bar-staging.yml").toPath()),
+        StreamUtils.copyToByteArray(resource.getInputStream()));
+    Assert.assertTrue(resource.getDescription().contains("staging/bar/bar-staging.yml"));
+    Assert.assertTrue(resource.lastModified() > 0);
+    Assert.assertNotEquals(resource, resourceRepository.findOne("bar", "staging", "master",
+        "application.yml"));
+    Assert.assertEquals(resource.hashCode(), resourceRepository.findOne("bar", "staging",
+        "master", "bar.yml").hashCode());
+  }
+
+  @Test
+  public void controller_ifModifiedSinceFileTime_notModified() throws Exception {
+    MockMvc mockMvc = MockMvcBuilders.standaloneSetup(
+        new ResourceController(resourceRepository, multiBucketRepository)).build();
+    long lastModified = resourceRepository.findOne("bar", "staging", "master", "bar.yml")
+        .lastModified();
+    mockMvc.perform(get("/bar/staging/master/bar.yml").accept(MediaType.TEXT_PLAIN)
+        .header(HttpHeaders.IF_MODIFIED_SINCE, lastModified))
+        .andExpect(status().isNotModified());
+    mockMvc.perform(get("/bar/staging/master/bar.yml").accept(MediaType.TEXT_PLAIN)
+        .header(HttpHeaders.IF_MODIFIED_SINCE, lastModified - 60000))
+        .andExpect(status().isOk());
+  }
+
+  @Test
+  public void findOne_fileOfSeveralLocations_lastLocationFirst() throws Exception {
+    Assert.assertArrayEquals(Files.readAllBytes(
+        new File(CONFIG_REPO, "staging/application-staging.yml").toPath()),
+        StreamUtils.copyToByteArray(resourceRepository.findOne("bar", "staging", null,
+            "/application.yml").getInputStream()));
+    Assert.assertArrayEquals(Files.readAllBytes(
+        new File(CONFIG_REPO, "application.yml").toPath()),
+        StreamUtils.copyToByteArray(resourceRepository.findOne("bar", "default", null,
+            "application.yml").getInputStream()));
+  }
+
+  @Test(expected = NoSuchResourceException.class)
+  public void findOne_missingFile_noSuchResource() {
+    resourceRepository.findOne("bar", "staging", "master", "missing.yml");
+  }
+
+  @Test(expected = NoSuchResourceException.class)
+  public void findOne_pathEscapingLocation_noSuchResource() {
+    resourceRepository.findOne("bar", "staging", "master", "../bar/bar-staging.yml");
+  }
+
+  @Test(expected = NoSuchResourceException.class)
+  public void findOne_noPath_noSuchResource() {
+    resourceRepository.findOne("bar", "staging", "master", "");
+  }
+
+  @Test
+  public void findOne_sameFileInNewVersion_readOnce() throws Exception {
+    resourceRepository.findOne("bar", "staging", "master", "bar.yml");
+    when(s3Repository.getBucketVersion(anyString())).thenReturn(Optional.of("v2"));
+    s3EnvironmentRepository.refresh();
+    resourceRepository.findOne("bar", "staging", "master", "bar.yml");
+    Assert.assertEquals(1,
+        meterRegistry.counter("s3.config.resources", "cache", "miss").count(), 0);
+    Assert.assertEquals(1,
+        meterRegistry.counter("s3.config.resources", "cache", "hit").count(), 0);
+  }
+
+  @Test
+  public void findOne_versionLabel_servedFromLabelSnapshot() throws Exception {
+    s3EnvironmentRepository.setLabelsEnabled(true);
+    Mockito.doAnswer(k -> {
+      ConfigServerTestUtils.prepareLocalRepo(k.<Path>getArgument(2).toFile(), "config-repo");
+      return 3;
+    }).when(s3Repository).downloadPrefix(anyString(), Mockito.eq("versions/v0/"), any());
+    Assert.assertTrue(resourceRepository.findOne("bar", "staging", "v0", "bar.yml")
+        .getDescription().contains("of version v0"));
+  }
+
+  @Test
+  public void findOne_lazyVersionChangedWhileFetching_failsUntilRefreshed() throws Exception {
+    s3EnvironmentRepository.setSyncMode(SyncMode.LAZY);
+    AtomicReference<String> version = new AtomicReference<>("v1");
+    when(s3Repository.getBucketVersion(anyString())).thenAnswer(
+        k -> Optional.of(version.get()));
+    S3ObjectSummary summary = new S3ObjectSummary();
+    summary.setKey("staging/bar/bar-staging.yml");
+    when(s3Repository.listObjects(anyString(), any(), any())).thenReturn(
+        Collections.singletonList(summary));
+    Mockito.doAnswer(k -> {
+      ConfigServerTestUtils.prepareLocalRepo(k.<Path>getArgument(2).toFile(), "config-repo");
+      version.set("v2");
+      return null;
+    }).when(s3Repository).downloadObjects(anyString(), any(), any());
+    s3EnvironmentRepository.refresh();
+
+    try {
+      resourceRepository.findOne("bar", "staging", "master", "bar.yml");
+      Assert.fail("Content of v2 served as v1");
+    } catch (IllegalStateException e) {
+      Assert.assertTrue(e.getMessage().contains("Version changed since v1"));
+    }
+    Mockito.doAnswer(k -> {
+      ConfigServerTestUtils.prepareLocalRepo(k.<Path>getArgument(2).toFile(), "config-repo");
+      return null;
+    }).when(s3Repository).downloadObjects(anyString(), any(), any());
+    s3EnvironmentRepository.refresh();
+    Assert.assertTrue(resourceRepository.findOne("bar", "staging", "master", "bar.yml")
+        .getDescription().contains("of version v2"));
+  }
+}
@@ -0,0 +1,110 @@
+package com.spring.cloud.config.s3.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link LabelSnapshotStore}
+ *
+ * @author Nagesh Salunke
+ */
+public class LabelSnapshotStoreTests {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private LabelSnapshotStore labelSnapshots;
+
+  private AtomicInteger fetches;
+
+  @Before
+  public void setUp() {
+    labelSnapshots = new LabelSnapshotStore(2, 60000);
+    fetches = new AtomicInteger();
+  }
+
+  @Test
+  public void acquire_sameLabelTwice_fetchedOnce() {
+    ConfigSnapshot first = labelSnapshots.acquire("v1", this::fetch);
+    labelSnapshots.release(first);
+    ConfigSnapshot second = labelSnapshots.acquire("v1", this::fetch);
+    labelSnapshots.release(second);
+    Assert.assertSame(first, second);
+    Assert.assertEquals("v1", second.getVersion());
+    Assert.assertEquals(1, fetches.get());
+  }
+
+  @Test
+  public void acquire_overCap_leastRecentlyUsedReclaimedWhenReleased() {
+    ConfigSnapshot v1 = labelSnapshots.acquire("v1", this::fetch);
+    ConfigSnapshot v2 = labelSnapshots.acquire("v2", this::fetch);
+    labelSnapshots.release(v2);
+    ConfigSnapshot v3 = labelSnapshots.acquire("v3", this::fetch);
+    labelSnapshots.release(v3);
+
+    //v1 is evicted while leased, its directory stays until the request is done.
+    Assert.assertEquals(2, labelSnapshots.size());
+    Assert.assertFalse(v1.isReclaimed());
+    Assert.assertTrue(v1.getDirectory().exists());
+    labelSnapshots.release(v1);
+    Assert.assertTrue(v1.isReclaimed());
+    Assert.assertFalse(v1.getDirectory().exists());
+
+    labelSnapshots.release(labelSnapshots.acquire("v2", this::fetch));
+    labelSnapshots.release(labelSnapshots.acquire("v4", this::fetch));
+    Assert.assertTrue(v3.isReclaimed());
+    Assert.assertFalse(v2.isReclaimed());
+    Assert.assertEquals(4, fetches.get());
+  }
+
+  @Test
+  public void acquire_missingLabel_nullAndRemembered() {
+    for (int i = 0; i < 2; i++) {
+      Assert.assertNull(labelSnapshots.acquire("missing", this::fetchMissing));
+    }
+    Assert.assertEquals(1, fetches.get());
+    Assert.assertEquals(0, labelSnapshots.size());
+  }
+
+  @Test
+  public void acquire_missingLabelWithoutTtl_fetchedAgain() {
+    labelSnapshots = new LabelSnapshotStore(2, 0);
+    for (int i = 0; i < 2; i++) {
+      Assert.assertNull(labelSnapshots.acquire("missing", this::fetchMissing));
+    }
+    Assert.assertEquals(2, fetches.get());
+  }
+
+  @Test
+  public void acquire_missingLabelExpired_fetchedAgain() throws Exception {
+    labelSnapshots = new LabelSnapshotStore(2, 1);
+    Assert.assertNull(labelSnapshots.acquire("missing", this::fetchMissing));
+    Thread.sleep(5);
+    Assert.assertNull(labelSnapshots.acquire("missing", this::fetchMissing));
+    Assert.assertEquals(2, fetches.get());
+  }
+
+  private ConfigSnapshot fetchMissing(String label) {
+    fetches.incrementAndGet();
+    return null;
+  }
+
+  private ConfigSnapshot fetch(String label) {
+    fetches.incrementAndGet();
+    SnapshotManifest manifest = new SnapshotManifest();
+    manifest.setVersion(label);
+    try {
+      File directory = folder.newFolder(label);
+      return new ConfigSnapshot(directory, manifest);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
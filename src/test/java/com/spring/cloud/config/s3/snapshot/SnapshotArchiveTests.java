@@ -0,0 +1,60 @@
+package com.spring.cloud.config.s3.snapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link SnapshotArchive}
+ *
+ * @author Nagesh Salunke
+ */
+public class SnapshotArchiveTests {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void writeAndExtract_snapshotDirectory_sameChecksum() throws IOException {
+    Path source = folder.newFolder("source").toPath();
+    Files.write(source.resolve("application.yml"), "foo: bar".getBytes("UTF-8"));
+    Files.createDirectories(source.resolve("staging/bar"));
+    Files.write(source.resolve("staging/bar/bar-staging.yml"), "bar: baz".getBytes("UTF-8"));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SnapshotArchive.write(source, out);
+
+    Path target = folder.newFolder("target").toPath();
+    Assert.assertEquals(2, SnapshotArchive.extract(new ByteArrayInputStream(out.toByteArray()),
+        target));
+    Assert.assertEquals(SnapshotStore.checksum(source), SnapshotStore.checksum(target));
+  }
+
+  @Test
+  public void extract_directoryEntry_createsDirectory() throws IOException {
+    Path target = folder.newFolder("target").toPath();
+    Assert.assertEquals(0, SnapshotArchive.extract(archive("empty/"), target));
+    Assert.assertTrue(Files.isDirectory(target.resolve("empty")));
+  }
+
+  @Test(expected = IOException.class)
+  public void extract_entryOutsideDestination_rejected() throws IOException {
+    SnapshotArchive.extract(archive("../escaped.yml"), folder.newFolder("target").toPath());
+  }
+
+  private static ByteArrayInputStream archive(String entry) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ZipOutputStream zip = new ZipOutputStream(out)) {
+      zip.putNextEntry(new ZipEntry(entry));
+      zip.closeEntry();
+    }
+    return new ByteArrayInputStream(out.toByteArray());
+  }
+}
@@ -0,0 +1,285 @@
+package com.spring.cloud.config.s3.snapshot;
+
+import com.spring.cloud.config.s3.constant.ConfigConstants;
+import com.spring.cloud.config.s3.snapshot.SnapshotManifest.ObjectEntry;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link SnapshotStore}
+ *
+ * @author Nagesh Salunke
+ */
+public class SnapshotStoreTests {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private SnapshotStore snapshotStore;
+
+  private File basedir;
+
+  @Before
+  public void setUp() {
+    snapshotStore = new SnapshotStore();
+    basedir = new File(folder.getRoot(), "config-repo");
+  }
+
+  @Test
+  public void promote_fetchedStagingDir_renamedIntoVersionDir() throws IOException {
+    Path staging = snapshotStore.createStagingDirectory(basedir);
+    Files.write(staging.resolve("application.yml"), "foo: bar".getBytes("UTF-8"));
+    ConfigSnapshot snapshot = snapshotStore.promote(staging, manifest("v1/build:2"));
+    Assert.assertFalse(Files.exists(staging));
+    Assert.assertEquals("v1/build:2", snapshot.getVersion());
+    Assert.assertEquals(basedir, snapshot.getDirectory().getParentFile());
+    Assert.assertTrue(snapshot.getDirectory().getName().startsWith("v1_build_2-"));
+    Assert.assertTrue(new File(snapshot.getDirectory(), "application.yml").exists());
+  }
+
+  @Test
+  public void promote_fetchedFiles_hashedInManifest() throws IOException {
+    ConfigSnapshot v1 = publish("v1");
+    Assert.assertEquals(Collections.singleton("application.yml"),
+        v1.getManifest().getFiles().keySet());
+    Assert.assertEquals(64, v1.getManifest().getFiles().get("application.yml").length());
+    Assert.assertNotEquals(v1.getManifest().getFiles(), publish("v2").getManifest().getFiles());
+  }
+
+  @Test
+  public void getContentVersion_otherApplicationChanged_unchanged() throws IOException {
+    ConfigSnapshot v1 = promote("v1", "bar: 1", "foo: 1");
+    ConfigSnapshot v2 = promote("v2", "bar: 2", "foo: 1");
+    Assert.assertNotEquals(contentVersion(v1, "bar"), contentVersion(v2, "bar"));
+    Assert.assertEquals(contentVersion(v1, "foo"), contentVersion(v2, "foo"));
+    Assert.assertNotEquals(contentVersion(v1, "bar"), contentVersion(v1, "foo"));
+    Assert.assertEquals(32, contentVersion(v1, "foo").length());
+    //Remembered per environment, locations are only resolved once.
+    Assert.assertEquals(contentVersion(v1, "foo"), v1.getContentVersion("foo", "staging", null,
+        () -> {
+          throw new IllegalStateException("resolved again");
+        }));
+  }
+
+  @Test
+  public void getContentVersion_unhashedSnapshotOrForeignLocation_snapshotVersion()
+      throws IOException {
+    ConfigSnapshot v1 = promote("v1", "bar: 1", "foo: 1");
+    Assert.assertEquals("v1", v1.getContentVersion("bar", "staging", null,
+        () -> new String[] {folder.getRoot().toURI().toString()}));
+    Assert.assertEquals("v1", v1.getContentVersion("foo", "staging", null,
+        () -> new String[] {"classpath:/config/"}));
+    v1.getManifest().getFiles().clear();
+    Assert.assertEquals("v1", contentVersion(v1, "baz"));
+  }
+
+  @Test
+  public void findFile_profiles_profileFileOfLastLocationFirst() throws IOException {
+    ConfigSnapshot v1 = promote("v1", "bar: 1", "foo: 1");
+    File directory = v1.getDirectory();
+    String[] locations = {directory.toURI().toString(),
+        new File(directory, "staging").toURI().toString()};
+    Assert.assertEquals("staging/bar-staging.yml", v1.findFile(locations, "eu,staging",
+        "/bar.yml"));
+    Assert.assertEquals("staging/foo.yml", v1.findFile(locations, "staging", "foo.yml"));
+    Assert.assertEquals("application.yml", v1.findFile(locations, "default",
+        "application.yml"));
+    Assert.assertNull(v1.findFile(locations, "staging", "../staging/foo.yml"));
+    Assert.assertNull(v1.findFile(locations, "staging", "bar"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void findFile_foreignLocation_illegalState() throws IOException {
+    ConfigSnapshot v1 = promote("v1", "bar: 1", "foo: 1");
+    v1.findFile(new String[] {folder.getRoot().toURI().toString()}, "staging", "foo.yml");
+  }
+
+  @Test
+  public void findFile_unhashedSnapshot_searchedOnDisk() throws IOException {
+    ConfigSnapshot v1 = promote("v1", "bar: 1", "foo: 1");
+    v1.getManifest().getFiles().clear();
+    File directory = v1.getDirectory();
+    String[] locations = {directory.toURI().toString(),
+        new File(directory, "staging").toURI().toString()};
+    Assert.assertEquals("staging/bar-staging.yml", v1.findFile(locations, "staging",
+        "bar.yml"));
+    Assert.assertEquals("application.yml", v1.findFile(locations, "default",
+        "application.yml"));
+    Assert.assertNull(v1.findFile(locations, "staging", "staging"));
+    Files.write(new File(directory.getParentFile(), "outside.yml").toPath(),
+        "outside: 1".getBytes("UTF-8"));
+    Assert.assertNull(v1.findFile(locations, "default", "../outside.yml"));
+  }
+
+  @Test
+  public void promote_sameVersionTwice_distinctDirs() throws IOException {
+    ConfigSnapshot first = snapshotStore.promote(snapshotStore.createStagingDirectory(basedir),
+        manifest("v1"));
+    ConfigSnapshot second = snapshotStore.promote(snapshotStore.createStagingDirectory(basedir),
+        manifest("v1"));
+    Assert.assertNotEquals(first.getDirectory(), second.getDirectory());
+  }
+
+  @Test
+  public void acquire_nothingPublished_null() {
+    Assert.assertNull(snapshotStore.acquire());
+    Assert.assertNull(snapshotStore.current());
+  }
+
+  @Test
+  public void publish_thirdSnapshot_reclaimsFirstKeepsPrevious() throws IOException {
+    ConfigSnapshot v1 = publish("v1");
+    ConfigSnapshot v2 = publish("v2");
+    Assert.assertTrue(v1.getDirectory().exists());
+    ConfigSnapshot v3 = publish("v3");
+    Assert.assertTrue(v1.isReclaimed());
+    Assert.assertFalse(v1.getDirectory().exists());
+    Assert.assertTrue(v2.getDirectory().exists());
+    Assert.assertSame(v3, snapshotStore.current());
+  }
+
+  @Test
+  public void release_leasedRetiredSnapshot_reclaimedAfterLastRelease() throws IOException {
+    ConfigSnapshot v1 = publish("v1");
+    ConfigSnapshot leased = snapshotStore.acquire();
+    ConfigSnapshot leasedAgain = snapshotStore.acquire();
+    Assert.assertSame(v1, leased);
+    publish("v2");
+    publish("v3");
+    Assert.assertTrue(v1.getDirectory().exists());
+    snapshotStore.release(leased);
+    Assert.assertTrue(v1.getDirectory().exists());
+    snapshotStore.release(leasedAgain);
+    Assert.assertFalse(v1.getDirectory().exists());
+  }
+
+  @Test
+  public void purgeExcept_leftoversOfPreviousRun_deleted() throws IOException {
+    Path leftover = snapshotStore.createStagingDirectory(basedir);
+    ConfigSnapshot v1 = publish("v1");
+    snapshotStore.purgeExcept(v1);
+    Assert.assertFalse(Files.exists(leftover));
+    Assert.assertTrue(v1.getDirectory().exists());
+  }
+
+  @Test
+  public void loadManifest_savedManifest_sameContent() throws IOException {
+    ConfigSnapshot v1 = publish("v1");
+    snapshotStore.saveManifest(v1);
+    SnapshotManifest manifest = new SnapshotStore().loadManifest(basedir);
+    Assert.assertEquals("v1", manifest.getVersion());
+    Assert.assertEquals(v1.getDirectory().getName(), manifest.getSnapshot());
+    Assert.assertEquals("etag", manifest.getObjects().get("application.yml").getEtag());
+    Assert.assertEquals(2, manifest.getObjects().get("application.yml").getSize());
+  }
+
+  @Test
+  public void loadManifest_snapshotDirGone_null() throws IOException {
+    ConfigSnapshot v1 = publish("v1");
+    snapshotStore.saveManifest(v1);
+    snapshotStore.discard(v1.getDirectory().toPath());
+    Assert.assertNull(snapshotStore.loadManifest(basedir));
+  }
+
+  @Test
+  public void loadManifest_noOrCorruptManifest_null() throws IOException {
+    Assert.assertNull(snapshotStore.loadManifest(basedir));
+    basedir.mkdirs();
+    Files.write(new File(basedir, ConfigConstants.SNAPSHOT_MANIFEST_FILE).toPath(),
+        "{corrupt".getBytes("UTF-8"));
+    Assert.assertNull(snapshotStore.loadManifest(basedir));
+  }
+
+  @Test
+  public void saveManifest_unwritableBaseDir_noException() throws IOException {
+    ConfigSnapshot v1 = publish("v1");
+    File manifestFile = new File(basedir, ConfigConstants.SNAPSHOT_MANIFEST_FILE + ".tmp");
+    manifestFile.mkdirs();
+    snapshotStore.saveManifest(v1);
+    Assert.assertNull(snapshotStore.loadManifest(basedir));
+  }
+
+  @Test
+  public void restore_intactSnapshot_sameVersionAndDir() throws IOException {
+    ConfigSnapshot v1 = publish("v1");
+    snapshotStore.saveManifest(v1);
+    SnapshotManifest manifest = snapshotStore.loadManifest(basedir);
+    ConfigSnapshot restored = new SnapshotStore().restore(basedir, manifest);
+    Assert.assertEquals("v1", restored.getVersion());
+    Assert.assertEquals(v1.getDirectory(), restored.getDirectory());
+    Assert.assertEquals(64, manifest.getChecksum().length());
+  }
+
+  @Test
+  public void restore_modifiedSnapshot_null() throws IOException {
+    ConfigSnapshot v1 = publish("v1");
+    snapshotStore.saveManifest(v1);
+    Files.write(new File(v1.getDirectory(), "application.yml").toPath(),
+        "truncat".getBytes("UTF-8"));
+    Assert.assertNull(snapshotStore.restore(basedir, snapshotStore.loadManifest(basedir)));
+  }
+
+  @Test
+  public void restore_unverified_modifiedSnapshotTrusted() throws IOException {
+    ConfigSnapshot v1 = publish("v1");
+    snapshotStore.saveManifest(v1);
+    Files.write(new File(v1.getDirectory(), "application.yml").toPath(),
+        "truncat".getBytes("UTF-8"));
+    ConfigSnapshot restored = snapshotStore.restore(basedir, snapshotStore.loadManifest(basedir),
+        false);
+    Assert.assertEquals(v1.getDirectory(), restored.getDirectory());
+  }
+
+  @Test
+  public void restore_missingSnapshotDir_null() {
+    SnapshotManifest manifest = manifest("v1");
+    manifest.setSnapshot("missing");
+    Assert.assertNull(snapshotStore.restore(basedir, manifest));
+  }
+
+  @Test
+  public void discard_stagingDir_deleted() throws IOException {
+    Path staging = snapshotStore.createStagingDirectory(basedir);
+    snapshotStore.discard(staging);
+    Assert.assertFalse(Files.exists(staging));
+  }
+
+  private ConfigSnapshot publish(String version) throws IOException {
+    Path staging = snapshotStore.createStagingDirectory(basedir);
+    Files.write(staging.resolve("application.yml"), version.getBytes("UTF-8"));
+    ConfigSnapshot snapshot = snapshotStore.promote(staging, manifest(version));
+    snapshotStore.publish(snapshot);
+    return snapshot;
+  }
+
+  private ConfigSnapshot promote(String version, String bar, String foo) throws IOException {
+    Path staging = snapshotStore.createStagingDirectory(basedir);
+    Files.createDirectories(staging.resolve("staging"));
+    Files.write(staging.resolve("application.yml"), "shared: 1".getBytes("UTF-8"));
+    Files.write(staging.resolve("staging/bar-staging.yml"), bar.getBytes("UTF-8"));
+    Files.write(staging.resolve("staging/foo.yml"), foo.getBytes("UTF-8"));
+    Files.write(staging.resolve("staging/other.yml"), version.getBytes("UTF-8"));
+    return snapshotStore.promote(staging, manifest(version));
+  }
+
+  private static String contentVersion(ConfigSnapshot snapshot, String application) {
+    File directory = snapshot.getDirectory();
+    return snapshot.getContentVersion(application, "staging", null, () -> new String[] {
+        directory.toURI().toString(), new File(directory, "staging").toURI().toString()});
+  }
+
+  private static SnapshotManifest manifest(String version) {
+    SnapshotManifest manifest = new SnapshotManifest();
+    manifest.setVersion(version);
+    manifest.getObjects().put("application.yml", new ObjectEntry("etag", 2));
+    return manifest;
+  }
+}